@@ -0,0 +1,62 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.benchmarks;
+
+/**
+ * Línea de un pedido, usada como java bean anidado en los benchmarks
+ *
+ * @author Angel
+ */
+public class Item {
+
+    private String sku;
+    private String name;
+    private int quantity;
+    private double price;
+
+    public Item() {
+    }
+
+    public Item(String sku, String name, int quantity, double price) {
+        this.sku = sku;
+        this.name = name;
+        this.quantity = quantity;
+        this.price = price;
+    }
+
+    public String getSku() {
+        return sku;
+    }
+
+    public void setSku(String sku) {
+        this.sku = sku;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public void setPrice(double price) {
+        this.price = price;
+    }
+
+}
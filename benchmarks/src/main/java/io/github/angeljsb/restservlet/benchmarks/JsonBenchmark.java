@@ -0,0 +1,84 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.benchmarks;
+
+import io.github.angeljsb.restservlet.JSONHelper;
+import io.github.angeljsb.restservlet.RestResponseWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mide la conversión de java beans a json: a objetos de org.json con
+ * {@link JSONHelper} y escritos directamente en la response con
+ * {@link RestResponseWriter#send(java.lang.Object)}
+ *
+ * @author Angel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+    /**
+     * Cantidad de líneas del pedido
+     */
+    @Param({"1", "20", "500"})
+    public int items;
+
+    private Order order;
+    private List<Item> lines;
+    private MockRequest request;
+    private MockResponse response;
+
+    @Setup
+    public void setup() {
+        order = Payloads.order(42, items);
+        lines = order.getItems();
+        request = new MockRequest("GET", "/orders/42").header("Accept", "application/json");
+        response = new MockResponse();
+    }
+
+    @Benchmark
+    public JSONObject beanToJson() {
+        return JSONHelper.beanToJson(order);
+    }
+
+    @Benchmark
+    public JSONArray toJsonArray() {
+        return JSONHelper.toJsonArray(lines);
+    }
+
+    @Benchmark
+    public int sendBean() {
+        response.reset();
+        new RestResponseWriter(request, response).send(order);
+        return response.getBodyLength();
+    }
+
+    @Benchmark
+    public int sendList() {
+        response.reset();
+        new RestResponseWriter(request, response).send(lines);
+        return response.getBodyLength();
+    }
+
+}
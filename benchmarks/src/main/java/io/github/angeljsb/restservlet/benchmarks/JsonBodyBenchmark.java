@@ -0,0 +1,92 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.benchmarks;
+
+import io.github.angeljsb.restservlet.RestRequestReader;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compara la lectura de bodies json grandes con el camino anterior,
+ * {@link LegacyJsonBody}, y con el {@code JsonReader} a través de
+ * {@link RestRequestReader}. Cada invocación lee el body completo desde el
+ * input stream
+ *
+ * @author Angel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBodyBenchmark {
+
+    /**
+     * Tamaño aproximado del body json en MB
+     */
+    @Param({"1", "2", "5"})
+    public int megabytes;
+
+    private MockRequest request;
+
+    @Setup
+    public void setup() {
+        int items = Payloads.itemsFor(megabytes * 1024 * 1024);
+        request = new MockRequest("POST", "/orders")
+                .body("application/json; charset=utf-8", Payloads.orderJson(Payloads.order(42, items)));
+    }
+
+    /**
+     * Lee el body caracter a caracter a un String, lo convierte en un
+     * JSONObject y guarda cada propiedad como texto
+     */
+    @Benchmark
+    public Map<String, String> legacy() throws IOException {
+        return LegacyJsonBody.parameters(request.getInputStream(), request.getCharacterEncoding());
+    }
+
+    /**
+     * Lee el body con el {@code JsonReader} y convierte los parametros a
+     * texto, el mismo resultado que {@link #legacy()}
+     */
+    @Benchmark
+    public Map<String, String> parameterMap() {
+        return new RestRequestReader(request).getParameterMap();
+    }
+
+    /**
+     * Lee el body con el {@code JsonReader} y obtiene un parametro, que es
+     * el uso común: los valores quedan con su tipo json
+     */
+    @Benchmark
+    public long getter() {
+        return new RestRequestReader(request).getLong("id");
+    }
+
+    /**
+     * Lee el body completo como un JSONObject con
+     * {@link RestRequestReader#getParamsJson(java.io.InputStream, java.lang.String)}
+     */
+    @Benchmark
+    public JSONObject paramsJson() throws IOException {
+        return RestRequestReader.getParamsJson(request.getInputStream(), request.getCharacterEncoding());
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Copia de cómo {@code RestRequestReader} leía un body json antes del
+ * {@code JsonReader}: el input stream se copia caracter a caracter a un
+ * {@link StringBuilder}, el texto se convierte con
+ * {@link JSONObject#JSONObject(java.lang.String)} y cada propiedad queda en el
+ * mapa de parametros como texto. Sirve de referencia para comparar los dos
+ * caminos en los benchmarks
+ *
+ * @author Angel
+ */
+public final class LegacyJsonBody {
+
+    private LegacyJsonBody() {
+    }
+
+    /**
+     * Lee los parametros de un body json como lo hacía el lector anterior
+     *
+     * @param is El input stream de la request
+     * @param charset El character encoding de la request o {@code null}
+     * @return Las propiedades del objeto con su valor convertido a texto
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public static Map<String, String> parameters(InputStream is, String charset) throws IOException {
+        Map<String, String> parameters = new HashMap();
+        JSONObject json = getParamsJson(is, charset);
+        Set<String> keySet = json.keySet();
+        for (String key : keySet) {
+            parameters.put(key, json.get(key).toString());
+        }
+        return parameters;
+    }
+
+    private static JSONObject getParamsJson(InputStream is, String charset) throws IOException {
+        String json = readInputStream(is, charset);
+        try {
+            return new JSONObject(json);
+        } catch (JSONException ex) {
+            return new JSONObject();
+        }
+    }
+
+    private static String readInputStream(InputStream is, String charset) throws IOException {
+        String set = charset == null ? "UTF-8" : charset;
+        try (Reader br = new InputStreamReader(is, set)) {
+            StringBuilder sb = new StringBuilder();
+            int cp;
+            while ((cp = br.read()) != -1) {
+                sb.append((char) cp);
+            }
+            return sb.toString();
+        }
+    }
+
+}
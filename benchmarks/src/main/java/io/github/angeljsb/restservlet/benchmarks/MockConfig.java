@@ -0,0 +1,67 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.benchmarks;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+
+/**
+ * Configuración para iniciar servlets fuera de un contenedor. No tiene
+ * {@link ServletContext}
+ *
+ * @author Angel
+ */
+public final class MockConfig implements ServletConfig {
+
+    private final String name;
+    private final Map<String, String> parameters = new HashMap();
+
+    /**
+     * Crea la configuración
+     *
+     * @param name El nombre del servlet
+     */
+    public MockConfig(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Agrega un parametro de inicio
+     *
+     * @param name El nombre
+     * @param value El valor
+     * @return Esta configuración
+     */
+    public MockConfig param(String name, String value) {
+        parameters.put(name, value);
+        return this;
+    }
+
+    @Override
+    public String getServletName() {
+        return name;
+    }
+
+    @Override
+    public ServletContext getServletContext() {
+        return null;
+    }
+
+    @Override
+    public String getInitParameter(String name) {
+        return parameters.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getInitParameterNames() {
+        return Collections.enumeration(parameters.keySet());
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import javax.servlet.http.Part;
+
+/**
+ * Campo de un formulario multipart en memoria
+ *
+ * @author Angel
+ */
+public final class MockPart implements Part {
+
+    private final String name;
+    private final String contentType;
+    private final byte[] content;
+
+    /**
+     * Crea un campo de texto, sin header {@code Content-Type}
+     *
+     * @param name El nombre del campo
+     * @param value El valor
+     */
+    public MockPart(String name, String value) {
+        this(name, null, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Crea un campo con el contenido y el tipo especificados, como un archivo
+     *
+     * @param name El nombre del campo
+     * @param contentType El tipo del contenido
+     * @param content El contenido
+     */
+    public MockPart(String name, String contentType, byte[] content) {
+        this.name = name;
+        this.contentType = contentType;
+        this.content = content;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getSubmittedFileName() {
+        return contentType == null ? null : name;
+    }
+
+    @Override
+    public long getSize() {
+        return content.length;
+    }
+
+    @Override
+    public void write(String fileName) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete() {
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return "Content-Type".equalsIgnoreCase(name) ? contentType : null;
+    }
+
+    @Override
+    public Collection<String> getHeaders(String name) {
+        String value = getHeader(name);
+        return value == null ? Collections.<String>emptyList() : Collections.singletonList(value);
+    }
+
+    @Override
+    public Collection<String> getHeaderNames() {
+        return contentType == null ? Collections.<String>emptyList()
+                : Collections.singletonList("Content-Type");
+    }
+
+}
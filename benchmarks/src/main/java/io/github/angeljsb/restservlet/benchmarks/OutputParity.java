@@ -0,0 +1,277 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.benchmarks;
+
+import io.github.angeljsb.restservlet.JSONHelper;
+import io.github.angeljsb.restservlet.RestResponseWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Comprueba que {@link RestResponseWriter#send(java.lang.Object)} escribe
+ * colecciones, arreglos, iteradores y streams de beans con el mismo json que
+ * {@link JSONHelper#toJsonArray(java.util.Collection)} convertido a texto
+ * por org.json, que es como se enviaban antes de escribirse directamente en
+ * la response. Los beans tienen fechas, UUID, beans anidados y mapas, que
+ * org.json escribe con su {@code toString()} o con sus propias reglas. Las
+ * propiedades de los objetos se comparan sin importar el orden. Termina con
+ * código 1 si alguna salida es distinta o si la librería escribe errores:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar io.github.angeljsb.restservlet.benchmarks.OutputParity
+ * </pre>
+ *
+ * @author Angel
+ */
+public final class OutputParity {
+
+    private OutputParity() {
+    }
+
+    public static void main(String[] args) {
+        List<Event> events = events();
+        int failures = 0;
+        String expected = JSONHelper.toJsonArray(events).toString();
+        String arrayExpected = JSONHelper.toJsonArray(events.toArray()).toString();
+
+        failures += check("send(List)", expected, events);
+        failures += check("send(Object[])", arrayExpected, events.toArray());
+        failures += check("send(Iterator)", expected, events.iterator());
+        failures += check("send(Stream)", expected, events.stream());
+
+        if (failures > 0) {
+            System.out.println(failures + " outputs differ");
+            System.exit(1);
+        }
+        System.out.println("All outputs match");
+    }
+
+    private static int check(String name, String expected, Object body) {
+        MockResponse response = new MockResponse();
+        PrintStream err = System.err;
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errors, true));
+        try {
+            new RestResponseWriter(new MockRequest("GET", "/events"), response).send(body);
+        } finally {
+            System.setErr(err);
+        }
+        String actual = response.getBodyText();
+        String logged = new String(errors.toByteArray(), StandardCharsets.UTF_8);
+        boolean same = equal(new JSONArray(expected), new JSONArray(actual));
+        if (same && logged.isEmpty()) {
+            System.out.println("OK   " + name);
+            return 0;
+        }
+        System.out.println("FAIL " + name);
+        System.out.println("  expected: " + expected);
+        System.out.println("  actual:   " + actual);
+        if (!logged.isEmpty()) {
+            System.out.println("  stderr:   " + logged.trim());
+        }
+        return 1;
+    }
+
+    /**
+     * Compara dos valores de org.json sin importar el orden de las
+     * propiedades de los objetos
+     */
+    private static boolean equal(Object a, Object b) {
+        if (a instanceof JSONObject && b instanceof JSONObject) {
+            JSONObject x = (JSONObject) a;
+            JSONObject y = (JSONObject) b;
+            if (x.length() != y.length()) {
+                return false;
+            }
+            Iterator keys = x.keys();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                if (!y.has(key) || !equal(x.get(key), y.get(key))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof JSONArray && b instanceof JSONArray) {
+            JSONArray x = (JSONArray) a;
+            JSONArray y = (JSONArray) b;
+            if (x.length() != y.length()) {
+                return false;
+            }
+            for (int i = 0; i < x.length(); i++) {
+                if (!equal(x.get(i), y.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return a.equals(b);
+    }
+
+    private static List<Event> events() {
+        List<Event> events = new ArrayList();
+        for (int i = 0; i < 3; i++) {
+            Event event = new Event();
+            event.setId(i);
+            event.setTitle("Evento \"" + i + "\"");
+            event.setCreatedAt(new Date(1710771725000L + i * 86_400_000L));
+            event.setReference(new UUID(0x1234L + i, 0xABCDL));
+            event.setAmount(new BigDecimal("99.95"));
+            event.setGrade('A');
+            event.setStatus(i % 2 == 0 ? Status.OPEN : Status.CLOSED);
+            event.setVenue(new Venue("Av. Bolívar", 12 + i));
+            event.setTags(Arrays.asList("a", "b"));
+            Map<String, Object> attributes = new LinkedHashMap();
+            attributes.put("seen", new Date(0));
+            attributes.put("ticket", new UUID(1, 2));
+            attributes.put("venue", new Venue("Calle 5", i));
+            attributes.put("seats", Arrays.asList(1, 2, 3));
+            attributes.put("price", 10.5);
+            event.setAttributes(attributes);
+            events.add(event);
+        }
+        events.get(2).setVenue(null);
+        events.get(2).setAttributes(null);
+        return events;
+    }
+
+    public enum Status {
+        OPEN, CLOSED
+    }
+
+    public static final class Venue {
+
+        private String street;
+        private int number;
+
+        public Venue(String street, int number) {
+            this.street = street;
+            this.number = number;
+        }
+
+        public String getStreet() {
+            return street;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        @Override
+        public String toString() {
+            return street + " " + number;
+        }
+
+    }
+
+    public static final class Event {
+
+        private long id;
+        private String title;
+        private Date createdAt;
+        private UUID reference;
+        private BigDecimal amount;
+        private Character grade;
+        private Status status;
+        private Venue venue;
+        private List<String> tags;
+        private Map<String, Object> attributes;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public Date getCreatedAt() {
+            return createdAt;
+        }
+
+        public void setCreatedAt(Date createdAt) {
+            this.createdAt = createdAt;
+        }
+
+        public UUID getReference() {
+            return reference;
+        }
+
+        public void setReference(UUID reference) {
+            this.reference = reference;
+        }
+
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        public void setAmount(BigDecimal amount) {
+            this.amount = amount;
+        }
+
+        public Character getGrade() {
+            return grade;
+        }
+
+        public void setGrade(Character grade) {
+            this.grade = grade;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public void setStatus(Status status) {
+            this.status = status;
+        }
+
+        public Venue getVenue() {
+            return venue;
+        }
+
+        public void setVenue(Venue venue) {
+            this.venue = venue;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(List<String> tags) {
+            this.tags = tags;
+        }
+
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        public void setAttributes(Map<String, Object> attributes) {
+            this.attributes = attributes;
+        }
+
+    }
+
+}
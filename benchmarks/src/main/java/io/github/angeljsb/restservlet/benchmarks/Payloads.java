@@ -0,0 +1,107 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Crea los datos de los benchmarks. Los valores salen de una semilla fija,
+ * así cada ejecución mide exactamente los mismos bytes. Cada línea ocupa
+ * unos 74 bytes en json: un pedido de 20 líneas ocupa unos 2KB, uno de 500
+ * unos 37KB y uno de 40000 unos 3MB
+ *
+ * @author Angel
+ */
+public final class Payloads {
+
+    private static final String[] PRODUCTS = {
+        "Teclado mecánico", "Monitor 27\" 4K", "Cable USB-C", "Silla ergonómica",
+        "Auriculares inalámbricos", "Disco SSD 1TB", "Mouse vertical", "Lámpara LED"
+    };
+
+    private Payloads() {
+    }
+
+    /**
+     * Crea un pedido
+     *
+     * @param id El id del pedido
+     * @param items La cantidad de líneas
+     * @return El pedido
+     */
+    public static Order order(long id, int items) {
+        Random random = new Random(id);
+        List<Item> list = new ArrayList(items);
+        double total = 0;
+        for (int i = 0; i < items; i++) {
+            double price = Math.round(random.nextDouble() * 50_000) / 100.0;
+            int quantity = 1 + random.nextInt(5);
+            list.add(new Item(String.format("SKU-%06d", random.nextInt(1_000_000)),
+                    PRODUCTS[random.nextInt(PRODUCTS.length)], quantity, price));
+            total += price * quantity;
+        }
+        Order order = new Order();
+        order.setId(id);
+        order.setCustomer("María José Pérez");
+        order.setEmail("maria.perez@example.com");
+        order.setStatus("PENDING");
+        order.setCreatedAt("2024-03-18T14:22:05Z");
+        order.setPaid(false);
+        order.setTotal(Math.round(total * 100) / 100.0);
+        order.setItems(list);
+        return order;
+    }
+
+    /**
+     * Calcula cuántas líneas necesita un pedido para ocupar aproximadamente
+     * un tamaño en json
+     *
+     * @param bytes El tamaño buscado
+     * @return La cantidad de líneas
+     */
+    public static int itemsFor(int bytes) {
+        return Math.max(1, bytes / 74);
+    }
+
+    /**
+     * Escribe un pedido en json, a mano para no depender de la librería que
+     * se mide
+     *
+     * @param order El pedido
+     * @return El json en UTF-8
+     */
+    public static byte[] orderJson(Order order) {
+        StringBuilder json = new StringBuilder(128 + order.getItems().size() * 96);
+        json.append("{\"id\":").append(order.getId())
+                .append(",\"customer\":").append(quote(order.getCustomer()))
+                .append(",\"email\":").append(quote(order.getEmail()))
+                .append(",\"status\":").append(quote(order.getStatus()))
+                .append(",\"createdAt\":").append(quote(order.getCreatedAt()))
+                .append(",\"paid\":").append(order.isPaid())
+                .append(",\"total\":").append(order.getTotal())
+                .append(",\"items\":[");
+        for (int i = 0; i < order.getItems().size(); i++) {
+            Item item = order.getItems().get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"sku\":").append(quote(item.getSku()))
+                    .append(",\"name\":").append(quote(item.getName()))
+                    .append(",\"quantity\":").append(item.getQuantity())
+                    .append(",\"price\":").append(item.getPrice())
+                    .append('}');
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+}
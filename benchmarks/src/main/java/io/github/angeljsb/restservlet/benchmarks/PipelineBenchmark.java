@@ -0,0 +1,154 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.benchmarks;
+
+import io.github.angeljsb.restservlet.Get;
+import io.github.angeljsb.restservlet.Post;
+import io.github.angeljsb.restservlet.RestRequestReader;
+import io.github.angeljsb.restservlet.RestServlet;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mide una petición completa, desde {@code service} hasta que la respuesta
+ * queda escrita: busqueda del método, lectura de parametros, ejecución y
+ * envío en json. Incluye las respuestas de error más comunes, que no deben
+ * costar más que una respuesta correcta
+ *
+ * @author Angel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    /**
+     * Cantidad de líneas del pedido que se envía y se recibe
+     */
+    @Param({"1", "20", "500"})
+    public int items;
+
+    private OrdersServlet servlet;
+    private MockResponse response;
+    private MockRequest getOrder;
+    private MockRequest postOrder;
+    private MockRequest badRequest;
+    private MockRequest notFound;
+
+    @Setup
+    public void setup() throws ServletException {
+        servlet = new OrdersServlet(Payloads.order(42, items));
+        servlet.init(new MockConfig("orders").param("errorLogSampleRate", "0"));
+        response = new MockResponse();
+        getOrder = new MockRequest("GET", "/orders/42")
+                .header("Accept", "application/json");
+        postOrder = new MockRequest("POST", "/orders")
+                .header("Accept", "application/json")
+                .body("application/json; charset=utf-8", Payloads.orderJson(Payloads.order(7, items)));
+        badRequest = new MockRequest("GET", "/orders/abc");
+        notFound = new MockRequest("GET", "/customers/42");
+
+        check(getOrder, HttpServletResponse.SC_OK);
+        check(postOrder, HttpServletResponse.SC_OK);
+        check(badRequest, HttpServletResponse.SC_BAD_REQUEST);
+        check(notFound, HttpServletResponse.SC_NOT_FOUND);
+    }
+
+    private void check(MockRequest request, int status) {
+        MockResponse result = service(request);
+        if (result.getStatus() != status) {
+            throw new IllegalStateException(request.getMethod() + " " + request.getPathInfo()
+                    + " responded " + result.getStatus() + ", expected " + status);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        servlet.destroy();
+    }
+
+    private MockResponse service(MockRequest request) {
+        response.reset();
+        try {
+            servlet.service(request, response);
+        } catch (ServletException | IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return response;
+    }
+
+    @Benchmark
+    public MockResponse getOrder() {
+        return service(getOrder);
+    }
+
+    @Benchmark
+    public MockResponse postOrder() {
+        return service(postOrder);
+    }
+
+    @Benchmark
+    public MockResponse badRequest() {
+        return service(badRequest);
+    }
+
+    @Benchmark
+    public MockResponse notFound() {
+        return service(notFound);
+    }
+
+    /**
+     * Servlet de pedidos que responde siempre el mismo pedido
+     */
+    public static class OrdersServlet extends RestServlet {
+
+        private final Order order;
+
+        public OrdersServlet(Order order) {
+            this.order = order;
+        }
+
+        @Get("/orders/{id}")
+        public Object getOrder(RestRequestReader reader) {
+            Order found = order;
+            if (reader.getLong("id") != found.getId()) {
+                found = Payloads.order(reader.getLong("id"), 0);
+            }
+            return found;
+        }
+
+        @Post("/orders")
+        public Object postOrder(RestRequestReader reader) {
+            Order created = reader.getBody(Order.class);
+            Map<String, Object> result = new LinkedHashMap();
+            result.put("id", created.getId());
+            result.put("items", created.getItems().size());
+            result.put("total", created.getTotal());
+            return result;
+        }
+
+    }
+
+}
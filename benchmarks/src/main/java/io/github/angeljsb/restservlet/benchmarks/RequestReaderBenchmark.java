@@ -0,0 +1,146 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.benchmarks;
+
+import io.github.angeljsb.restservlet.RestRequestReader;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Mide la creación de un {@link RestRequestReader} y la lectura de sus
+ * parametros desde el query string, un body json y un body multipart. Cada
+ * invocación crea un lector nuevo, como ocurre en cada petición. Los getters
+ * del body json se comparan con {@link LegacyJsonBody}, la forma en que se
+ * leía el body antes, también con bodies de varios MB
+ *
+ * @author Angel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestReaderBenchmark {
+
+    /**
+     * Cantidad de líneas del pedido en el body json. 40000 líneas ocupan
+     * unos 3MB
+     */
+    @Param({"1", "20", "500", "40000"})
+    public int items;
+
+    private MockRequest query;
+    private MockRequest json;
+    private MockRequest multipart;
+
+    @Setup
+    public void setup() {
+        query = new MockRequest("GET", "/orders")
+                .param("page", "3")
+                .param("size", "50")
+                .param("since", "1710771725000")
+                .param("minTotal", "99.95")
+                .param("paid", "true")
+                .param("customer", "María José Pérez")
+                .param("sort", "createdAt")
+                .param("status", "PENDING", "SHIPPED");
+        json = new MockRequest("POST", "/orders")
+                .body("application/json; charset=utf-8", Payloads.orderJson(Payloads.order(42, items)));
+        multipart = new MockRequest("POST", "/profile")
+                .body("multipart/form-data; boundary=----benchmark", new byte[0])
+                .part(new MockPart("name", "María José Pérez"))
+                .part(new MockPart("email", "maria.perez@example.com"))
+                .part(new MockPart("age", "34"))
+                .part(new MockPart("newsletter", "true"))
+                .part(new MockPart("bio", "Desarrolladora backend. Le gustan las apis pequeñas y rápidas."))
+                .part(new MockPart("tags", "java"))
+                .part(new MockPart("tags", "servlets"))
+                .part(new MockPart("avatar", "image/png", new byte[16 * 1024]));
+    }
+
+    /**
+     * Lee todos los parametros del query string con sus tipos
+     */
+    @Benchmark
+    public void queryGetters(Blackhole bh) {
+        RestRequestReader reader = new RestRequestReader(query);
+        bh.consume(reader.getInt("page"));
+        bh.consume(reader.getInt("size"));
+        bh.consume(reader.getLong("since"));
+        bh.consume(reader.getDouble("minTotal"));
+        bh.consume(reader.getBoolean("paid"));
+        bh.consume(reader.getString("customer"));
+        bh.consume(reader.getString("sort"));
+        bh.consume(reader.getList("status"));
+    }
+
+    /**
+     * Lee la mezcla común de un parametro del body json y uno ausente con
+     * valor por defecto
+     */
+    @Benchmark
+    public void jsonGetters(Blackhole bh) {
+        RestRequestReader reader = new RestRequestReader(json);
+        bh.consume(reader.getLong("id"));
+        bh.consume(reader.getString("customer"));
+        bh.consume(reader.getBoolean("paid"));
+        bh.consume(reader.getDouble("total"));
+        bh.consume(reader.getInt("page", 1));
+    }
+
+    /**
+     * Lee los mismos parametros que {@link #jsonGetters} con el camino
+     * anterior: todo el body pasa a texto y a un JSONObject antes de leer
+     * el primer parametro
+     */
+    @Benchmark
+    public void legacyJsonGetters(Blackhole bh) throws IOException {
+        Map<String, String> params = LegacyJsonBody.parameters(json.getInputStream(), json.getCharacterEncoding());
+        bh.consume(Long.parseLong(params.get("id")));
+        bh.consume(params.get("customer"));
+        bh.consume(Boolean.parseBoolean(params.get("paid")));
+        bh.consume(Double.parseDouble(params.get("total")));
+        String page = params.get("page");
+        bh.consume(page == null ? 1 : Integer.parseInt(page));
+    }
+
+    /**
+     * Convierte el body json completo en un java bean
+     */
+    @Benchmark
+    public Order jsonBody() {
+        return new RestRequestReader(json).getBody(Order.class);
+    }
+
+    /**
+     * Lee los campos de texto de un formulario multipart con un archivo
+     */
+    @Benchmark
+    public void multipartGetters(Blackhole bh) {
+        RestRequestReader reader = new RestRequestReader(multipart);
+        bh.consume(reader.getString("name"));
+        bh.consume(reader.getString("email"));
+        bh.consume(reader.getInt("age"));
+        bh.consume(reader.getBoolean("newsletter"));
+        bh.consume(reader.getString("bio"));
+        bh.consume(reader.getList("tags"));
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.benchmarks;
+
+import io.github.angeljsb.restservlet.PathMatch;
+import io.github.angeljsb.restservlet.RouteTable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mide la comparación del pathInfo con los patrones de un servlet mediano,
+ * con rutas fijas, con parametros, anidadas y sin coincidencia
+ *
+ * @author Angel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+
+    private static final RouteTable ROUTES = RouteTable.of(
+            "/health",
+            "/version",
+            "/users",
+            "/users/me",
+            "/users/{id}",
+            "/users/{id}/orders",
+            "/users/{id}/orders/{orderId}",
+            "/users/{id}/orders/{orderId}/items/{itemId}",
+            "/users/{id}/addresses",
+            "/users/{id}/addresses/{addressId}",
+            "/orders",
+            "/orders/{id}",
+            "/orders/{id}/status",
+            "/orders/{id}/invoice",
+            "/products",
+            "/products/{sku}",
+            "/products/{sku}/reviews",
+            "/products/{sku}/reviews/{reviewId}",
+            "/categories/{category}/products",
+            "/search/{term}");
+
+    @Param({"/health", "/users/42", "/users/42/orders/7/items/3", "/products/SKU-1234/reviews", "/unknown/path/here"})
+    public String path;
+
+    @Benchmark
+    public PathMatch match() {
+        return ROUTES.match(path);
+    }
+
+}
@@ -0,0 +1,33 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.loadtest;
+
+import io.github.angeljsb.restservlet.ExecutionMode;
+import io.github.angeljsb.restservlet.Get;
+import io.github.angeljsb.restservlet.HandlerExecution;
+import io.github.angeljsb.restservlet.RestRequestReader;
+import io.github.angeljsb.restservlet.RestServlet;
+import java.util.Collections;
+
+/**
+ * Servlet de ejemplo cuyo método se bloquea unos milisegundos, como una
+ * consulta JDBC. Se ejecuta en un grupo de hilos propio, así que con
+ * suficiente carga se llena su cola y responde 503 sin ocupar los hilos del
+ * contenedor
+ *
+ * @author Angel
+ */
+@HandlerExecution(value = ExecutionMode.POOL, threads = 32, queue = 512)
+public class BlockingServlet extends RestServlet {
+
+    @Get("/")
+    public Object query(RestRequestReader reader) throws InterruptedException {
+        long sleep = reader.getLong("sleep", 5);
+        Thread.sleep(sleep);
+        return Collections.singletonMap("slept", sleep);
+    }
+
+}
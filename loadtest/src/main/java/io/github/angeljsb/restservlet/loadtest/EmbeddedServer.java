@@ -0,0 +1,89 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.loadtest;
+
+import java.net.URI;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Contenedor Jetty en localhost con los servlets de ejemplo:
+ * {@link OrdersServlet} en {@code /api/orders/*} y {@link BlockingServlet}
+ * en {@code /blocking/*}, ambos con soporte asíncrono. Los errores 4xx no
+ * se registran en el log de errores para no mezclarlos con los resultados
+ *
+ * @author Angel
+ */
+final class EmbeddedServer implements AutoCloseable {
+
+    private final Server server;
+    private final QueuedThreadPool pool;
+    private final URI uri;
+
+    private EmbeddedServer(Server server, QueuedThreadPool pool, URI uri) {
+        this.server = server;
+        this.pool = pool;
+        this.uri = uri;
+    }
+
+    /**
+     * Inicia el contenedor en un puerto libre
+     *
+     * @param options Las opciones con la cantidad de hilos del contenedor y
+     * los datos de los servlets
+     * @return El contenedor iniciado
+     * @throws Exception Si el contenedor no pudo iniciar
+     */
+    static EmbeddedServer start(Options options) throws Exception {
+        QueuedThreadPool pool = new QueuedThreadPool(options.serverThreads, Math.min(8, options.serverThreads));
+        pool.setName("server");
+        Server server = new Server(pool);
+        ServerConnector connector = new ServerConnector(server);
+        connector.setHost("127.0.0.1");
+        connector.setPort(0);
+        connector.setAcceptQueueSize(1024);
+        server.addConnector(connector);
+
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+        context.setContextPath("/");
+        ServletHolder orders = new ServletHolder("orders", new OrdersServlet(options.items));
+        orders.setAsyncSupported(true);
+        orders.setInitParameter("errorLogSampleRate", "0");
+        context.addServlet(orders, "/api/orders/*");
+        ServletHolder blocking = new ServletHolder("blocking", BlockingServlet.class);
+        blocking.setAsyncSupported(true);
+        blocking.setInitParameter("errorLogSampleRate", "0");
+        context.addServlet(blocking, "/blocking/*");
+        server.setHandler(context);
+        server.start();
+        return new EmbeddedServer(server, pool, URI.create("http://127.0.0.1:" + connector.getLocalPort()));
+    }
+
+    /**
+     * Obtiene la dirección del contenedor
+     */
+    URI getUri() {
+        return uri;
+    }
+
+    /**
+     * Empieza a muestrear el uso de los hilos del contenedor
+     *
+     * @return El muestreo, que debe cerrarse al terminar la medición
+     */
+    PoolSampler sample() {
+        return new PoolSampler(pool);
+    }
+
+    @Override
+    public void close() throws Exception {
+        server.stop();
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.json.JSONObject;
+
+/**
+ * Contadores del recolector de basura en un momento dado. El cliente y el
+ * contenedor comparten la JVM, así que la diferencia entre dos momentos
+ * incluye a ambos; el cliente de Jetty asigna poco comparado con los
+ * servlets.<br><br>
+ *
+ * Los bytes asignados se suman sobre los hilos vivos, de modo que no
+ * cuentan los hilos que terminaron durante la medición
+ *
+ * @author Angel
+ */
+final class GcSnapshot {
+
+    private final Map<String, long[]> collectors = new LinkedHashMap();
+    private final long allocated;
+
+    private GcSnapshot() {
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collectors.put(bean.getName(), new long[]{bean.getCollectionCount(), bean.getCollectionTime()});
+        }
+        this.allocated = allocatedBytes();
+    }
+
+    static GcSnapshot take() {
+        return new GcSnapshot();
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Calcula la actividad del recolector desde otro momento hasta ahora
+     *
+     * @param before El momento inicial
+     * @param elapsed Los nanosegundos transcurridos entre ambos
+     * @return Las colecciones y su tiempo por recolector, la fracción del
+     * tiempo en pausas y la tasa de asignación
+     */
+    JSONObject since(GcSnapshot before, long elapsed) {
+        JSONObject json = new JSONObject();
+        JSONObject byCollector = new JSONObject();
+        long count = 0;
+        long time = 0;
+        for (Map.Entry<String, long[]> entry : collectors.entrySet()) {
+            long[] start = before.collectors.getOrDefault(entry.getKey(), new long[2]);
+            long collections = entry.getValue()[0] - start[0];
+            long millis = entry.getValue()[1] - start[1];
+            JSONObject collector = new JSONObject();
+            collector.put("count", collections);
+            collector.put("timeMs", millis);
+            byCollector.put(entry.getKey(), collector);
+            count += collections;
+            time += millis;
+        }
+        double seconds = elapsed / 1e9;
+        json.put("collectors", byCollector);
+        json.put("count", count);
+        json.put("timeMs", time);
+        json.put("timeRatio", Math.round(time / (seconds * 1000) * 10_000) / 10_000.0);
+        if (allocated >= 0 && before.allocated >= 0) {
+            json.put("allocationRateMbPerSecond", Math.round((allocated - before.allocated) / seconds / 1024 / 1024 * 10) / 10.0);
+        }
+        json.put("heapUsedMb", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1024 / 1024);
+        return json;
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.loadtest;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.json.JSONObject;
+
+/**
+ * Genera la carga con el cliente asíncrono de Jetty, en dos modos:
+ * <ul>
+ * <li><b>Ciclo cerrado</b>: una cantidad fija de peticiones en curso; cada
+ * respuesta envía la siguiente. Mide el throughput máximo, pero cuando el
+ * servidor se detiene el cliente también, y las peticiones que se habrían
+ * enviado mientras tanto no se miden. La latencia corregida rellena esas
+ * muestras con {@code copyCorrectedForCoordinatedOmission}, usando como
+ * intervalo esperado la latencia media del calentamiento</li>
+ * <li><b>Ciclo abierto</b>: las peticiones se envían a una tasa fija, sin
+ * esperar las respuestas, y la latencia corregida se mide desde el momento
+ * en que cada petición debía enviarse</li>
+ * </ul>
+ *
+ * @author Angel
+ */
+final class LoadGenerator {
+
+    private final EmbeddedServer server;
+    private final Options options;
+    private final URI base;
+
+    LoadGenerator(EmbeddedServer server, Options options) {
+        this.server = server;
+        this.options = options;
+        this.base = server.getUri();
+    }
+
+    /**
+     * Mide el escenario en ciclo cerrado con la concurrencia de las opciones
+     *
+     * @param scenario El escenario
+     * @return El resultado
+     * @throws Exception Si el cliente no pudo iniciar
+     */
+    RunResult closedLoop(Scenario scenario) throws Exception {
+        int concurrency = options.concurrency;
+        HttpClient client = startClient(concurrency);
+        try {
+            long expected = 0;
+            if (options.warmup > 0) {
+                Recording warmup = new Recording(TimeUnit.SECONDS.toNanos(options.warmup));
+                closedPhase(client, scenario, concurrency, warmup);
+                expected = (long) warmup.getServiceTime().getMean();
+            }
+            Measurement measurement = new Measurement();
+            Recording recording = new Recording(TimeUnit.SECONDS.toNanos(options.duration));
+            closedPhase(client, scenario, concurrency, recording);
+            if (expected <= 0) {
+                expected = (long) recording.getServiceTime().getMean();
+            }
+            Histogram corrected = expected > 0
+                    ? recording.getServiceTime().copyCorrectedForCoordinatedOmission(expected)
+                    : recording.getServiceTime();
+            JSONObject load = new JSONObject();
+            load.put("concurrency", concurrency);
+            load.put("expectedIntervalMs", expected / 1e6);
+            return measurement.finish(scenario, "closed", load, recording, corrected);
+        } finally {
+            client.stop();
+        }
+    }
+
+    /**
+     * Mide el escenario en ciclo abierto
+     *
+     * @param scenario El escenario
+     * @param rate Las peticiones por segundo
+     * @return El resultado
+     * @throws Exception Si el cliente no pudo iniciar
+     */
+    RunResult openLoop(Scenario scenario, double rate) throws Exception {
+        HttpClient client = startClient(options.connections);
+        try {
+            if (options.warmup > 0) {
+                openPhase(client, scenario, rate, new Recording(TimeUnit.SECONDS.toNanos(options.warmup)));
+            }
+            Measurement measurement = new Measurement();
+            Recording recording = new Recording(TimeUnit.SECONDS.toNanos(options.duration));
+            openPhase(client, scenario, rate, recording);
+            JSONObject load = new JSONObject();
+            load.put("rate", Math.round(rate * 10) / 10.0);
+            load.put("connections", options.connections);
+            return measurement.finish(scenario, "open", load, recording, recording.getLatency());
+        } finally {
+            client.stop();
+        }
+    }
+
+    private HttpClient startClient(int connections) throws Exception {
+        QueuedThreadPool executor = new QueuedThreadPool();
+        executor.setName("client");
+        executor.setDaemon(true);
+        HttpClient client = new HttpClient();
+        client.setExecutor(executor);
+        client.setMaxConnectionsPerDestination(connections);
+        client.setMaxRequestsQueuedPerDestination(1 << 20);
+        client.setFollowRedirects(false);
+        client.start();
+        client.getContentDecoderFactories().clear();
+        return client;
+    }
+
+    private void closedPhase(HttpClient client, Scenario scenario, int concurrency, Recording recording)
+            throws InterruptedException {
+        for (int i = 0; i < concurrency; i++) {
+            sendClosed(client, scenario, recording);
+        }
+        recording.awaitIdle();
+    }
+
+    private void sendClosed(HttpClient client, Scenario scenario, Recording recording) {
+        long now = System.nanoTime();
+        if (!recording.isOver(now)) {
+            send(client, scenario, recording, now, now, () -> sendClosed(client, scenario, recording));
+        }
+    }
+
+    private void openPhase(HttpClient client, Scenario scenario, double rate, Recording recording)
+            throws InterruptedException {
+        double interval = 1e9 / rate;
+        long start = System.nanoTime();
+        for (long i = 0;; i++) {
+            long intended = start + (long) (i * interval);
+            if (recording.isOver(intended)) {
+                break;
+            }
+            long now = System.nanoTime();
+            while (intended - now > 0) {
+                LockSupport.parkNanos(intended - now);
+                now = System.nanoTime();
+            }
+            send(client, scenario, recording, intended, now, null);
+        }
+        recording.awaitIdle();
+    }
+
+    /**
+     * Envía una petición y registra su respuesta. El cuerpo se descarta a
+     * medida que llega, contando sus bytes
+     *
+     * @param next Lo que se ejecuta al terminar la petición, o {@code null}
+     */
+    private void send(HttpClient client, Scenario scenario, Recording recording,
+            long intended, long sent, Runnable next) {
+        recording.begin();
+        scenario.newRequest(client, base).send(new Response.Listener.Adapter() {
+            private long bytes;
+
+            @Override
+            public void onContent(Response response, ByteBuffer content) {
+                bytes += content.remaining();
+            }
+
+            @Override
+            public void onComplete(Result result) {
+                if (result.isFailed()) {
+                    recording.fail(intended, sent);
+                } else {
+                    recording.record(intended, sent, result.getResponse().getStatus(), bytes);
+                }
+                if (next != null) {
+                    if (result.isFailed()) {
+                        // Las fallas pueden llegar en el mismo hilo que envió
+                        client.getExecutor().execute(next);
+                    } else {
+                        next.run();
+                    }
+                }
+                recording.end();
+            }
+        });
+    }
+
+    /**
+     * Estado del contenedor y del recolector al empezar una medición
+     */
+    private final class Measurement {
+
+        private final Instant startedAt = Instant.now();
+        private final long start = System.nanoTime();
+        private final GcSnapshot gc = GcSnapshot.take();
+        private final PoolSampler sampler = server.sample();
+
+        RunResult finish(Scenario scenario, String mode, JSONObject load, Recording recording, Histogram corrected) {
+            long elapsed = System.nanoTime() - start;
+            sampler.close();
+            return new RunResult(options.label, scenario, mode, startedAt, elapsed, load, recording,
+                    corrected, GcSnapshot.take().since(gc, elapsed), sampler.toJson());
+        }
+
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.loadtest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import org.json.JSONObject;
+
+/**
+ * Prueba de carga de RestServlet dentro de un contenedor real. Inicia los
+ * servlets de ejemplo en Jetty sobre localhost, mide cada escenario en ciclo
+ * cerrado y luego en ciclo abierto, y escribe cada resultado en
+ * {@code <out>/<label>-<escenario>-<modo>-<fecha>.json}. Todos los
+ * resultados se agregan además, uno por línea, a {@code <out>/runs.ndjson},
+ * para comparar ejecuciones de distintas versiones.<br><br>
+ *
+ * Si no se especifica la tasa del ciclo abierto se usa el 75% del throughput
+ * medido en el ciclo cerrado, una carga alta pero sostenible
+ *
+ * @author Angel
+ */
+public final class LoadTest {
+
+    private static final DateTimeFormatter FILE_TIME
+            = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+    private static final double OPEN_LOOP_LOAD = 0.75;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && ("--help".equals(args[0]) || "-h".equals(args[0]))) {
+            System.out.println(Options.USAGE);
+            return;
+        }
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(Options.USAGE);
+            System.exit(2);
+            return;
+        }
+        if (System.getProperty("org.eclipse.jetty.LEVEL") == null) {
+            System.setProperty("org.eclipse.jetty.LEVEL", "WARN");
+            System.setProperty("org.eclipse.jetty.util.log.announce", "false");
+        }
+        Files.createDirectories(options.out);
+
+        try (EmbeddedServer server = EmbeddedServer.start(options)) {
+            System.out.println("Server started at " + server.getUri() + ", results in " + options.out.toAbsolutePath());
+            LoadGenerator generator = new LoadGenerator(server, options);
+            for (Scenario scenario : Scenario.select(options)) {
+                RunResult closed = null;
+                if (options.modes.contains("closed")) {
+                    closed = generator.closedLoop(scenario);
+                    write(options, closed);
+                }
+                if (options.modes.contains("open")) {
+                    double rate = options.rate > 0 ? options.rate : closed.getThroughput() * OPEN_LOOP_LOAD;
+                    write(options, generator.openLoop(scenario, rate));
+                }
+            }
+        }
+    }
+
+    private static void write(Options options, RunResult result) throws IOException {
+        System.out.println(result.summary());
+        JSONObject json = result.toJson();
+        String name = String.format("%s-%s-%s-%s.json", options.label.replaceAll("[^A-Za-z0-9._-]", "_"),
+                result.getScenario(), result.getMode(), FILE_TIME.format(result.getStartedAt()));
+        Path file = options.out.resolve(name);
+        Files.write(file, json.toString(2).getBytes(StandardCharsets.UTF_8));
+        Files.write(options.out.resolve("runs.ndjson"), (json.toString() + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Opciones de la línea de comandos de {@link LoadTest}
+ *
+ * @author Angel
+ */
+final class Options {
+
+    static final List<String> SCENARIOS = Arrays.asList("get-order", "post-order", "export", "blocking");
+    static final List<String> MODES = Arrays.asList("closed", "open");
+
+    static final String USAGE = String.join("\n",
+            "Usage: java -jar loadtest.jar [options]",
+            "  --scenarios a,b     Scenarios to run: " + String.join(", ", SCENARIOS) + " (default: all)",
+            "  --modes a,b         closed, open or both (default: closed,open)",
+            "  --concurrency n     Closed loop: requests in flight (default: 64)",
+            "  --rate n            Open loop: requests per second (default: 75% of the closed loop throughput)",
+            "  --connections n     Open loop: maximum connections (default: 256)",
+            "  --warmup s          Warmup seconds before each run (default: 10)",
+            "  --duration s        Measured seconds of each run (default: 30)",
+            "  --server-threads n  Maximum threads of the container (default: 200)",
+            "  --items n           Lines of the order sent and received (default: 20)",
+            "  --export-count n    Elements of the streamed export (default: 1000)",
+            "  --sleep ms          Blocking time of the blocking scenario (default: 5)",
+            "  --out dir           Directory for the result files (default: results)",
+            "  --label name        Name of the run in the result files (default: the RestServlet version)");
+
+    List<String> scenarios = SCENARIOS;
+    List<String> modes = MODES;
+    int concurrency = 64;
+    double rate;
+    int connections = 256;
+    int warmup = 10;
+    int duration = 30;
+    int serverThreads = 200;
+    int items = 20;
+    int exportCount = 1000;
+    long sleep = 5;
+    Path out = Paths.get("results");
+    String label = version();
+
+    private Options() {
+    }
+
+    /**
+     * Lee las opciones
+     *
+     * @param args Los argumentos de la línea de comandos
+     * @return Las opciones
+     * @throws IllegalArgumentException Si alguna opción no existe o su
+     * valor no es válido
+     */
+    static Options parse(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i += 2) {
+            String name = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + name);
+            }
+            String value = args[i + 1];
+            try {
+                switch (name) {
+                    case "--scenarios":
+                        options.scenarios = list(value, SCENARIOS);
+                        break;
+                    case "--modes":
+                        options.modes = list(value, MODES);
+                        break;
+                    case "--concurrency":
+                        options.concurrency = positive(name, Integer.parseInt(value));
+                        break;
+                    case "--rate":
+                        options.rate = Double.parseDouble(value);
+                        if (!(options.rate > 0)) {
+                            throw new IllegalArgumentException("--rate must be greater than 0");
+                        }
+                        break;
+                    case "--connections":
+                        options.connections = positive(name, Integer.parseInt(value));
+                        break;
+                    case "--warmup":
+                        options.warmup = Integer.parseInt(value);
+                        if (options.warmup < 0) {
+                            throw new IllegalArgumentException("--warmup can not be negative");
+                        }
+                        break;
+                    case "--duration":
+                        options.duration = positive(name, Integer.parseInt(value));
+                        break;
+                    case "--server-threads":
+                        options.serverThreads = Integer.parseInt(value);
+                        if (options.serverThreads < 8) {
+                            throw new IllegalArgumentException("--server-threads must be at least 8");
+                        }
+                        break;
+                    case "--items":
+                        options.items = positive(name, Integer.parseInt(value));
+                        break;
+                    case "--export-count":
+                        options.exportCount = positive(name, Integer.parseInt(value));
+                        break;
+                    case "--sleep":
+                        options.sleep = Long.parseLong(value);
+                        break;
+                    case "--out":
+                        options.out = Paths.get(value);
+                        break;
+                    case "--label":
+                        options.label = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + name);
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid number for " + name + ": " + value);
+            }
+        }
+        if (options.modes.equals(Arrays.asList("open")) && options.rate == 0) {
+            throw new IllegalArgumentException("--rate is required when only the open loop runs");
+        }
+        return options;
+    }
+
+    private static int positive(String name, int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be greater than 0");
+        }
+        return value;
+    }
+
+    private static List<String> list(String value, List<String> allowed) {
+        List<String> list = Arrays.asList(value.split(","));
+        for (String item : list) {
+            if (!allowed.contains(item)) {
+                throw new IllegalArgumentException("Unknown value " + item + ", expected one of " + allowed);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Obtiene la versión de RestServlet con la que se construyó el módulo
+     */
+    static String version() {
+        Properties properties = new Properties();
+        try (InputStream in = Options.class.getResourceAsStream("/loadtest.properties")) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace(System.err);
+        }
+        return properties.getProperty("restservlet.version", "unknown");
+    }
+
+}
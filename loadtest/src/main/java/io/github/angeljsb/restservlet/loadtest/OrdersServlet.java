@@ -0,0 +1,97 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.loadtest;
+
+import io.github.angeljsb.restservlet.Get;
+import io.github.angeljsb.restservlet.Post;
+import io.github.angeljsb.restservlet.RestRequestReader;
+import io.github.angeljsb.restservlet.RestServlet;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Servlet de ejemplo con las respuestas típicas de una api: un java bean
+ * enviado con su longitud exacta, un body json convertido en bean y un
+ * listado largo que se envía en partes a medida que se genera
+ *
+ * @author Angel
+ */
+public class OrdersServlet extends RestServlet {
+
+    private static final String[] PRODUCTS = {
+        "Teclado mecánico", "Monitor 27\" 4K", "Cable USB-C", "Silla ergonómica",
+        "Auriculares inalámbricos", "Disco SSD 1TB", "Mouse vertical", "Lámpara LED"
+    };
+
+    private final Order order;
+
+    /**
+     * Crea el servlet
+     *
+     * @param items La cantidad de líneas del pedido que responde
+     */
+    public OrdersServlet(int items) {
+        this.order = order(42, items);
+    }
+
+    @Get("/{id}")
+    public Object getOrder(RestRequestReader reader) {
+        return reader.getLong("id") == order.getId() ? order : order(reader.getLong("id"), 1);
+    }
+
+    @Post("/")
+    public Object createOrder(RestRequestReader reader) {
+        Order created = reader.getBody(Order.class);
+        Map<String, Object> result = new LinkedHashMap();
+        result.put("id", created.getId());
+        result.put("items", created.getItems() == null ? 0 : created.getItems().size());
+        result.put("total", created.getTotal());
+        return result;
+    }
+
+    @Get("/export")
+    public Stream<Item> export(RestRequestReader reader) {
+        List<Item> items = order.getItems().isEmpty() ? order(1, 1).getItems() : order.getItems();
+        return IntStream.range(0, reader.getInt("count", 1000))
+                .mapToObj(i -> items.get(i % items.size()));
+    }
+
+    /**
+     * Crea un pedido con valores que salen de una semilla fija, así cada
+     * ejecución envía los mismos bytes
+     *
+     * @param id El id del pedido
+     * @param items La cantidad de líneas
+     * @return El pedido
+     */
+    public static Order order(long id, int items) {
+        Random random = new Random(id);
+        List<Item> list = new ArrayList(items);
+        double total = 0;
+        for (int i = 0; i < items; i++) {
+            double price = Math.round(random.nextDouble() * 50_000) / 100.0;
+            int quantity = 1 + random.nextInt(5);
+            list.add(new Item(String.format("SKU-%06d", random.nextInt(1_000_000)),
+                    PRODUCTS[random.nextInt(PRODUCTS.length)], quantity, price));
+            total += price * quantity;
+        }
+        Order order = new Order();
+        order.setId(id);
+        order.setCustomer("María José Pérez");
+        order.setEmail("maria.perez@example.com");
+        order.setStatus("PENDING");
+        order.setCreatedAt("2024-03-18T14:22:05Z");
+        order.setTotal(Math.round(total * 100) / 100.0);
+        order.setItems(list);
+        return order;
+    }
+
+}
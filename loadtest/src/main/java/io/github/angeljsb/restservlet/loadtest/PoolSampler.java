@@ -0,0 +1,65 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.loadtest;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.json.JSONObject;
+
+/**
+ * Muestrea cada 10ms los hilos ocupados y las tareas en espera del grupo de
+ * hilos del contenedor, para saber si la prueba lo saturó
+ *
+ * @author Angel
+ */
+final class PoolSampler implements AutoCloseable {
+
+    private final QueuedThreadPool pool;
+    private final ScheduledExecutorService timer;
+    private long samples;
+    private long busyTotal;
+    private int peakBusy;
+    private int peakThreads;
+    private int peakQueued;
+
+    PoolSampler(QueuedThreadPool pool) {
+        this.pool = pool;
+        this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "loadtest pool sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.scheduleAtFixedRate(this::sample, 0, 10, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void sample() {
+        int busy = pool.getBusyThreads();
+        samples++;
+        busyTotal += busy;
+        peakBusy = Math.max(peakBusy, busy);
+        peakThreads = Math.max(peakThreads, pool.getThreads());
+        peakQueued = Math.max(peakQueued, pool.getQueueSize());
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("maxThreads", pool.getMaxThreads());
+        json.put("peakThreads", peakThreads);
+        json.put("peakBusy", peakBusy);
+        json.put("meanBusy", samples == 0 ? 0 : Math.round(busyTotal * 10.0 / samples) / 10.0);
+        json.put("peakQueued", peakQueued);
+        json.put("samples", samples);
+        return json;
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.loadtest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Resultados de una fase de la prueba, registrados desde los hilos del
+ * cliente. Cada petición tiene dos tiempos: desde que debía enviarse según
+ * el plan de la prueba y desde que realmente se envió. En el ciclo abierto
+ * la diferencia es la espera que un cliente real habría sufrido mientras el
+ * servidor estaba saturado, que es justo lo que se pierde al medir solo el
+ * tiempo de servicio (coordinated omission)
+ *
+ * @author Angel
+ */
+final class Recording {
+
+    private static final long DRAIN_TIMEOUT = TimeUnit.SECONDS.toNanos(60);
+
+    private final long deadline;
+    private final Histogram latency = new ConcurrentHistogram(3);
+    private final Histogram service = new ConcurrentHistogram(3);
+    private final ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Crea una fase que dura lo especificado desde ahora
+     *
+     * @param duration La duración en nanosegundos
+     */
+    Recording(long duration) {
+        this.deadline = System.nanoTime() + duration;
+    }
+
+    /**
+     * Indica si ya pasó el final de la fase
+     *
+     * @param now El tiempo actual de {@link System#nanoTime()}
+     * @return {@code true} si no deben enviarse más peticiones
+     */
+    boolean isOver(long now) {
+        return now - deadline >= 0;
+    }
+
+    void begin() {
+        inFlight.incrementAndGet();
+    }
+
+    void end() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Registra una respuesta
+     *
+     * @param intended Cuándo debía enviarse la petición
+     * @param sent Cuándo se envió
+     * @param status El status de la respuesta
+     * @param responseBytes Los bytes del cuerpo recibido
+     */
+    void record(long intended, long sent, int status, long responseBytes) {
+        long end = System.nanoTime();
+        latency.recordValue(end - intended);
+        service.recordValue(end - sent);
+        statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+        bytes.add(responseBytes);
+    }
+
+    /**
+     * Registra una petición que no obtuvo respuesta, por timeout o error de
+     * conexión. Su tiempo también cuenta en la latencia
+     *
+     * @param intended Cuándo debía enviarse la petición
+     * @param sent Cuándo se envió
+     */
+    void fail(long intended, long sent) {
+        long end = System.nanoTime();
+        latency.recordValue(end - intended);
+        service.recordValue(end - sent);
+        failures.increment();
+    }
+
+    /**
+     * Espera el final de la fase y luego las respuestas pendientes
+     *
+     * @throws InterruptedException Si el hilo es interrumpido
+     */
+    void awaitIdle() throws InterruptedException {
+        long now;
+        while (!isOver(now = System.nanoTime())) {
+            TimeUnit.NANOSECONDS.sleep(Math.min(deadline - now, TimeUnit.MILLISECONDS.toNanos(100)));
+        }
+        long limit = now + DRAIN_TIMEOUT;
+        while (inFlight.get() > 0 && System.nanoTime() - limit < 0) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+
+    /**
+     * Obtiene la latencia desde que cada petición debía enviarse
+     */
+    Histogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Obtiene la latencia desde que cada petición se envió
+     */
+    Histogram getServiceTime() {
+        return service;
+    }
+
+    long getRequests() {
+        return service.getTotalCount();
+    }
+
+    long getFailures() {
+        return failures.sum();
+    }
+
+    long getErrors() {
+        long errors = failures.sum();
+        for (Map.Entry<Integer, LongAdder> entry : statuses.entrySet()) {
+            if (entry.getKey() >= 400) {
+                errors += entry.getValue().sum();
+            }
+        }
+        return errors;
+    }
+
+    long getBytes() {
+        return bytes.sum();
+    }
+
+    Map<Integer, Long> getStatuses() {
+        Map<Integer, Long> map = new TreeMap();
+        statuses.forEach((status, count) -> map.put(status, count.sum()));
+        return map;
+    }
+
+}
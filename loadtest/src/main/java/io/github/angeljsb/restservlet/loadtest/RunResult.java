@@ -0,0 +1,162 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.loadtest;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import org.HdrHistogram.Histogram;
+import org.json.JSONObject;
+
+/**
+ * Resultado de una medición de un escenario en un modo de carga
+ *
+ * @author Angel
+ */
+final class RunResult {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final String label;
+    private final Scenario scenario;
+    private final String mode;
+    private final Instant startedAt;
+    private final long elapsed;
+    private final JSONObject load;
+    private final Recording recording;
+    private final Histogram corrected;
+    private final JSONObject gc;
+    private final JSONObject pool;
+
+    /**
+     * Crea el resultado
+     *
+     * @param label El nombre de la ejecución
+     * @param scenario El escenario medido
+     * @param mode {@code closed} u {@code open}
+     * @param startedAt Cuándo empezó la medición
+     * @param elapsed Los nanosegundos que duró, incluyendo la espera de las
+     * respuestas pendientes
+     * @param load Los parametros de la carga
+     * @param recording Las respuestas registradas
+     * @param corrected La latencia corregida por coordinated omission
+     * @param gc La actividad del recolector de basura
+     * @param pool El uso de los hilos del contenedor
+     */
+    RunResult(String label, Scenario scenario, String mode, Instant startedAt, long elapsed,
+            JSONObject load, Recording recording, Histogram corrected, JSONObject gc, JSONObject pool) {
+        this.label = label;
+        this.scenario = scenario;
+        this.mode = mode;
+        this.startedAt = startedAt;
+        this.elapsed = elapsed;
+        this.load = load;
+        this.recording = recording;
+        this.corrected = corrected;
+        this.gc = gc;
+        this.pool = pool;
+    }
+
+    String getScenario() {
+        return scenario.getName();
+    }
+
+    String getMode() {
+        return mode;
+    }
+
+    Instant getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * Obtiene las respuestas completadas por segundo
+     */
+    double getThroughput() {
+        return recording.getRequests() / (elapsed / 1e9);
+    }
+
+    JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("label", label);
+        json.put("restservletVersion", Options.version());
+        json.put("java", System.getProperty("java.version"));
+        json.put("processors", Runtime.getRuntime().availableProcessors());
+        json.put("startedAt", startedAt.toString());
+        json.put("scenario", scenario.getName());
+        json.put("mode", mode);
+        json.put("load", load);
+        json.put("durationSeconds", round(elapsed / 1e9, 3));
+        json.put("requests", recording.getRequests());
+        json.put("errors", recording.getErrors());
+        json.put("failures", recording.getFailures());
+        JSONObject status = new JSONObject();
+        recording.getStatuses().forEach((code, count) -> status.put(String.valueOf(code), count));
+        json.put("status", status);
+        json.put("throughput", round(getThroughput(), 1));
+        json.put("responseBytes", recording.getBytes());
+        json.put("responseMbPerSecond", round(recording.getBytes() / (elapsed / 1e9) / 1024 / 1024, 2));
+        JSONObject latency = new JSONObject();
+        latency.put("corrected", percentiles(corrected));
+        latency.put("uncorrected", percentiles(recording.getServiceTime()));
+        json.put("latencyMs", latency);
+        json.put("gc", gc);
+        json.put("serverPool", pool);
+        JSONObject histograms = new JSONObject();
+        histograms.put("corrected", encode(corrected));
+        histograms.put("uncorrected", encode(recording.getServiceTime()));
+        json.put("histograms", histograms);
+        return json;
+    }
+
+    /**
+     * Resume el resultado en una línea para la consola
+     */
+    String summary() {
+        return String.format("%-10s %-6s %10.1f req/s  p50 %8.3fms  p99 %8.3fms  p99.9 %8.3fms"
+                + "  (uncorrected p99 %8.3fms)  errors %d  gc %d/%dms",
+                scenario.getName(), mode, getThroughput(),
+                millis(corrected.getValueAtPercentile(50)),
+                millis(corrected.getValueAtPercentile(99)),
+                millis(corrected.getValueAtPercentile(99.9)),
+                millis(recording.getServiceTime().getValueAtPercentile(99)),
+                recording.getErrors(), gc.getLong("count"), gc.getLong("timeMs"));
+    }
+
+    private static JSONObject percentiles(Histogram histogram) {
+        JSONObject json = new JSONObject();
+        json.put("count", histogram.getTotalCount());
+        json.put("mean", round(histogram.getMean() / 1e6, 3));
+        for (double percentile : PERCENTILES) {
+            json.put("p" + String.valueOf(percentile).replace(".0", "").replace(".", ""),
+                    millis(histogram.getValueAtPercentile(percentile)));
+        }
+        json.put("max", millis(histogram.getMaxValue()));
+        return json;
+    }
+
+    /**
+     * Codifica el histograma completo en el formato comprimido de
+     * HdrHistogram y base64, para poder compararlo o combinarlo después con
+     * {@code Histogram.decodeFromCompressedByteBuffer}
+     */
+    private static String encode(Histogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length));
+    }
+
+    private static double millis(long nanos) {
+        return round(nanos / 1e6, 3);
+    }
+
+    private static double round(double value, int decimals) {
+        double scale = Math.pow(10, decimals);
+        return Math.round(value * scale) / scale;
+    }
+
+}
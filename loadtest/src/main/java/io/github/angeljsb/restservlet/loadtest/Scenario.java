@@ -0,0 +1,99 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.loadtest;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.json.JSONObject;
+
+/**
+ * Petición que se repite durante una prueba de carga
+ *
+ * @author Angel
+ */
+final class Scenario {
+
+    private final String name;
+    private final String method;
+    private final String path;
+    private final String contentType;
+    private final byte[] body;
+
+    private Scenario(String name, String method, String path, String contentType, byte[] body) {
+        this.name = name;
+        this.method = method;
+        this.path = path;
+        this.contentType = contentType;
+        this.body = body;
+    }
+
+    /**
+     * Crea los escenarios elegidos en las opciones:
+     * <ul>
+     * <li>{@code get-order}: un java bean enviado con su longitud exacta</li>
+     * <li>{@code post-order}: un body json convertido en java bean</li>
+     * <li>{@code export}: un listado largo enviado en partes (chunked)</li>
+     * <li>{@code blocking}: un método bloqueante en el grupo de hilos del
+     * servlet</li>
+     * </ul>
+     *
+     * @param options Las opciones
+     * @return Los escenarios en el orden de las opciones
+     */
+    static List<Scenario> select(Options options) {
+        List<Scenario> list = new ArrayList();
+        for (String name : options.scenarios) {
+            switch (name) {
+                case "get-order":
+                    list.add(new Scenario(name, "GET", "/api/orders/42", null, null));
+                    break;
+                case "post-order":
+                    byte[] json = new JSONObject(OrdersServlet.order(7, options.items)).toString()
+                            .getBytes(StandardCharsets.UTF_8);
+                    list.add(new Scenario(name, "POST", "/api/orders/", "application/json; charset=utf-8", json));
+                    break;
+                case "export":
+                    list.add(new Scenario(name, "GET", "/api/orders/export?count=" + options.exportCount, null, null));
+                    break;
+                case "blocking":
+                    list.add(new Scenario(name, "GET", "/blocking/?sleep=" + options.sleep, null, null));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown scenario " + name);
+            }
+        }
+        return list;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Crea la petición del escenario
+     *
+     * @param client El cliente que la envía
+     * @param base La dirección del servidor
+     * @return La petición, sin enviar
+     */
+    Request newRequest(HttpClient client, URI base) {
+        Request request = client.newRequest(base.resolve(path))
+                .method(method)
+                .header("Accept", "application/json")
+                .timeout(30, TimeUnit.SECONDS);
+        if (body != null) {
+            request.content(new BytesContentProvider(contentType, body));
+        }
+        return request;
+    }
+
+}
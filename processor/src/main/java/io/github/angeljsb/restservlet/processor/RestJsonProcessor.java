@@ -0,0 +1,320 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Procesador de anotaciones que genera un {@code JsonCodec} para cada clase
+ * marcada con {@code @RestJson}. El codec generado escribe cada campo con
+ * getter llamando directamente al getter y crea los beans llamando
+ * directamente a su constructor y sus setters, con las mismas reglas que la
+ * conversión por reflexión de RestServlet.<br><br>
+ *
+ * Para usarlo basta con agregar este artefacto al classpath del compilador,
+ * por ejemplo como dependencia {@code provided}
+ *
+ * @author Angel
+ */
+@SupportedAnnotationTypes(RestJsonProcessor.ANNOTATION)
+public class RestJsonProcessor extends AbstractProcessor {
+
+    static final String ANNOTATION = "io.github.angeljsb.restservlet.RestJson";
+    private static final String SUFFIX = "_JsonCodec";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    error(element, "@RestJson solo puede usarse en clases");
+                    continue;
+                }
+                TypeElement type = (TypeElement) element;
+                if (!isAccessible(type)) {
+                    error(type, "Las clases con @RestJson no pueden ser privadas ni clases internas no estáticas");
+                    continue;
+                }
+                try {
+                    generate(type);
+                } catch (IOException ex) {
+                    error(type, "No se pudo generar el codec: " + ex.getMessage());
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isAccessible(TypeElement type) {
+        Element current = type;
+        while (current instanceof TypeElement) {
+            Set<Modifier> modifiers = current.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            Element enclosing = current.getEnclosingElement();
+            if (enclosing instanceof TypeElement && !modifiers.contains(Modifier.STATIC)) {
+                return false;
+            }
+            current = enclosing;
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type)
+                .getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleName = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1)
+                .replace('$', '_').concat(SUFFIX);
+        String beanName = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+
+        List<Getter> getters = findGetters(type);
+        List<Setter> setters = findSetters(type);
+
+        StringBuilder code = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            code.append("package ").append(packageName).append(";\n\n");
+        }
+        code.append("import io.github.angeljsb.restservlet.JsonCodec;\n")
+                .append("import io.github.angeljsb.restservlet.JsonCodecs;\n")
+                .append("import io.github.angeljsb.restservlet.JsonGenerator;\n")
+                .append("import io.github.angeljsb.restservlet.JsonKey;\n")
+                .append("import java.io.IOException;\n")
+                .append("import java.lang.reflect.Type;\n")
+                .append("import java.util.function.Function;\n\n")
+                .append("/**\n * Codec de {@link ").append(beanName)
+                .append("} generado por RestJsonProcessor. No debe modificarse\n */\n")
+                .append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n")
+                .append("public final class ").append(simpleName)
+                .append(" implements JsonCodec<").append(beanName).append("> {\n\n");
+
+        for (Getter getter : getters) {
+            code.append("    private static final JsonKey KEY_").append(getter.field)
+                    .append(" = JsonKey.of(\"").append(getter.field).append("\");\n");
+        }
+        for (Setter setter : setters) {
+            if (setter.needsType) {
+                code.append("    private static final Type TYPE_").append(setter.property)
+                        .append(" = JsonCodecs.propertyType(").append(beanName).append(".class, \"")
+                        .append(setter.method).append("\");\n");
+            }
+        }
+
+        code.append("\n    @Override\n    public void write(").append(beanName)
+                .append(" bean, JsonGenerator out) throws IOException {\n")
+                .append("        out.beginObject();\n");
+        int local = 0;
+        for (Getter getter : getters) {
+            writeProperty(code, getter, "v" + local++);
+        }
+        code.append("        out.endObject();\n    }\n\n");
+
+        code.append("    @Override\n    public ").append(beanName)
+                .append(" read(Function<String, Object> values) {\n");
+        if (isConstructible(type)) {
+            code.append("        ").append(beanName).append(" bean = new ").append(beanName).append("();\n")
+                    .append("        Object value;\n");
+            for (Setter setter : setters) {
+                code.append("        value = JsonCodecs.convert(values.apply(\"").append(setter.property)
+                        .append("\"), ").append(setter.needsType ? "TYPE_" + setter.property : setter.literal)
+                        .append(");\n        if (value != null) {\n            bean.").append(setter.method)
+                        .append("((").append(setter.cast).append(") value);\n        }\n");
+            }
+            code.append("        return bean;\n");
+        } else {
+            code.append("        throw new IllegalStateException(\"The class ").append(binaryName)
+                    .append(" must have a constructor without parameters\");\n");
+        }
+        code.append("    }\n\n}\n");
+
+        String fileName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(fileName, type).openWriter()) {
+            writer.write(code.toString());
+        }
+    }
+
+    private void writeProperty(StringBuilder code, Getter getter, String local) {
+        String call = "bean." + getter.method + "()";
+        String key = "KEY_" + getter.field;
+        switch (getter.type.getKind()) {
+            case INT:
+            case LONG:
+            case SHORT:
+            case BYTE:
+            case DOUBLE:
+            case BOOLEAN:
+                code.append("        out.name(").append(key).append(");\n")
+                        .append("        out.value(").append(call).append(");\n");
+                return;
+            case FLOAT:
+                // Como Float para que se escriba igual que con org.json
+                code.append("        out.name(").append(key).append(");\n")
+                        .append("        out.value(Float.valueOf(").append(call).append("));\n");
+                return;
+            case CHAR:
+                code.append("        out.name(").append(key).append(");\n")
+                        .append("        out.value(String.valueOf(").append(call).append("));\n");
+                return;
+            default:
+                if (getter.type.toString().equals("java.lang.String")) {
+                    code.append("        String ").append(local).append(" = ").append(call).append(";\n")
+                            .append("        if (").append(local).append(" != null) {\n")
+                            .append("            out.name(").append(key).append(");\n")
+                            .append("            out.value(").append(local).append(");\n")
+                            .append("        }\n");
+                } else {
+                    code.append("        out.property(").append(key).append(", ").append(call).append(");\n");
+                }
+        }
+    }
+
+    /**
+     * Busca los campos declarados que tienen getter, en el orden en que se
+     * declararon, igual que el plan de serialización por reflexión
+     */
+    private List<Getter> findGetters(TypeElement type) {
+        List<ExecutableElement> methods = publicMethods(type);
+        List<Getter> getters = new ArrayList();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            String name = field.getSimpleName().toString();
+            String suffix = name.substring(0, 1).toUpperCase().concat(name.substring(1));
+            TypeMirror fieldType = field.asType();
+            boolean isBool = fieldType.getKind() == TypeKind.BOOLEAN
+                    || fieldType.toString().equals("java.lang.Boolean");
+            ExecutableElement getter = isBool ? findMethod(methods, "is" + suffix, 0) : null;
+            if (getter == null) {
+                getter = findMethod(methods, "get" + suffix, 0);
+            }
+            if (getter == null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                        "El campo " + name + " no tiene getter y no se incluirá en el json", field);
+                continue;
+            }
+            getters.add(new Getter(name, getter.getSimpleName().toString(), getter.getReturnType()));
+        }
+        return getters;
+    }
+
+    /**
+     * Busca los setters públicos, incluidos los heredados, igual que la
+     * conversión por reflexión de los bodies
+     */
+    private List<Setter> findSetters(TypeElement type) {
+        Map<String, Setter> setters = new LinkedHashMap();
+        for (ExecutableElement method : publicMethods(type)) {
+            String name = method.getSimpleName().toString();
+            if (name.length() > 3 && name.startsWith("set") && method.getParameters().size() == 1) {
+                String property = Character.toLowerCase(name.charAt(3)) + name.substring(4);
+                if (!setters.containsKey(property)) {
+                    setters.put(property, new Setter(property, name, method.getParameters().get(0).asType()));
+                }
+            }
+        }
+        return new ArrayList(setters.values());
+    }
+
+    private List<ExecutableElement> publicMethods(TypeElement type) {
+        List<ExecutableElement> methods = new ArrayList();
+        for (ExecutableElement method : ElementFilter.methodsIn(
+                processingEnv.getElementUtils().getAllMembers(type))) {
+            Set<Modifier> modifiers = method.getModifiers();
+            if (modifiers.contains(Modifier.PUBLIC) && !modifiers.contains(Modifier.STATIC)) {
+                methods.add(method);
+            }
+        }
+        return methods;
+    }
+
+    private static ExecutableElement findMethod(List<ExecutableElement> methods, String name, int parameters) {
+        for (ExecutableElement method : methods) {
+            if (method.getSimpleName().contentEquals(name) && method.getParameters().size() == parameters) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private boolean isConstructible(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()
+                    && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static final class Getter {
+
+        private final String field;
+        private final String method;
+        private final TypeMirror type;
+
+        Getter(String field, String method, TypeMirror type) {
+            this.field = field;
+            this.method = method;
+            this.type = type;
+        }
+
+    }
+
+    private final class Setter {
+
+        private final String property;
+        private final String method;
+        private final boolean needsType;
+        private final String literal;
+        private final String cast;
+
+        Setter(String property, String method, TypeMirror type) {
+            this.property = property;
+            this.method = method;
+            TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+            this.needsType = !erased.toString().equals(type.toString());
+            this.literal = erased.toString() + ".class";
+            this.cast = type.getKind().isPrimitive()
+                    ? processingEnv.getTypeUtils().boxedClass((PrimitiveType) type)
+                            .getQualifiedName().toString()
+                    : erased.toString();
+        }
+
+    }
+
+}
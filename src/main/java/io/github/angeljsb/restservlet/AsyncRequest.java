@@ -0,0 +1,121 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Petición en modo asíncrono de un {@link RestServlet}. Se asegura de que la
+ * respuesta se envíe una sola vez, ya sea por el método de procesamiento o
+ * porque se agotó el tiempo de espera
+ *
+ * @author Angel
+ */
+final class AsyncRequest implements AsyncListener {
+
+    /**
+     * Pasa la petición a modo asíncrono. La acción de fin de la petición que
+     * tenga el writer se ejecuta cuando se envíe la respuesta asíncrona
+     *
+     * @param request La request del servlet
+     * @param reader El lector de la request, que se libera al terminar
+     * @param writer El escritor de la response
+     * @param timeout El tiempo máximo de espera en milisegundos
+     * @return La petición asíncrona
+     */
+    static AsyncRequest start(HttpServletRequest request, RestRequestReader reader, RestResponseWriter writer,
+            long timeout) {
+        AsyncContext context = request.startAsync(request, writer.getResponse());
+        context.setTimeout(timeout);
+        AsyncRequest async = new AsyncRequest(context, reader, writer, writer.takeCompletion());
+        context.addListener(async);
+        return async;
+    }
+
+    static RestException timeoutException() {
+        return new RestException(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                "The request took too long to complete", false);
+    }
+
+    private final AsyncContext context;
+    private final RestRequestReader reader;
+    private final RestResponseWriter writer;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private final Runnable completion;
+    private volatile Future<?> pending;
+
+    private AsyncRequest(AsyncContext context, RestRequestReader reader, RestResponseWriter writer,
+            Runnable completion) {
+        this.context = context;
+        this.reader = reader;
+        this.writer = writer;
+        this.completion = completion;
+    }
+
+    /**
+     * Guarda el resultado que se está esperando, para cancelarlo si se agota
+     * el tiempo de espera
+     *
+     * @param pending El resultado pendiente
+     */
+    void setPending(Future<?> pending) {
+        this.pending = pending;
+    }
+
+    /**
+     * Envía la respuesta y termina la petición, si no se ha terminado antes
+     *
+     * @param send La acción que envía la respuesta
+     */
+    void finish(Runnable send) {
+        if (!done.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            send.run();
+        } finally {
+            reader.release();
+            if (completion != null) {
+                completion.run();
+            }
+            context.complete();
+        }
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        Future<?> future = this.pending;
+        if (future != null) {
+            future.cancel(false);
+        }
+        finish(() -> writer.sendError(timeoutException()));
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        if (done.compareAndSet(false, true)) {
+            reader.release();
+            if (completion != null) {
+                completion.run();
+            }
+        }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Anotación para señalar cuánto tiempo puede esperar un {@link RestServlet}
+ * a que termine un {@link java.util.concurrent.CompletionStage} devuelto por
+ * sus métodos de procesamiento. Si el tiempo se agota, la petición se
+ * responde con status 503.<br><br>
+ * 
+ * Para que la petición se procese de forma asíncrona el servlet debe
+ * declararse con <code>@WebServlet(asyncSupported = true)</code>. También se
+ * puede cambiar el tiempo con el init-param {@code asyncTimeout}
+ *
+ * @author Angel
+ */
+@Target(value = {ElementType.TYPE})
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface AsyncTimeout {
+    
+    /**
+     * El tiempo máximo de espera en milisegundos
+     * 
+     * @return El tiempo de espera
+     */
+    public long value() default RestServlet.DEFAULT_ASYNC_TIMEOUT;
+    
+}
@@ -0,0 +1,323 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import javax.servlet.http.HttpServletResponse;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Convierte los valores leídos de una request en objetos java. Para cada
+ * clase de java bean se calcula una sola vez un plan con su constructor y sus
+ * setters enlazados como {@link MethodHandle}, que se guarda en un
+ * {@link ClassValue}.<br><br>
+ *
+ * Los objetos y arreglos json anidados se convierten directamente desde el
+ * {@link JSONObject} o {@link JSONArray} leído del body, sin volver a pasar
+ * por texto. Las clases con un {@link JsonCodec} generado se crean con su
+ * codec, sin reflexión
+ *
+ * @author Angel
+ */
+final class BeanBinder {
+
+    private static final ClassValue<BindingPlan> PLANS = new ClassValue<BindingPlan>() {
+        @Override
+        protected BindingPlan computeValue(Class<?> type) {
+            return new BindingPlan(type);
+        }
+    };
+
+    private BeanBinder() {
+    }
+
+    /**
+     * Crea un bean con las propiedades que devuelva la función
+     *
+     * @param type La clase del bean
+     * @param values Obtiene el valor de una propiedad por su nombre, o
+     * {@code null} si no existe
+     * @return El bean creado
+     * @throws RestException Con status 400 si algún valor no puede
+     * convertirse al tipo de su propiedad
+     */
+    static <T> T bind(Class<T> type, Function<String, Object> values) {
+        JsonCodec<T> codec = JsonCodecs.forClass(type);
+        if (codec != null) {
+            return codec.read(values);
+        }
+        return type.cast(PLANS.get(type).create(values));
+    }
+
+    /**
+     * Convierte un valor leído de la request al tipo especificado
+     *
+     * @param value El valor: un String, Number, Boolean, JSONObject o
+     * JSONArray
+     * @param type El tipo destino, que puede ser genérico como
+     * {@code List<Bean>}
+     * @return El valor convertido o {@code null} si el valor es nulo
+     * @throws RestException Con status 400 si no puede convertirse
+     */
+    static Object convert(Object value, Type type) {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            return null;
+        }
+        Class<?> raw = rawType(type);
+        try {
+            return convert(value, type, raw);
+        } catch (RestException ex) {
+            throw ex;
+        } catch (RuntimeException ex) {
+            throw new RestException(HttpServletResponse.SC_BAD_REQUEST,
+                    "Cannot convert " + value + " to " + raw.getSimpleName(), false);
+        }
+    }
+
+    private static Object convert(Object value, Type type, Class<?> raw) {
+        if (raw == String.class) {
+            return value.toString();
+        }
+        if (raw == Object.class || raw.isInstance(value) && !isContainer(raw)) {
+            return value;
+        }
+        // Los enteros se convierten igual que en los getters de
+        // RestRequestReader: un valor con decimales o fuera de rango es un
+        // error, no se trunca
+        if (raw == Integer.class || raw == Integer.TYPE) {
+            return value instanceof Integer ? value : Integer.parseInt(value.toString());
+        }
+        if (raw == Long.class || raw == Long.TYPE) {
+            return value instanceof Long || value instanceof Integer
+                    ? ((Number) value).longValue() : Long.parseLong(value.toString());
+        }
+        if (raw == Double.class || raw == Double.TYPE) {
+            return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+        }
+        if (raw == Float.class || raw == Float.TYPE) {
+            return value instanceof Number ? ((Number) value).floatValue() : Float.parseFloat(value.toString());
+        }
+        if (raw == Short.class || raw == Short.TYPE) {
+            return Short.parseShort(value.toString());
+        }
+        if (raw == Byte.class || raw == Byte.TYPE) {
+            return Byte.parseByte(value.toString());
+        }
+        if (raw == Boolean.class || raw == Boolean.TYPE) {
+            return value instanceof Boolean ? value : Boolean.parseBoolean(value.toString());
+        }
+        if (raw == Character.class || raw == Character.TYPE) {
+            String str = value.toString();
+            if (str.length() != 1) {
+                throw new IllegalArgumentException(str);
+            }
+            return str.charAt(0);
+        }
+        if (raw == BigDecimal.class) {
+            return new BigDecimal(value.toString());
+        }
+        if (raw == BigInteger.class) {
+            return new BigInteger(value.toString());
+        }
+        if (raw.isEnum()) {
+            return enumValue(raw, value.toString());
+        }
+        if (raw == JSONObject.class) {
+            return new JSONObject(value.toString());
+        }
+        if (raw == JSONArray.class) {
+            return toJSONArray(value);
+        }
+        if (raw.isArray()) {
+            JSONArray json = toJSONArray(value);
+            Class<?> component = raw.getComponentType();
+            Object array = Array.newInstance(component, json.length());
+            for (int i = 0; i < json.length(); i++) {
+                Object item = convert(json.get(i), component);
+                if (item != null || !component.isPrimitive()) {
+                    Array.set(array, i, item);
+                }
+            }
+            return array;
+        }
+        if (Collection.class.isAssignableFrom(raw)) {
+            JSONArray json = toJSONArray(value);
+            Type element = typeArgument(type, 0);
+            Collection<Object> collection = Set.class.isAssignableFrom(raw)
+                    ? new HashSet() : new ArrayList(json.length());
+            for (int i = 0; i < json.length(); i++) {
+                collection.add(convert(json.get(i), element));
+            }
+            return collection;
+        }
+        if (Map.class.isAssignableFrom(raw)) {
+            JSONObject json = toJSONObject(value);
+            Type valueType = typeArgument(type, 1);
+            Map<String, Object> map = new LinkedHashMap();
+            Iterator keys = json.keys();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                map.put(key, convert(json.get(key), valueType));
+            }
+            return map;
+        }
+
+        JSONObject json = toJSONObject(value);
+        JsonCodec<?> codec = JsonCodecs.forClass(raw);
+        if (codec != null) {
+            return codec.read(json::opt);
+        }
+        return PLANS.get(raw).create(json::opt);
+    }
+
+    private static boolean isContainer(Class<?> raw) {
+        return Collection.class.isAssignableFrom(raw) || Map.class.isAssignableFrom(raw);
+    }
+
+    private static Object enumValue(Class raw, String name) {
+        return Enum.valueOf(raw, name);
+    }
+
+    private static JSONObject toJSONObject(Object value) {
+        return value instanceof JSONObject ? (JSONObject) value : new JSONObject(value.toString());
+    }
+
+    private static JSONArray toJSONArray(Object value) {
+        if (value instanceof JSONArray) {
+            return (JSONArray) value;
+        }
+        String str = value.toString();
+        if (str.startsWith("[") && str.endsWith("]")) {
+            return new JSONArray(str);
+        }
+        JSONArray array = new JSONArray();
+        array.put(value);
+        return array;
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        return Object.class;
+    }
+
+    private static Type typeArgument(Type type, int index) {
+        if (type instanceof ParameterizedType) {
+            Type[] args = ((ParameterizedType) type).getActualTypeArguments();
+            if (index < args.length) {
+                return args[index];
+            }
+        }
+        return Object.class;
+    }
+
+    /**
+     * Plan para crear un bean: su constructor sin parametros y sus setters,
+     * ya enlazados
+     */
+    private static final class BindingPlan {
+
+        private static final MethodType SETTER_TYPE = MethodType.methodType(
+                void.class, Object.class, Object.class);
+
+        private final Class<?> type;
+        private final MethodHandle constructor;
+        private final Property[] properties;
+
+        BindingPlan(Class<?> type) {
+            this.type = type;
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle ctor = null;
+            try {
+                Constructor<?> declared = type.getDeclaredConstructor();
+                declared.setAccessible(true);
+                ctor = lookup.unreflectConstructor(declared)
+                        .asType(MethodType.methodType(Object.class));
+            } catch (NoSuchMethodException | IllegalAccessException | RuntimeException ex) {
+                // La clase no puede crearse, se informa al usarla
+            }
+            this.constructor = ctor;
+
+            List<Property> list = new ArrayList();
+            for (Method method : type.getMethods()) {
+                String name = method.getName();
+                if (name.length() > 3 && name.startsWith("set") && method.getParameterCount() == 1
+                        && !Modifier.isStatic(method.getModifiers())) {
+                    try {
+                        method.setAccessible(true);
+                        MethodHandle setter = lookup.unreflect(method).asType(SETTER_TYPE);
+                        list.add(new Property(Character.toLowerCase(name.charAt(3)) + name.substring(4),
+                                method.getGenericParameterTypes()[0], setter));
+                    } catch (IllegalAccessException | RuntimeException ex) {
+                        // Se ignoran los setters que no se pueden usar
+                    }
+                }
+            }
+            this.properties = list.toArray(new Property[list.size()]);
+        }
+
+        Object create(Function<String, Object> values) {
+            if (constructor == null) {
+                throw new IllegalStateException("The class " + type.getName()
+                        + " must have a constructor without parameters");
+            }
+            try {
+                Object bean = (Object) constructor.invokeExact();
+                for (Property property : properties) {
+                    Object value = convert(values.apply(property.name), property.type);
+                    if (value != null) {
+                        property.setter.invokeExact(bean, value);
+                    }
+                }
+                return bean;
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+    }
+
+    private static final class Property {
+
+        private final String name;
+        private final Type type;
+        private final MethodHandle setter;
+
+        Property(String name, Type type, MethodHandle setter) {
+            this.name = name;
+            this.type = type;
+            this.setter = setter;
+        }
+
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool de los buffers donde se serializan las respuestas. Los buffers se
+ * agrupan por clases de tamaño, de 4 KB a 1 MB multiplicando por cuatro, y
+ * cada clase conserva una cantidad limitada de buffers libres, menor cuanto
+ * más grandes son. Los buffers de más de 1 MB no se guardan en el pool
+ *
+ * @author Angel
+ */
+public final class BufferPool {
+    
+    private static final int MIN_SIZE = 4 * 1024;
+    private static final int CLASSES = 5;
+    private static final int MAX_SIZE = MIN_SIZE << (2 * (CLASSES - 1));
+    private static final int[] MAX_RETAINED = {64, 32, 16, 8, 4};
+    
+    private static final BufferPool DEFAULT = new BufferPool();
+    
+    /**
+     * Obtiene el pool que usan todos los servlets
+     * 
+     * @return El pool compartido
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT;
+    }
+    
+    private final Queue<byte[]>[] free = new Queue[CLASSES];
+    private final AtomicInteger[] retained = new AtomicInteger[CLASSES];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    
+    private BufferPool() {
+        for (int i = 0; i < CLASSES; i++) {
+            free[i] = new ConcurrentLinkedQueue();
+            retained[i] = new AtomicInteger();
+        }
+    }
+    
+    /**
+     * Obtiene un buffer de al menos el tamaño indicado
+     * 
+     * @param size El tamaño mínimo
+     * @return Un buffer del pool o uno nuevo si no hay libres
+     */
+    byte[] acquire(int size) {
+        int index = classOf(size);
+        if (index < 0) {
+            misses.increment();
+            return new byte[size];
+        }
+        byte[] buffer = free[index].poll();
+        if (buffer == null) {
+            misses.increment();
+            return new byte[MIN_SIZE << (2 * index)];
+        }
+        retained[index].decrementAndGet();
+        hits.increment();
+        return buffer;
+    }
+    
+    /**
+     * Devuelve un buffer al pool. El buffer no debe usarse después
+     * 
+     * @param buffer El buffer obtenido con {@link #acquire(int)}
+     */
+    void release(byte[] buffer) {
+        int index = classOf(buffer.length);
+        if (index < 0 || buffer.length != MIN_SIZE << (2 * index)) {
+            return;
+        }
+        if (retained[index].incrementAndGet() > MAX_RETAINED[index]) {
+            retained[index].decrementAndGet();
+            return;
+        }
+        free[index].offer(buffer);
+    }
+    
+    private static int classOf(int size) {
+        if (size > MAX_SIZE) {
+            return -1;
+        }
+        int index = 0;
+        while (MIN_SIZE << (2 * index) < size) {
+            index++;
+        }
+        return index;
+    }
+    
+    /**
+     * Obtiene la cantidad de buffers que se tomaron del pool
+     * 
+     * @return La cantidad de aciertos
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+    
+    /**
+     * Obtiene la cantidad de buffers que tuvieron que crearse porque no
+     * había uno libre del tamaño necesario
+     * 
+     * @return La cantidad de fallos
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+    
+    /**
+     * Obtiene los bytes que ocupan los buffers libres del pool
+     * 
+     * @return Los bytes retenidos
+     */
+    public long getRetainedBytes() {
+        long bytes = 0;
+        for (int i = 0; i < CLASSES; i++) {
+            bytes += (long) retained[i].get() * (MIN_SIZE << (2 * i));
+        }
+        return bytes;
+    }
+    
+}
@@ -0,0 +1,92 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Guarda en memoria las respuestas exitosas de las peticiones GET y HEAD de
+ * un {@link RestServlet}. Las peticiones con la misma clave se responden con
+ * los bytes y headers guardados, sin llamar a los métodos de procesamiento ni
+ * volver a convertir el resultado a json.<br><br>
+ * 
+ * La clave es el pathInfo, que incluye los parametros del path, seguido de
+ * los parametros de query listados en {@link #queryParameters()}. Solo se
+ * guardan los cuerpos enviados con
+ * {@link RestResponseWriter#send(java.lang.Object)} y nunca el header
+ * {@code Set-Cookie}. Las entradas pueden invalidarse con
+ * {@link RestServlet#getResponseCache()}.<br><br>
+ * 
+ * Los cuerpos grandes pueden guardarse fuera del heap con
+ * {@link #offHeapThreshold()}, en buffers directos o, si se indica
+ * {@link #file()}, en un archivo mapeado en memoria que se conserva entre
+ * reinicios. Cuando el contenedor lo permite, los cuerpos del archivo se
+ * envían con sendfile, sin copiarlos por la JVM.<br><br>
+ * 
+ * Los parametros de inicio {@code cacheTtl}, {@code cacheMaxEntries},
+ * {@code cacheOffHeapThreshold}, {@code cacheOffHeapMaxBytes} y
+ * {@code cacheFile} tienen prioridad sobre la anotación
+ *
+ * @author Angel
+ */
+@Target(value = {ElementType.TYPE})
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface CacheResponse {
+    
+    /**
+     * El tiempo en milisegundos que una respuesta sigue siendo válida
+     * 
+     * @return El tiempo de vida de las entradas
+     */
+    public long ttl() default 60000L;
+    
+    /**
+     * La cantidad máxima de respuestas guardadas. Al superarla se descartan
+     * las usadas hace más tiempo
+     * 
+     * @return La cantidad máxima de entradas
+     */
+    public int maxEntries() default 1000;
+    
+    /**
+     * Los parametros de query que forman parte de la clave. Los demás
+     * parametros se ignoran, así que peticiones que solo difieren en ellos
+     * reciben la misma respuesta
+     * 
+     * @return Los nombres de los parametros
+     */
+    public String[] queryParameters() default {};
+    
+    /**
+     * El tamaño en bytes a partir del cual los cuerpos se guardan fuera del
+     * heap. Un valor negativo guarda todos los cuerpos en el heap
+     * 
+     * @return El tamaño mínimo de los cuerpos fuera del heap
+     */
+    public int offHeapThreshold() default -1;
+    
+    /**
+     * La cantidad máxima de bytes guardados fuera del heap. Los cuerpos que
+     * no caben no se guardan hasta que expiren o se descarten otros
+     * 
+     * @return El tamaño máximo del almacén
+     */
+    public long offHeapMaxBytes() default 256L * 1024 * 1024;
+    
+    /**
+     * La ruta base del archivo donde se guardan los cuerpos fuera del heap.
+     * Se crean un archivo {@code .index} y uno {@code .data} por cada
+     * generación de compactación. Si está vacía los cuerpos se guardan en
+     * buffers directos y se pierden al detener la aplicación
+     * 
+     * @return La ruta base del archivo
+     */
+    public String file() default "";
+    
+}
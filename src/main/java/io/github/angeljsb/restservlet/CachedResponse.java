@@ -0,0 +1,176 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import javax.servlet.http.HttpServletResponse;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Una respuesta guardada en la {@link ResponseCache}: el cuerpo ya
+ * serializado, su hash para el ETag y los headers que tenía al enviarse. El
+ * cuerpo está en el heap o, si es grande, en una región del
+ * {@link OffHeapStore}
+ *
+ * @author Angel
+ */
+final class CachedResponse {
+    
+    /**
+     * Guarda el estado de una response que está por enviarse
+     * 
+     * @param response La response
+     * @param body El cuerpo serializado
+     * @param hash El hash del cuerpo para el ETag o {@code null}
+     * @return La respuesta a guardar
+     */
+    static CachedResponse capture(HttpServletResponse response, byte[] body, String hash) {
+        List<String> headers = new ArrayList();
+        for (String name : response.getHeaderNames()) {
+            if (isCacheable(name)) {
+                Collection<String> values = response.getHeaders(name);
+                for (String value : values) {
+                    headers.add(name);
+                    headers.add(value);
+                }
+            }
+        }
+        return new CachedResponse(body, null, hash, response.getContentType(),
+                headers.toArray(new String[headers.size()]));
+    }
+    
+    /**
+     * Reconstruye una respuesta guardada en el archivo del
+     * {@link OffHeapStore}
+     * 
+     * @param region La región con el cuerpo
+     * @return La respuesta
+     */
+    static CachedResponse restore(OffHeapStore.Region region) {
+        JSONObject meta = region.getMeta();
+        JSONArray list = meta.getJSONArray("headers");
+        String[] headers = new String[list.length()];
+        for (int i = 0; i < headers.length; i++) {
+            headers[i] = list.getString(i);
+        }
+        CachedResponse cached = new CachedResponse(null, region, meta.optString("hash", null),
+                meta.optString("type", null), headers);
+        cached.setExpiresAt(meta.getLong("expires"));
+        return cached;
+    }
+    
+    private static boolean isCacheable(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "content-type":
+            case "content-length":
+            case "content-encoding":
+            case "vary":
+            case "set-cookie":
+            case "date":
+                return false;
+            default:
+                return true;
+        }
+    }
+    
+    private final byte[] body;
+    private final OffHeapStore.Region region;
+    private final String hash;
+    private final String contentType;
+    private final String[] headers;
+    private long expiresAt;
+    
+    private CachedResponse(byte[] body, OffHeapStore.Region region, String hash,
+            String contentType, String[] headers) {
+        this.body = body;
+        this.region = region;
+        this.hash = hash;
+        this.contentType = contentType;
+        this.headers = headers;
+    }
+    
+    /**
+     * Crea una copia de esta respuesta con el cuerpo en una región fuera del
+     * heap
+     * 
+     * @param region La región con el cuerpo
+     * @return La copia
+     */
+    CachedResponse withRegion(OffHeapStore.Region region) {
+        CachedResponse copy = new CachedResponse(null, region, hash, contentType, headers);
+        copy.setExpiresAt(expiresAt);
+        return copy;
+    }
+    
+    /**
+     * @return El cuerpo o {@code null} si está fuera del heap
+     */
+    byte[] getBody() {
+        return body;
+    }
+    
+    /**
+     * @return La región con el cuerpo o {@code null} si está en el heap
+     */
+    OffHeapStore.Region getRegion() {
+        return region;
+    }
+    
+    int getLength() {
+        return body != null ? body.length : region.getLength();
+    }
+    
+    String getHash() {
+        return hash;
+    }
+    
+    long getExpiresAt() {
+        return expiresAt;
+    }
+    
+    void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+    
+    /**
+     * Obtiene los datos de la respuesta, sin el cuerpo, para guardarlos en el
+     * índice del {@link OffHeapStore}
+     * 
+     * @return Los datos como json
+     */
+    JSONObject describe() {
+        JSONObject meta = new JSONObject();
+        meta.put("hash", hash);
+        meta.put("type", contentType);
+        meta.put("headers", new JSONArray(Arrays.asList(headers)));
+        meta.put("expires", expiresAt);
+        return meta;
+    }
+    
+    /**
+     * Copia el tipo de contenido y los headers guardados a una response
+     * 
+     * @param response La response que se va a enviar
+     */
+    void applyHeaders(HttpServletResponse response) {
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        for (int i = 0; i < headers.length; i += 2) {
+            if (i > 0 && headers[i].equals(headers[i - 2])) {
+                response.addHeader(headers[i], headers[i + 1]);
+            } else {
+                response.setHeader(headers[i], headers[i + 1]);
+            }
+        }
+    }
+    
+}
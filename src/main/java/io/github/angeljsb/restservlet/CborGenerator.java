@@ -0,0 +1,255 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.json.JSONString;
+
+/**
+ * Generador que escribe CBOR (RFC 8949) en un {@link OutputStream}. Los
+ * objetos y arreglos se escriben con longitud indefinida, así que no hace
+ * falta conocer su tamaño antes de escribirlos. Los enteros usan la menor
+ * cantidad de bytes posible, los {@link BigInteger} que no caben en un long
+ * se escriben como bignum y los {@link BigDecimal} como fracción decimal
+ *
+ * @author Angel
+ */
+final class CborGenerator extends JsonGenerator {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1 << 5;
+    private static final int MAJOR_BYTES = 2 << 5;
+    private static final int MAJOR_TEXT = 3 << 5;
+    private static final int MAJOR_ARRAY = 4 << 5;
+    private static final int MAJOR_TAG = 6 << 5;
+
+    private static final int BEGIN_ARRAY = 0x9F;
+    private static final int BEGIN_MAP = 0xBF;
+    private static final int BREAK = 0xFF;
+    private static final int FALSE = 0xF4;
+    private static final int TRUE = 0xF5;
+    private static final int NULL = 0xF6;
+    private static final int FLOAT = 0xFA;
+    private static final int DOUBLE = 0xFB;
+
+    private static final int TAG_POSITIVE_BIGNUM = 2;
+    private static final int TAG_NEGATIVE_BIGNUM = 3;
+    private static final int TAG_DECIMAL_FRACTION = 4;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count;
+
+    /**
+     * Crea un generador sobre un stream
+     *
+     * @param out El destino de los bytes
+     */
+    CborGenerator(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        write(BEGIN_MAP);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        write(BREAK);
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        write(BEGIN_ARRAY);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        write(BREAK);
+    }
+
+    @Override
+    public void name(String name) throws IOException {
+        value(name);
+    }
+
+    @Override
+    public void value(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeHead(MAJOR_TEXT, bytes.length);
+        write(bytes);
+    }
+
+    @Override
+    public void value(Number value) throws IOException {
+        if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            value(value.longValue());
+        } else if (value instanceof Float) {
+            writeFloat(value.floatValue());
+        } else if (value instanceof BigInteger) {
+            writeBigInteger((BigInteger) value);
+        } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            writeHead(MAJOR_TAG, TAG_DECIMAL_FRACTION);
+            writeHead(MAJOR_ARRAY, 2);
+            value(-(long) decimal.scale());
+            writeBigInteger(decimal.unscaledValue());
+        } else {
+            value(value.doubleValue());
+        }
+    }
+
+    @Override
+    public void value(long value) throws IOException {
+        if (value < 0) {
+            writeHead(MAJOR_NEGATIVE, -1 - value);
+        } else {
+            writeHead(MAJOR_UNSIGNED, value);
+        }
+    }
+
+    @Override
+    public void value(double value) throws IOException {
+        ensure(9);
+        buffer[count++] = (byte) DOUBLE;
+        long bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[count++] = (byte) (bits >>> shift);
+        }
+    }
+
+    @Override
+    public void value(boolean value) throws IOException {
+        write(value ? TRUE : FALSE);
+    }
+
+    @Override
+    public void nullValue() throws IOException {
+        write(NULL);
+    }
+
+    /**
+     * Convierte el texto json del objeto a CBOR
+     */
+    @Override
+    protected void jsonString(JSONString value) throws IOException {
+        writeValue(new JsonReader(new StringReader(value.toJSONString()), -1).readValue());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        out.close();
+    }
+
+    private void writeFloat(float value) throws IOException {
+        ensure(5);
+        buffer[count++] = (byte) FLOAT;
+        int bits = Float.floatToIntBits(value);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            buffer[count++] = (byte) (bits >>> shift);
+        }
+    }
+
+    private void writeBigInteger(BigInteger value) throws IOException {
+        if (value.bitLength() < 64) {
+            value(value.longValue());
+            return;
+        }
+        boolean negative = value.signum() < 0;
+        BigInteger magnitude = negative ? value.negate().subtract(BigInteger.ONE) : value;
+        if (magnitude.bitLength() <= 64) {
+            // Cabe como entero de 64 bits sin signo
+            writeHead(negative ? MAJOR_NEGATIVE : MAJOR_UNSIGNED, magnitude.longValue());
+            return;
+        }
+        byte[] bytes = magnitude.toByteArray();
+        if (bytes[0] == 0) {
+            // El byte del signo que agrega toByteArray
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        writeHead(MAJOR_TAG, negative ? TAG_NEGATIVE_BIGNUM : TAG_POSITIVE_BIGNUM);
+        writeHead(MAJOR_BYTES, bytes.length);
+        write(bytes);
+    }
+
+    /**
+     * Escribe el byte inicial de un elemento con su argumento, que se
+     * interpreta sin signo
+     */
+    private void writeHead(int major, long argument) throws IOException {
+        ensure(9);
+        if (argument >= 0 && argument < 24) {
+            buffer[count++] = (byte) (major | argument);
+        } else if (argument >= 0 && argument <= 0xFF) {
+            buffer[count++] = (byte) (major | 24);
+            buffer[count++] = (byte) argument;
+        } else if (argument >= 0 && argument <= 0xFFFF) {
+            buffer[count++] = (byte) (major | 25);
+            buffer[count++] = (byte) (argument >>> 8);
+            buffer[count++] = (byte) argument;
+        } else if (argument >= 0 && argument <= 0xFFFFFFFFL) {
+            buffer[count++] = (byte) (major | 26);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buffer[count++] = (byte) (argument >>> shift);
+            }
+        } else {
+            buffer[count++] = (byte) (major | 27);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[count++] = (byte) (argument >>> shift);
+            }
+        }
+    }
+
+    private void write(int b) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - count) {
+            flushBuffer();
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void ensure(int length) throws IOException {
+        if (length > buffer.length - count) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+}
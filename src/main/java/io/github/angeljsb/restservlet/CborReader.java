@@ -0,0 +1,350 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Lector de CBOR (RFC 8949) que construye los mismos valores que
+ * {@link JsonReader}: los mapas como {@link JSONObject}, los arreglos como
+ * {@link JSONArray}, los enteros como Integer o Long si caben y los decimales
+ * como Double. Los bignum se leen como {@link BigInteger}, las fracciones
+ * decimales como {@link BigDecimal} y las cadenas de bytes como texto en
+ * base64. Las demás etiquetas se ignoran y se lee su contenido
+ *
+ * @author Angel
+ */
+final class CborReader {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int INDEFINITE = 31;
+    private static final int BREAK = 0xFF;
+    private static final Object BREAK_MARK = new Object();
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final int maxDepth;
+    private int position;
+    private int limit;
+    private int depth;
+
+    /**
+     * Crea un lector de CBOR sin límite de profundidad
+     *
+     * @param in El origen de los bytes
+     */
+    CborReader(InputStream in) {
+        this(in, 0);
+    }
+
+    /**
+     * Crea un lector de CBOR
+     *
+     * @param in El origen de los bytes
+     * @param maxDepth La cantidad máxima de arreglos, mapas y etiquetas
+     * anidados, o 0 si no hay límite. Al superarla se lanza una
+     * {@link RestException} con status 413 antes de seguir leyendo
+     */
+    CborReader(InputStream in, int maxDepth) {
+        this.in = in;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Lee un mapa y agrega sus propiedades al mapa, sin crear un
+     * {@link JSONObject} para el mapa de primer nivel
+     *
+     * @param map El mapa donde se guardan las propiedades
+     * @throws IOException Si ocurre un error de I/O
+     * @throws JSONException Si el contenido no es un mapa CBOR
+     */
+    void readObject(Map<String, Object> map) throws IOException {
+        int initial = next();
+        if ((initial >> 5) != 5) {
+            throw new JSONException("A CBOR body must be a map");
+        }
+        enter();
+        long size = readArgument(initial);
+        for (long i = 0; size < 0 || i < size; i++) {
+            Object key = readItem();
+            if (key == BREAK_MARK) {
+                if (size < 0) {
+                    return;
+                }
+                throw new JSONException("Unexpected break");
+            }
+            map.put(key.toString(), readValue());
+        }
+    }
+
+    /**
+     * Lee un valor de cualquier tipo
+     *
+     * @return El valor leído
+     * @throws IOException Si ocurre un error de I/O
+     * @throws JSONException Si el contenido no es CBOR válido
+     */
+    Object readValue() throws IOException {
+        Object value = readItem();
+        if (value == BREAK_MARK) {
+            throw new JSONException("Unexpected break");
+        }
+        return value;
+    }
+
+    private Object readItem() throws IOException {
+        int initial = next();
+        if (initial == BREAK) {
+            return BREAK_MARK;
+        }
+        int major = initial >> 5;
+        switch (major) {
+            case 0:
+                return integer(readArgument(initial), false);
+            case 1:
+                return integer(readArgument(initial), true);
+            case 2:
+                return Base64.getEncoder().encodeToString(readBytes(initial, 2));
+            case 3:
+                return new String(readBytes(initial, 3), StandardCharsets.UTF_8);
+            case 4:
+                enter();
+                JSONArray array = readArray(readArgument(initial));
+                depth--;
+                return array;
+            case 5:
+                enter();
+                JSONObject object = readMap(readArgument(initial));
+                depth--;
+                return object;
+            case 6:
+                enter();
+                Object tagged = readTagged(readArgument(initial));
+                depth--;
+                return tagged;
+            default:
+                return readSimple(initial);
+        }
+    }
+
+    private JSONArray readArray(long size) throws IOException {
+        JSONArray array = new JSONArray();
+        for (long i = 0; size < 0 || i < size; i++) {
+            Object item = readItem();
+            if (item == BREAK_MARK) {
+                if (size < 0) {
+                    break;
+                }
+                throw new JSONException("Unexpected break");
+            }
+            array.put(item);
+        }
+        return array;
+    }
+
+    private JSONObject readMap(long size) throws IOException {
+        JSONObject object = new JSONObject();
+        for (long i = 0; size < 0 || i < size; i++) {
+            Object key = readItem();
+            if (key == BREAK_MARK) {
+                if (size < 0) {
+                    break;
+                }
+                throw new JSONException("Unexpected break");
+            }
+            object.put(key.toString(), readValue());
+        }
+        return object;
+    }
+
+    private Object readTagged(long tag) throws IOException {
+        Object value = readValue();
+        if ((tag == 2 || tag == 3) && value instanceof String) {
+            BigInteger magnitude = new BigInteger(1, Base64.getDecoder().decode((String) value));
+            return tag == 2 ? magnitude : magnitude.negate().subtract(BigInteger.ONE);
+        }
+        if (tag == 4 && value instanceof JSONArray && ((JSONArray) value).length() == 2) {
+            JSONArray parts = (JSONArray) value;
+            BigInteger mantissa = new BigInteger(parts.get(1).toString());
+            return new BigDecimal(mantissa, -parts.getInt(0));
+        }
+        return value;
+    }
+
+    private Object readSimple(int initial) throws IOException {
+        switch (initial & 0x1F) {
+            case 20:
+                return Boolean.FALSE;
+            case 21:
+                return Boolean.TRUE;
+            case 22:
+            case 23:
+                return JSONObject.NULL;
+            case 25:
+                return (double) halfToFloat((next() << 8) | next());
+            case 26:
+                return (double) Float.intBitsToFloat((int) readFixed(4));
+            case 27:
+                return Double.longBitsToDouble(readFixed(8));
+            default:
+                throw new JSONException("Unsupported CBOR simple value " + (initial & 0x1F));
+        }
+    }
+
+    private void enter() {
+        if (++depth > maxDepth && maxDepth > 0) {
+            throw RequestLimits.tooLarge("The body is nested deeper than " + maxDepth + " levels");
+        }
+    }
+
+    /**
+     * Convierte un entero al mismo tipo que usa org.json para los números
+     * sin decimales
+     */
+    private static Object integer(long argument, boolean negative) {
+        if (argument < 0) {
+            // No cabe en un long con signo
+            BigInteger value = new BigInteger(Long.toUnsignedString(argument));
+            return negative ? value.negate().subtract(BigInteger.ONE) : value;
+        }
+        long value = negative ? -1 - argument : argument;
+        if (value == (int) value) {
+            return (int) value;
+        }
+        return value;
+    }
+
+    private static float halfToFloat(int half) {
+        int exponent = (half >> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        float value;
+        if (exponent == 0) {
+            value = (float) (mantissa * Math.pow(2, -24));
+        } else if (exponent == 31) {
+            value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+        } else {
+            value = (float) ((mantissa + 1024) * Math.pow(2, exponent - 25));
+        }
+        return (half & 0x8000) != 0 ? -value : value;
+    }
+
+    /**
+     * Lee el argumento de un elemento
+     *
+     * @return El argumento, que para los enteros de 64 bits puede ser
+     * negativo si se interpreta con signo, o {@code -1} si la longitud es
+     * indefinida
+     */
+    private long readArgument(int initial) throws IOException {
+        int info = initial & 0x1F;
+        if (info < 24) {
+            return info;
+        }
+        switch (info) {
+            case 24:
+                return next();
+            case 25:
+                return readFixed(2);
+            case 26:
+                return readFixed(4);
+            case 27:
+                long argument = readFixed(8);
+                if (argument < 0 && (initial >> 5) >= 2) {
+                    // Una longitud que no cabe en un long
+                    throw new JSONException("CBOR item too long");
+                }
+                return argument;
+            case INDEFINITE:
+                int major = initial >> 5;
+                if (major >= 2 && major <= 5) {
+                    return -1;
+                }
+                throw new JSONException("Invalid indefinite length");
+            default:
+                throw new JSONException("Invalid CBOR argument " + info);
+        }
+    }
+
+    private byte[] readBytes(int initial, int major) throws IOException {
+        long length = readArgument(initial);
+        if (length >= 0) {
+            if (length > Integer.MAX_VALUE - 8) {
+                throw new JSONException("CBOR string too long");
+            }
+            return readExactly((int) length);
+        }
+        // Cadena por partes: cada parte es una cadena definida del mismo tipo
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        while (true) {
+            int chunk = next();
+            if (chunk == BREAK) {
+                return chunks.toByteArray();
+            }
+            if ((chunk >> 5) != major || (chunk & 0x1F) == INDEFINITE) {
+                throw new JSONException("Invalid chunk in CBOR string");
+            }
+            long size = readArgument(chunk);
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new JSONException("CBOR string too long");
+            }
+            chunks.write(readExactly((int) size));
+        }
+    }
+
+    private byte[] readExactly(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            if (position == limit && !fill()) {
+                throw new JSONException("Unexpected end of CBOR");
+            }
+            int count = Math.min(length - copied, limit - position);
+            System.arraycopy(buffer, position, bytes, copied, count);
+            position += count;
+            copied += count;
+        }
+        return bytes;
+    }
+
+    private long readFixed(int bytes) throws IOException {
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value = (value << 8) | next();
+        }
+        return value;
+    }
+
+    private int next() throws IOException {
+        if (position == limit && !fill()) {
+            throw new JSONException("Unexpected end of CBOR");
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        while (read == 0) {
+            read = in.read(buffer, 0, buffer.length);
+        }
+        if (read < 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+}
@@ -0,0 +1,30 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Hace que un {@link RestServlet} mida sus peticiones por método http y por
+ * patrón de {@link WithPathParameters}: la cantidad por status, la latencia
+ * y los bytes recibidos y enviados. Las métricas se obtienen con
+ * {@link RestServlet#getRequestMetrics()} o, para todos los servlets de la
+ * aplicación, con {@link MetricsServlet}.<br><br>
+ *
+ * La latencia va desde que el servlet recibe la petición hasta que se envía
+ * la respuesta, incluyendo la espera de los métodos asíncronos. También se
+ * puede activar con el parametro de inicio {@code collectMetrics}
+ *
+ * @author Angel
+ */
+@Target(value = {ElementType.TYPE})
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface CollectMetrics {
+
+}
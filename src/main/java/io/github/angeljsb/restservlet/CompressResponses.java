@@ -0,0 +1,47 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.zip.Deflater;
+
+/**
+ * Activa la compresión de las respuestas de un {@link RestServlet}. Las
+ * respuestas se comprimen con gzip o deflate según el header
+ * {@code Accept-Encoding} de la request, solo si su tamaño supera
+ * {@link #threshold()}.<br><br>
+ * 
+ * También se puede activar o cambiar con los parametros de inicio
+ * {@code compressionThreshold} y {@code compressionLevel}, que tienen
+ * prioridad sobre la anotación. Un {@code compressionThreshold} negativo
+ * desactiva la compresión
+ *
+ * @author Angel
+ */
+@Target(value = {ElementType.TYPE})
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface CompressResponses {
+    
+    /**
+     * El tamaño en bytes a partir del cual se comprime una respuesta. Las
+     * respuestas más pequeñas se envían sin comprimir
+     * 
+     * @return El tamaño mínimo
+     */
+    public int threshold() default 1024;
+    
+    /**
+     * El nivel de compresión, de {@link Deflater#BEST_SPEED} a
+     * {@link Deflater#BEST_COMPRESSION}
+     * 
+     * @return El nivel de compresión
+     */
+    public int level() default 6;
+    
+}
@@ -0,0 +1,175 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+/**
+ * Funciones para generar y comparar ETags. El hash de los cuerpos es
+ * xxHash64, que no es criptográfico pero procesa 8 bytes por paso y es
+ * suficiente para detectar cambios en una respuesta
+ *
+ * @author Angel
+ */
+final class ETags {
+    
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private ETags() {
+    }
+    
+    /**
+     * Calcula el hash de un cuerpo, que es la parte del ETag que no depende
+     * de la codificación
+     * 
+     * @param data Los bytes del cuerpo
+     * @param length La cantidad de bytes a usar
+     * @return El hash en hexadecimal
+     */
+    static String hashOf(byte[] data, int length) {
+        long hash = hash(data, 0, length);
+        char[] hex = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            hex[i] = HEX[(int) hash & 0xF];
+            hash >>>= 4;
+        }
+        return new String(hex);
+    }
+    
+    /**
+     * Crea el ETag fuerte de una representación de un cuerpo
+     * 
+     * @param hash El hash del cuerpo, de {@link #hashOf(byte[], int)}
+     * @param variant La codificación con la que se envía el cuerpo, para que
+     * cada representación tenga un ETag distinto, o {@code null}
+     * @return El ETag entre comillas
+     */
+    static String forBody(String hash, String variant) {
+        return variant == null
+                ? "\"" + hash + "\""
+                : "\"" + hash + "-" + variant + "\"";
+    }
+    
+    /**
+     * Pone un ETag entre comillas si no las tiene
+     * 
+     * @param tag El ETag, con o sin comillas
+     * @return El ETag listo para el header
+     */
+    static String quote(String tag) {
+        if (tag.startsWith("\"") || tag.startsWith("W/\"")) {
+            return tag;
+        }
+        return "\"" + tag + "\"";
+    }
+    
+    /**
+     * Comprueba si un ETag coincide con el header If-None-Match de una
+     * request, con la comparación débil que usa ese header
+     * 
+     * @param ifNoneMatch El valor del header o {@code null}
+     * @param tag El ETag de la respuesta
+     * @return {@code true} si el cliente ya tiene esa representación
+     */
+    static boolean matches(String ifNoneMatch, String tag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = opaque(tag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || opaque(candidate).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+    
+    /**
+     * Calcula el xxHash64 de un rango de bytes, con semilla 0
+     */
+    static long hash(byte[] data, int offset, int length) {
+        int position = offset;
+        int end = offset + length;
+        long hash;
+        if (length >= 32) {
+            long v1 = PRIME1 + PRIME2;
+            long v2 = PRIME2;
+            long v3 = 0;
+            long v4 = -PRIME1;
+            int limit = end - 32;
+            do {
+                v1 = round(v1, readLong(data, position));
+                v2 = round(v2, readLong(data, position + 8));
+                v3 = round(v3, readLong(data, position + 16));
+                v4 = round(v4, readLong(data, position + 24));
+                position += 32;
+            } while (position <= limit);
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                    + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = merge(hash, v1);
+            hash = merge(hash, v2);
+            hash = merge(hash, v3);
+            hash = merge(hash, v4);
+        } else {
+            hash = PRIME5;
+        }
+        hash += length;
+        
+        while (position + 8 <= end) {
+            hash ^= round(0, readLong(data, position));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            position += 8;
+        }
+        if (position + 4 <= end) {
+            hash ^= (readInt(data, position) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            position += 4;
+        }
+        while (position < end) {
+            hash ^= (data[position] & 0xFF) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+            position++;
+        }
+        
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+    
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+    
+    private static long merge(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME1 + PRIME4;
+    }
+    
+    private static long readLong(byte[] data, int i) {
+        return (data[i] & 0xFFL) | (data[i + 1] & 0xFFL) << 8 | (data[i + 2] & 0xFFL) << 16
+                | (data[i + 3] & 0xFFL) << 24 | (data[i + 4] & 0xFFL) << 32 | (data[i + 5] & 0xFFL) << 40
+                | (data[i + 6] & 0xFFL) << 48 | (data[i + 7] & 0xFFL) << 56;
+    }
+    
+    private static int readInt(byte[] data, int i) {
+        return (data[i] & 0xFF) | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF) << 16
+                | (data[i + 3] & 0xFF) << 24;
+    }
+    
+}
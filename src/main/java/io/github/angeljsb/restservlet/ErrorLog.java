@@ -0,0 +1,278 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Registro de los errores de un {@link RestServlet}. Registrar un error solo
+ * lo agrega a una cola de tamaño fijo, sin bloquear nunca el hilo de la
+ * petición; un hilo del servlet los escribe en {@code System.err}, un json
+ * por línea:
+ *
+ * <pre>
+ * {"time":"...","servlet":"users","method":"GET","route":"/users/{id}",
+ *  "status":400,"latencyMs":0.42,"error":"...RestException",
+ *  "message":"Parameter id is obligatory"}
+ * </pre>
+ *
+ * El campo {@code route} es el patrón de {@link WithPathParameters} que
+ * coincidió; si ninguno coincidió se escribe {@code path} con el pathInfo.
+ * Los errores que tienen stack trace lo incluyen en {@code trace}. Si se
+ * descartaron errores desde la última línea, la siguiente incluye cuántos en
+ * {@code dropped}.<br><br>
+ *
+ * Solo se registra una fracción de los errores del cliente y un máximo de
+ * errores por segundo, ver {@link ErrorLogging}
+ *
+ * @author Angel
+ */
+public final class ErrorLog {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    /**
+     * Crea el registro de un servlet con la configuración de sus init-params
+     * o de su anotación {@link ErrorLogging}
+     *
+     * @param servlet El servlet
+     * @return El registro, con su hilo ya iniciado
+     */
+    static ErrorLog forServlet(RestServlet servlet) {
+        ErrorLogging ann = servlet.getClass().getAnnotation(ErrorLogging.class);
+        double sampleRate = ann == null ? 0.1 : ann.sampleRate();
+        int maxPerSecond = ann == null ? 100 : ann.maxPerSecond();
+        int queue = ann == null ? 1024 : ann.queue();
+
+        String param = servlet.getInitParameter("errorLogSampleRate");
+        if (param != null) {
+            sampleRate = Double.parseDouble(param.trim());
+        }
+        param = servlet.getInitParameter("errorLogMaxPerSecond");
+        if (param != null) {
+            maxPerSecond = Integer.parseInt(param.trim());
+        }
+        param = servlet.getInitParameter("errorLogQueue");
+        if (param != null) {
+            queue = Integer.parseInt(param.trim());
+        }
+        return new ErrorLog(servlet.getServletName(), sampleRate, maxPerSecond, queue, System.err);
+    }
+
+    private final String servletName;
+    private final double sampleRate;
+    private final int maxPerSecond;
+    private final BlockingQueue<Entry> queue;
+    private final PrintStream out;
+    private final Thread thread;
+    private final AtomicLong window = new AtomicLong();
+    private final AtomicInteger inWindow = new AtomicInteger();
+    private final AtomicLong logged = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private long reportedDrops;
+    private volatile boolean closed;
+
+    ErrorLog(String servletName, double sampleRate, int maxPerSecond, int queue, PrintStream out) {
+        this.servletName = servletName;
+        this.sampleRate = sampleRate;
+        this.maxPerSecond = maxPerSecond;
+        this.queue = new ArrayBlockingQueue(Math.max(1, queue));
+        this.out = out;
+        this.thread = new Thread(this::run, "RestServlet error log " + servletName);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Registra el error de una petición si pasa el muestreo y el límite por
+     * segundo y si cabe en la cola
+     *
+     * @param request La request que falló
+     * @param path El pathInfo de la request, leído en el hilo del contenedor
+     * @param route El patrón que coincidió con el pathInfo o {@code null}
+     * @param status El status con el que se respondió
+     * @param startTime El {@link System#nanoTime()} en que empezó la petición
+     * @param error El error
+     */
+    void log(HttpServletRequest request, String path, String route, int status, long startTime, Throwable error) {
+        long now = System.nanoTime();
+        if (status < 500 && sampleRate < 1
+                && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            skipped.incrementAndGet();
+            return;
+        }
+        if (!acquire(now)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), request, path, route, status, now - startTime, error);
+        if (!queue.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Cuenta un error en la ventana del segundo actual
+     *
+     * @return {@code false} si ya se registraron los errores permitidos en
+     * este segundo
+     */
+    private boolean acquire(long now) {
+        if (maxPerSecond <= 0) {
+            return true;
+        }
+        long second = now / SECOND;
+        long current = window.get();
+        if (second != current && window.compareAndSet(current, second)) {
+            inWindow.set(0);
+        }
+        return inWindow.incrementAndGet() <= maxPerSecond;
+    }
+
+    /**
+     * Obtiene la cantidad de errores escritos
+     *
+     * @return Los errores escritos desde que se inició el servlet
+     */
+    public long getLogged() {
+        return logged.get();
+    }
+
+    /**
+     * Obtiene la cantidad de errores descartados por el límite por segundo o
+     * por tener la cola llena
+     *
+     * @return Los errores descartados desde que se inició el servlet
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Obtiene la cantidad de errores del cliente que no se registraron por
+     * el muestreo
+     *
+     * @return Los errores omitidos desde que se inició el servlet
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * Escribe los errores que quedan en la cola y detiene el hilo
+     */
+    void close() {
+        closed = true;
+        thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                Entry entry = queue.poll(1, TimeUnit.SECONDS);
+                if (entry != null) {
+                    write(entry);
+                }
+            }
+        } catch (InterruptedException ex) {
+            // El servlet se está destruyendo
+        }
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            write(entry);
+        }
+    }
+
+    private void write(Entry entry) {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        try (JsonStreamGenerator json = new JsonStreamGenerator(line)) {
+            json.beginObject();
+            json.name("time");
+            json.value(Instant.ofEpochMilli(entry.time).toString());
+            json.name("servlet");
+            json.value(servletName);
+            if (entry.method != null) {
+                json.name("method");
+                json.value(entry.method);
+            }
+            if (entry.route != null) {
+                json.name("route");
+                json.value(entry.route);
+            } else if (entry.path != null) {
+                json.name("path");
+                json.value(entry.path);
+            }
+            json.name("status");
+            json.value(entry.status);
+            json.name("latencyMs");
+            json.value(entry.latency / 1_000_000.0);
+            json.name("error");
+            json.value(entry.error.getClass().getName());
+            if (entry.error.getMessage() != null) {
+                json.name("message");
+                json.value(entry.error.getMessage());
+            }
+            if (entry.error.getStackTrace().length > 0) {
+                StringWriter trace = new StringWriter();
+                entry.error.printStackTrace(new PrintWriter(trace));
+                json.name("trace");
+                json.value(trace.toString());
+            }
+            long drops = dropped.get();
+            if (drops > reportedDrops) {
+                json.name("dropped");
+                json.value(drops - reportedDrops);
+                reportedDrops = drops;
+            }
+            json.endObject();
+            json.lineBreak();
+        } catch (IOException | RuntimeException ex) {
+            return;
+        }
+        out.write(line.toByteArray(), 0, line.size());
+        out.flush();
+        logged.incrementAndGet();
+    }
+
+    /**
+     * Los datos de un error, tomados de la request en el hilo de la petición
+     */
+    private static final class Entry {
+
+        private final long time;
+        private final String method;
+        private final String route;
+        private final String path;
+        private final int status;
+        private final long latency;
+        private final Throwable error;
+
+        Entry(long time, HttpServletRequest request, String path, String route, int status, long latency, Throwable error) {
+            this.time = time;
+            this.method = request == null ? null : request.getMethod();
+            this.route = route;
+            this.path = path;
+            this.status = status;
+            this.latency = latency;
+            this.error = error;
+        }
+
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Configura cómo registra un {@link RestServlet} los errores de sus
+ * peticiones. Los errores se escriben en {@code System.err} desde un hilo
+ * propio del servlet, un json por línea, así que los hilos que atienden las
+ * peticiones nunca esperan a que se escriban. Ver {@link ErrorLog}.<br><br>
+ *
+ * Sin la anotación se usan los valores por defecto. También se pueden
+ * cambiar con los init-params {@code errorLogSampleRate},
+ * {@code errorLogMaxPerSecond} y {@code errorLogQueue}
+ *
+ * @author Angel
+ */
+@Target(value = {ElementType.TYPE})
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface ErrorLogging {
+
+    /**
+     * La fracción de los errores del cliente (status menor que 500) que se
+     * registran. Los errores del servidor se registran siempre
+     *
+     * @return Un número entre 0 y 1
+     */
+    public double sampleRate() default 0.1;
+
+    /**
+     * La cantidad máxima de errores que se registran por segundo. Los demás
+     * se descartan y se cuentan
+     *
+     * @return El límite o {@code 0} para no limitar
+     */
+    public int maxPerSecond() default 100;
+
+    /**
+     * La cantidad de errores que pueden esperar a ser escritos. Si la cola
+     * está llena los nuevos errores se descartan y se cuentan
+     *
+     * @return El tamaño de la cola
+     */
+    public int queue() default 1024;
+
+}
@@ -0,0 +1,97 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.nio.charset.StandardCharsets;
+import org.json.JSONObject;
+
+/**
+ * Cuerpos de error ya codificados. La parte fija del json de cada status,
+ * con el mensaje de
+ * {@link RestResponseWriter#getResponseMessage(int)}, se codifica una sola
+ * vez y en cada error solo se agrega el texto variable. El resultado es el
+ * mismo json que se obtiene convirtiendo un {@link RestResponseBody} con
+ * org.json
+ *
+ * @author Angel
+ */
+final class ErrorResponses {
+
+    private static final int MAX_STATUS = 600;
+    private static final byte[] BODY_KEY = ",\"body\":".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * El cuerpo que se envía cuando un método de procesamiento no devuelve
+     * nada
+     */
+    static final byte[] NO_CONTENT = "{\"message\":\"There is no content to show\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final Template[] TEMPLATES = new Template[MAX_STATUS];
+
+    private ErrorResponses() {
+    }
+
+    /**
+     * Codifica el cuerpo de un error
+     *
+     * @param status El status http
+     * @param body El texto del error o {@code null} si no tiene
+     * @return Los bytes del json en UTF-8
+     */
+    static byte[] encode(int status, String body) {
+        Template template = templateFor(status);
+        if (body == null) {
+            byte[] result = new byte[template.prefix.length + template.suffix.length];
+            System.arraycopy(template.prefix, 0, result, 0, template.prefix.length);
+            System.arraycopy(template.suffix, 0, result, template.prefix.length, template.suffix.length);
+            return result;
+        }
+        byte[] text = JSONObject.quote(body).getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[template.prefix.length + BODY_KEY.length + text.length
+                + template.suffix.length];
+        int position = 0;
+        System.arraycopy(template.prefix, 0, result, position, template.prefix.length);
+        position += template.prefix.length;
+        System.arraycopy(BODY_KEY, 0, result, position, BODY_KEY.length);
+        position += BODY_KEY.length;
+        System.arraycopy(text, 0, result, position, text.length);
+        position += text.length;
+        System.arraycopy(template.suffix, 0, result, position, template.suffix.length);
+        return result;
+    }
+
+    private static Template templateFor(int status) {
+        if (status < 0 || status >= MAX_STATUS) {
+            return new Template(status);
+        }
+        Template template = TEMPLATES[status];
+        if (template == null) {
+            // Si dos hilos la crean a la vez ambas plantillas son iguales
+            template = new Template(status);
+            TEMPLATES[status] = template;
+        }
+        return template;
+    }
+
+    /**
+     * Las partes fijas del json de un status: lo que va antes del texto del
+     * error y lo que va después
+     */
+    private static final class Template {
+
+        private final byte[] prefix;
+        private final byte[] suffix;
+
+        Template(int status) {
+            this.prefix = ("{\"message\":" + JSONObject.quote(RestResponseWriter.getResponseMessage(status)))
+                    .getBytes(StandardCharsets.UTF_8);
+            this.suffix = (",\"status\":" + status + "}").getBytes(StandardCharsets.UTF_8);
+        }
+
+    }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+/**
+ * Lugar donde un {@link RestServlet} ejecuta sus métodos de procesamiento,
+ * ver {@link HandlerExecution}
+ *
+ * @author Angel
+ */
+public enum ExecutionMode {
+    
+    /**
+     * Los métodos se ejecutan en el hilo del contenedor que recibió la
+     * petición
+     */
+    CONTAINER,
+    
+    /**
+     * Los métodos se ejecutan en un grupo acotado de hilos de plataforma
+     * propio del servlet
+     */
+    POOL,
+    
+    /**
+     * Cada petición se ejecuta en su propio hilo virtual. Necesita Java 21 o
+     * superior; en versiones anteriores se usa {@link #POOL}
+     */
+    VIRTUAL
+    
+}
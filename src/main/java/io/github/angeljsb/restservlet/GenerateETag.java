@@ -0,0 +1,32 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Hace que un {@link RestServlet} calcule un ETag fuerte para las respuestas
+ * exitosas de las peticiones GET y HEAD, a partir de los bytes del json
+ * enviado. Si el ETag coincide con el header {@code If-None-Match} de la
+ * request se responde con status 304 y sin cuerpo.<br><br>
+ * 
+ * Para calcular el ETag la respuesta se guarda completa en memoria antes de
+ * enviarla, así que no se aplica a los elementos enviados con
+ * {@link RestResponseWriter#sendElements(java.lang.Object)} ni a las
+ * respuestas que ya tienen un ETag, por ejemplo el de
+ * {@link RestServlet#getETag(io.github.angeljsb.restservlet.RestRequestReader)}.
+ * También se puede activar con el parametro de inicio {@code generateETag}
+ *
+ * @author Angel
+ */
+@Target(value = {ElementType.TYPE})
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface GenerateETag {
+    
+}
@@ -0,0 +1,57 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Anotación para señalar dónde ejecuta un {@link RestServlet} sus métodos de
+ * procesamiento. Con {@link ExecutionMode#POOL} o
+ * {@link ExecutionMode#VIRTUAL} la petición pasa a modo asíncrono y el hilo
+ * del contenedor queda libre mientras el método se ejecuta, lo que permite
+ * atender muchas peticiones bloqueantes (por ejemplo JDBC) sin agrandar el
+ * pool del contenedor.<br><br>
+ * 
+ * El servlet debe declararse con <code>@WebServlet(asyncSupported = true)</code>,
+ * sino los métodos se ejecutan en el hilo del contenedor. La configuración
+ * también se puede cambiar con los init-params {@code handlerExecution},
+ * {@code handlerThreads} y {@code handlerQueue}. El tiempo máximo de la
+ * petición es el de {@link AsyncTimeout}
+ *
+ * @author Angel
+ */
+@Target(value = {ElementType.TYPE})
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface HandlerExecution {
+    
+    /**
+     * Dónde se ejecutan los métodos de procesamiento
+     * 
+     * @return El modo de ejecución
+     */
+    public ExecutionMode value() default ExecutionMode.CONTAINER;
+    
+    /**
+     * La cantidad de hilos del grupo cuando el modo es
+     * {@link ExecutionMode#POOL}
+     * 
+     * @return La cantidad de hilos
+     */
+    public int threads() default 64;
+    
+    /**
+     * La cantidad de peticiones que pueden esperar un hilo libre cuando el
+     * modo es {@link ExecutionMode#POOL}. Las peticiones que no caben se
+     * responden con status 503
+     * 
+     * @return El tamaño de la cola
+     */
+    public int queue() default 1024;
+    
+}
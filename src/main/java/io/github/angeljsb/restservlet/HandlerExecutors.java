@@ -0,0 +1,81 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Crea los executors de {@link HandlerExecution}
+ *
+ * @author Angel
+ */
+final class HandlerExecutors {
+
+    private HandlerExecutors() {
+    }
+
+    /**
+     * Crea el executor para un modo de ejecución
+     *
+     * @param mode El modo de ejecución
+     * @param threads La cantidad de hilos para {@link ExecutionMode#POOL}
+     * @param queue El tamaño de la cola para {@link ExecutionMode#POOL}
+     * @param name El nombre base de los hilos
+     * @return El executor o {@code null} para {@link ExecutionMode#CONTAINER}
+     */
+    static ExecutorService create(ExecutionMode mode, int threads, int queue, String name) {
+        switch (mode) {
+            case VIRTUAL:
+                ExecutorService virtual = virtualThreadPerTask();
+                if (virtual != null) {
+                    return virtual;
+                }
+                System.err.println("Virtual threads are not available in Java "
+                        + System.getProperty("java.version") + ", " + name
+                        + " will use a pool of " + threads + " threads");
+                return pool(threads, queue, name);
+            case POOL:
+                return pool(threads, queue, name);
+            default:
+                return null;
+        }
+    }
+
+    private static ExecutorService pool(int threads, int queue, String name) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue(Math.max(1, queue)), factory);
+    }
+
+    /**
+     * Busca {@code Executors.newVirtualThreadPerTaskExecutor()} en tiempo de
+     * ejecución, para que la librería siga compilando con Java 8
+     */
+    private static ExecutorService virtualThreadPerTask() {
+        try {
+            MethodHandle factory = MethodHandles.publicLookup().findStatic(Executors.class,
+                    "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            return (ExecutorService) factory.invoke();
+        } catch (Throwable ex) {
+            return null;
+        }
+    }
+
+}
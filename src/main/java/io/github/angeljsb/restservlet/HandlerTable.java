@@ -0,0 +1,268 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Tabla de despacho de un {@link RestServlet}. Se construye una vez al iniciar
+ * el servlet con los métodos anotados con {@link Get}, {@link Post},
+ * {@link Put} y {@link Delete} y con los métodos {@code processX}
+ * sobreescritos, todos enlazados como {@link MethodHandle} al servlet.<br><br>
+ *
+ * En cada petición solo se busca el método http en un mapa y el pathInfo en
+ * la {@link RouteTable} del método
+ *
+ * @author Angel
+ */
+final class HandlerTable {
+
+    private static final MethodType HANDLER_TYPE = MethodType.methodType(
+            Object.class, RestRequestReader.class, RestResponseWriter.class);
+
+    private static final String[][] LEGACY_METHODS = {
+        {"GET", "processGet"},
+        {"POST", "processPost"},
+        {"PUT", "processPut"},
+        {"DELETE", "processDelete"}
+    };
+
+    /**
+     * Construye la tabla de despacho de un servlet
+     *
+     * @param servlet El servlet cuyos métodos se enlazan
+     * @return La tabla de despacho
+     * @throws ServletException Si un método anotado no tiene una firma válida
+     */
+    static HandlerTable build(RestServlet servlet) throws ServletException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Map<String, List<PathPattern>> patterns = new LinkedHashMap();
+        Map<String, Map<PathPattern, MethodHandle>> handles = new HashMap();
+        Set<String> seen = new HashSet();
+
+        for (Class<?> type = servlet.getClass(); type != RestServlet.class; type = type.getSuperclass()) {
+            for (Method method : type.getDeclaredMethods()) {
+                String httpMethod = httpMethodOf(method);
+                if (httpMethod == null
+                        || !seen.add(method.getName() + Arrays.toString(method.getParameterTypes()))) {
+                    continue;
+                }
+                PathPattern pattern = PathPattern.compile(pathOf(method));
+                patterns.computeIfAbsent(httpMethod, key -> new ArrayList()).add(pattern);
+                handles.computeIfAbsent(httpMethod, key -> new IdentityHashMap())
+                        .put(pattern, bind(lookup, servlet, method));
+            }
+        }
+
+        // En el orden de LEGACY_METHODS, que es el orden del header Allow
+        Map<String, MethodHandlers> methods = new LinkedHashMap();
+        for (String[] legacy : LEGACY_METHODS) {
+            MethodHandle handle = isOverridden(servlet, legacy[1])
+                    ? bindLegacy(lookup, servlet, legacy[1]) : null;
+            List<PathPattern> list = patterns.get(legacy[0]);
+            if (handle != null || list != null) {
+                RouteTable routes = list == null ? RouteTable.EMPTY
+                        : RouteTable.ofPatterns(list.toArray(new PathPattern[list.size()]));
+                Map<PathPattern, MethodHandle> map = handles.get(legacy[0]);
+                methods.put(legacy[0], new MethodHandlers(routes, map, handle));
+            }
+        }
+
+        MethodHandle requestHandler = isOverridden(servlet, "processRequest")
+                ? bindLegacy(lookup, servlet, "processRequest") : null;
+        return new HandlerTable(methods, requestHandler);
+    }
+
+    private static String httpMethodOf(Method method) {
+        if (method.isAnnotationPresent(Get.class)) {
+            return "GET";
+        } else if (method.isAnnotationPresent(Post.class)) {
+            return "POST";
+        } else if (method.isAnnotationPresent(Put.class)) {
+            return "PUT";
+        } else if (method.isAnnotationPresent(Delete.class)) {
+            return "DELETE";
+        }
+        return null;
+    }
+
+    private static String pathOf(Method method) {
+        Annotation ann = method.getAnnotation(Get.class);
+        if (ann != null) {
+            return ((Get) ann).value();
+        }
+        ann = method.getAnnotation(Post.class);
+        if (ann != null) {
+            return ((Post) ann).value();
+        }
+        ann = method.getAnnotation(Put.class);
+        if (ann != null) {
+            return ((Put) ann).value();
+        }
+        return method.getAnnotation(Delete.class).value();
+    }
+
+    private static MethodHandle bind(MethodHandles.Lookup lookup, RestServlet servlet, Method method)
+            throws ServletException {
+        Class<?>[] params = method.getParameterTypes();
+        boolean valid = params.length == 0
+                || (params.length == 1 && params[0] == RestRequestReader.class)
+                || (params.length == 2 && params[0] == RestRequestReader.class
+                && params[1] == RestResponseWriter.class);
+        if (!valid) {
+            throw new ServletException("El método " + method + " debe recibir "
+                    + "(RestRequestReader, RestResponseWriter), (RestRequestReader) o ningún parametro");
+        }
+
+        MethodHandle handle;
+        try {
+            method.setAccessible(true);
+            handle = lookup.unreflect(method);
+        } catch (IllegalAccessException | RuntimeException ex) {
+            throw new ServletException("No se pudo acceder al método " + method, ex);
+        }
+        if (!Modifier.isStatic(method.getModifiers())) {
+            handle = handle.bindTo(servlet);
+        }
+        if (params.length < 2) {
+            handle = MethodHandles.dropArguments(handle, params.length,
+                    Arrays.copyOfRange(HANDLER_TYPE.parameterArray(), params.length, 2));
+        }
+        return handle.asType(HANDLER_TYPE);
+    }
+
+    private static MethodHandle bindLegacy(MethodHandles.Lookup lookup, RestServlet servlet, String name)
+            throws ServletException {
+        try {
+            return lookup.findVirtual(RestServlet.class, name, HANDLER_TYPE).bindTo(servlet);
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new ServletException(ex);
+        }
+    }
+
+    private static boolean isOverridden(RestServlet servlet, String name) {
+        for (Class<?> type = servlet.getClass(); type != RestServlet.class; type = type.getSuperclass()) {
+            try {
+                type.getDeclaredMethod(name, RestRequestReader.class, RestResponseWriter.class);
+                return true;
+            } catch (NoSuchMethodException ex) {
+                // Se sigue buscando en la superclase
+            }
+        }
+        return false;
+    }
+
+    private static Object invoke(MethodHandle handle, RestRequestReader reader, RestResponseWriter writer)
+            throws ServletException, IOException {
+        try {
+            return (Object) handle.invokeExact(reader, writer);
+        } catch (ServletException | IOException | RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new ServletException(ex);
+        }
+    }
+
+    private final Map<String, MethodHandlers> methods;
+    private final MethodHandle requestHandler;
+    private final String allow;
+
+    private HandlerTable(Map<String, MethodHandlers> methods, MethodHandle requestHandler) {
+        this.methods = methods;
+        this.requestHandler = requestHandler;
+        this.allow = String.join(", ", methods.keySet());
+    }
+
+    /**
+     * Ejecuta el método que corresponde a la petición. Primero el método
+     * anotado cuyo patrón coincida con el pathInfo o el {@code processX}
+     * sobreescrito y, si este devuelve {@code null} sin enviar nada,
+     * {@code processRequest}
+     *
+     * @param reader El lector de la request
+     * @param writer El escritor de la response
+     * @return El objeto devuelto por el método o {@code null}
+     * @throws RestException Con status 405 si ningún método procesa el método
+     * http de la petición, o 404 si ninguno procesa su pathInfo
+     */
+    Object dispatch(RestRequestReader reader, RestResponseWriter writer) throws ServletException, IOException {
+        String httpMethod = reader.getMethod();
+        MethodHandlers handlers = methods.get(httpMethod);
+        if (handlers == null) {
+            handlers = methods.get(httpMethod.toUpperCase(Locale.ROOT));
+        }
+
+        MethodHandle primary = null;
+        if (handlers != null) {
+            primary = handlers.find(reader);
+            if (primary != null) {
+                Object result = invoke(primary, reader, writer);
+                if (result != null || writer.getResponse().isCommitted()) {
+                    return result;
+                }
+            }
+        }
+
+        if (requestHandler != null) {
+            return invoke(requestHandler, reader, writer);
+        }
+        if (handlers == null) {
+            writer.setHeader("Allow", allow);
+            throw new RestException(HttpServletResponse.SC_METHOD_NOT_ALLOWED,
+                    "Method " + httpMethod + " is not allowed", false);
+        }
+        if (primary == null) {
+            throw new RestException(HttpServletResponse.SC_NOT_FOUND,
+                    "There is no handler for " + reader.getPathInfo(), false);
+        }
+        return null;
+    }
+
+    private static final class MethodHandlers {
+
+        private final RouteTable routes;
+        private final Map<PathPattern, MethodHandle> handles;
+        private final MethodHandle legacy;
+
+        MethodHandlers(RouteTable routes, Map<PathPattern, MethodHandle> handles, MethodHandle legacy) {
+            this.routes = routes;
+            this.handles = handles;
+            this.legacy = legacy;
+        }
+
+        MethodHandle find(RestRequestReader reader) {
+            if (!routes.isEmpty()) {
+                String pathInfo = reader.getPathInfo();
+                PathMatch match = routes.match(pathInfo == null ? "/" : pathInfo);
+                if (match != null) {
+                    reader.setPathMatch(match);
+                    return handles.get(match.getPathPattern());
+                }
+            }
+            return legacy;
+        }
+
+    }
+
+}
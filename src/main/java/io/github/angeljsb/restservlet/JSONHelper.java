@@ -5,49 +5,49 @@
  */
 package io.github.angeljsb.restservlet;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.IOException;
 import java.util.Collection;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 /**
+ * Funciones para convertir java beans a json. Los campos y getters de cada
+ * clase se buscan una sola vez y se guardan en un plan por clase, así que
+ * convertir muchos beans de la misma clase no repite la reflexión. Las
+ * clases marcadas con {@link RestJson} se convierten con su {@link JsonCodec}
+ * generado
  *
  * @author Angel
  */
 public class JSONHelper {
     
-    private static Method getGetter(Field field) throws NoSuchMethodException {
-        Class declaring = field.getDeclaringClass();
-        String fieldName = field.getName();
-        
-        boolean isBool = field.getType().equals(Boolean.TYPE) || field.getType().equals(Boolean.class);
-        String getterName = isBool ? "is" : "get"
-                .concat(fieldName.substring(0,1).toUpperCase())
-                .concat(fieldName.substring(1));
-        return declaring.getMethod(getterName);
-    }
-    
     public static JSONObject createJSON(Object bean, String... fieldNames) {
         JSONObject json = new JSONObject();
+        SerializerPlan plan = SerializerPlan.of(bean.getClass());
         for(String fieldName : fieldNames) {
-            try {
-                Field field = bean.getClass().getDeclaredField(fieldName);
-                Method getter = getGetter(field);
-                Object value = getter.invoke(bean);
-                if(value instanceof IJsonable) {
-                    value = ((IJsonable) value).toJson();
-                }
-                json.put(fieldName, value);
-            } catch (NoSuchFieldException | NoSuchMethodException | IllegalAccessException | InvocationTargetException ex) {
-                System.err.println("Error creating JSON " + ex.getClass().getSimpleName()
-                        + " in field " + fieldName);
+            SerializerPlan.Property property = plan.getProperty(fieldName);
+            if(property == null) {
+                System.err.println("Error creating JSON NoSuchFieldException in field " + fieldName);
+                continue;
             }
+            putProperty(json, property, bean);
         }
         return json;
     }
     
+    private static void putProperty(JSONObject json, SerializerPlan.Property property, Object bean) {
+        try {
+            Object value = property.get(bean);
+            if(value instanceof IJsonable) {
+                value = ((IJsonable) value).toJson();
+            }
+            json.put(property.getName(), value);
+        } catch (Throwable ex) {
+            System.err.println("Error creating JSON " + ex.getClass().getSimpleName()
+                    + " in field " + property.getName());
+        }
+    }
+    
     public static JSONArray createJSON(Object[] beans, String... fieldNames) {
         JSONArray json = new JSONArray();
         for(Object bean : beans) {
@@ -103,21 +103,20 @@ public class JSONHelper {
     }
     
     public static JSONObject beanToJson(Object bean) {
-        JSONObject json = new JSONObject();
-        Field[] fields = bean.getClass().getDeclaredFields();
-        for(Field field : fields) {
-            String fieldName = field.getName();
+        JsonCodec codec = JsonCodecs.forClass(bean.getClass());
+        if(codec != null) {
+            JsonTreeGenerator generator = new JsonTreeGenerator();
             try {
-                Method getter = getGetter(field);
-                Object value = getter.invoke(bean);
-                if(value instanceof IJsonable) {
-                    value = ((IJsonable) value).toJson();
-                }
-                json.put(fieldName, value);
-            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ex) {
-                System.err.println("Error creating JSON " + ex.getClass().getSimpleName()
-                        + " in field " + fieldName);
+                codec.write(bean, generator);
+            } catch (IOException ex) {
+                // El generador en memoria no hace I/O
+                throw new IllegalStateException(ex);
             }
+            return (JSONObject) generator.getResult();
+        }
+        JSONObject json = new JSONObject();
+        for(SerializerPlan.Property property : SerializerPlan.of(bean.getClass()).getProperties()) {
+            putProperty(json, property, bean);
         }
         return json;
     }
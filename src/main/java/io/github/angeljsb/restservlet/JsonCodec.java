@@ -0,0 +1,41 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * Convierte los objetos de una clase a json y de json sin reflexión. Las
+ * implementaciones las genera el procesador de anotaciones para las clases
+ * marcadas con {@link RestJson}, ver {@link JsonCodecs#forClass(java.lang.Class)}
+ *
+ * @param <T> El tipo de los objetos que convierte
+ * @author Angel
+ */
+public interface JsonCodec<T> {
+    
+    /**
+     * Escribe un objeto como json
+     * 
+     * @param value El objeto a escribir, nunca {@code null}
+     * @param out El destino del json
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public void write(T value, JsonGenerator out) throws IOException;
+    
+    /**
+     * Crea un objeto con los valores de sus propiedades
+     * 
+     * @param values Obtiene el valor json de una propiedad por su nombre, o
+     * {@code null} si no existe
+     * @return El objeto creado
+     * @throws RestException Con status 400 si algún valor no puede
+     * convertirse al tipo de su propiedad
+     */
+    public T read(Function<String, Object> values);
+    
+}
@@ -0,0 +1,120 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.function.Function;
+
+/**
+ * Busca los {@link JsonCodec} generados por el procesador de anotaciones y
+ * ofrece las conversiones que usa su código.<br><br>
+ * 
+ * El codec de una clase marcada con {@link RestJson} está en el mismo paquete
+ * y se llama como la clase, con las clases contenedoras separadas por
+ * {@code _}, seguido de {@link #SUFFIX}. Por ejemplo el codec de
+ * {@code app.Order.Line} es {@code app.Order_Line_JsonCodec}. Se busca una
+ * sola vez por clase
+ *
+ * @author Angel
+ */
+public final class JsonCodecs {
+    
+    /**
+     * Sufijo del nombre de las clases generadas
+     */
+    public static final String SUFFIX = "_JsonCodec";
+    
+    private static final JsonCodec NONE = new JsonCodec() {
+        @Override
+        public void write(Object value, JsonGenerator out) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object read(Function values) {
+            throw new UnsupportedOperationException();
+        }
+    };
+    
+    private static final ClassValue<JsonCodec> CODECS = new ClassValue<JsonCodec>() {
+        @Override
+        protected JsonCodec computeValue(Class<?> type) {
+            if (!type.isAnnotationPresent(RestJson.class)) {
+                return NONE;
+            }
+            try {
+                Class<?> codec = Class.forName(codecName(type.getName()), true, type.getClassLoader());
+                return (JsonCodec) codec.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+                System.err.println("No JsonCodec found for " + type.getName()
+                        + ", using reflection. Is the annotation processor configured?");
+                return NONE;
+            }
+        }
+    };
+    
+    private JsonCodecs() {
+    }
+    
+    /**
+     * Obtiene el codec generado para una clase
+     * 
+     * @param <T> El tipo de la clase
+     * @param type La clase
+     * @return El codec o {@code null} si la clase no está marcada con
+     * {@link RestJson} o no se generó su codec
+     */
+    public static <T> JsonCodec<T> forClass(Class<T> type) {
+        JsonCodec codec = CODECS.get(type);
+        return codec == NONE ? null : codec;
+    }
+    
+    /**
+     * Calcula el nombre del codec de una clase
+     * 
+     * @param binaryName El nombre binario de la clase, como lo devuelve
+     * {@link Class#getName()}
+     * @return El nombre binario del codec
+     */
+    public static String codecName(String binaryName) {
+        int dot = binaryName.lastIndexOf('.');
+        return binaryName.substring(0, dot + 1)
+                .concat(binaryName.substring(dot + 1).replace('$', '_'))
+                .concat(SUFFIX);
+    }
+    
+    /**
+     * Convierte un valor json al tipo de una propiedad, con las mismas reglas
+     * que {@link RestRequestReader#getBody(java.lang.Class)}
+     * 
+     * @param value El valor leído
+     * @param type El tipo destino
+     * @return El valor convertido o {@code null} si el valor es nulo
+     * @throws RestException Con status 400 si no puede convertirse
+     */
+    public static Object convert(Object value, Type type) {
+        return BeanBinder.convert(value, type);
+    }
+    
+    /**
+     * Obtiene el tipo genérico del parametro de un setter público
+     * 
+     * @param type La clase del bean
+     * @param setter El nombre del setter
+     * @return El tipo del parametro, por ejemplo {@code List<Item>}
+     * @throws IllegalArgumentException Si la clase no tiene el setter
+     */
+    public static Type propertyType(Class<?> type, String setter) {
+        for (Method method : type.getMethods()) {
+            if (method.getName().equals(setter) && method.getParameterCount() == 1) {
+                return method.getGenericParameterTypes()[0];
+            }
+        }
+        throw new IllegalArgumentException("The class " + type.getName() + " has no method " + setter);
+    }
+    
+}
@@ -0,0 +1,367 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+/**
+ * Destino de escritura de json por eventos: inicio y fin de objetos y
+ * arreglos, nombres de propiedades y valores. Los {@link JsonCodec} generados
+ * escriben los beans llamando directamente a estos métodos, sin construir un
+ * {@link JSONObject} intermedio.<br><br>
+ * 
+ * {@link #writeValue(java.lang.Object)} escribe el valor de una propiedad
+ * con las mismas reglas que org.json al convertir un {@link JSONObject} a
+ * texto:
+ * <ul>
+ * <li>{@code null} y {@link JSONObject#NULL} se escriben como {@code null}</li>
+ * <li>Los String, Number y Boolean como valores simples</li>
+ * <li>Los {@link JSONObject} y {@link Map} como objetos y los
+ * {@link JSONArray}, {@link Collection} y arreglos como arreglos. Los
+ * valores de los mapas, colecciones y arreglos se convierten igual que en
+ * los constructores de org.json</li>
+ * <li>Los {@link IJsonable} con el resultado de su {@link IJsonable#toJson()}</li>
+ * <li>Las clases con un {@link JsonCodec} generado con su codec</li>
+ * <li>Cualquier otro objeto, incluidos los Character, enums, fechas y
+ * beans anidados, como el String de su {@code toString()}</li>
+ * </ul>
+ * 
+ * Solo los elementos de primer nivel de un arreglo se convierten como java
+ * beans, igual que en {@link JSONHelper#toJsonArray(java.util.Collection)},
+ * ver {@link #writeElement(java.lang.Object)} y
+ * {@link #writeBody(java.lang.Object)}.<br><br>
+ * 
+ * Los {@link WireFormat} distintos de json escriben su propio formato a
+ * partir de los mismos eventos
+ *
+ * @author Angel
+ */
+public abstract class JsonGenerator implements Closeable {
+    
+    /**
+     * Comienza un objeto json
+     * 
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public abstract void beginObject() throws IOException;
+    
+    /**
+     * Termina el último objeto json comenzado
+     * 
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public abstract void endObject() throws IOException;
+    
+    /**
+     * Comienza un arreglo json
+     * 
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public abstract void beginArray() throws IOException;
+    
+    /**
+     * Termina el último arreglo json comenzado
+     * 
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public abstract void endArray() throws IOException;
+    
+    /**
+     * Escribe el nombre de la siguiente propiedad del objeto actual
+     * 
+     * @param name El nombre de la propiedad
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public abstract void name(String name) throws IOException;
+    
+    /**
+     * Escribe el nombre de la siguiente propiedad del objeto actual a partir
+     * de una clave ya codificada
+     * 
+     * @param key La clave de la propiedad
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public void name(JsonKey key) throws IOException {
+        name(key.getName());
+    }
+    
+    /**
+     * Escribe un String
+     * 
+     * @param value El valor, no debe ser {@code null}
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public abstract void value(String value) throws IOException;
+    
+    /**
+     * Escribe un número con el formato de
+     * {@link JSONObject#numberToString(java.lang.Number)}
+     * 
+     * @param value El valor, no debe ser {@code null}
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public abstract void value(Number value) throws IOException;
+    
+    /**
+     * Escribe un número entero
+     * 
+     * @param value El valor
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public void value(long value) throws IOException {
+        value(Long.valueOf(value));
+    }
+    
+    /**
+     * Escribe un número decimal
+     * 
+     * @param value El valor
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public void value(double value) throws IOException {
+        value(Double.valueOf(value));
+    }
+    
+    /**
+     * Escribe un booleano
+     * 
+     * @param value El valor
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public abstract void value(boolean value) throws IOException;
+    
+    /**
+     * Escribe un {@code null}
+     * 
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public abstract void nullValue() throws IOException;
+    
+    /**
+     * Escribe un objeto que ya sabe convertirse a texto json
+     * 
+     * @param value El objeto
+     * @throws IOException Si ocurre un error de I/O
+     */
+    protected abstract void jsonString(JSONString value) throws IOException;
+    
+    /**
+     * Escribe una propiedad del objeto actual si su valor no es {@code null},
+     * igual que {@link JSONObject#put(java.lang.String, java.lang.Object)}
+     * 
+     * @param key La clave de la propiedad
+     * @param value El valor
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public void property(JsonKey key, Object value) throws IOException {
+        if (value != null) {
+            name(key);
+            writeValue(value);
+        }
+    }
+    
+    /**
+     * Escribe el cuerpo de una respuesta: las colecciones y arreglos como un
+     * arreglo de elementos, ver {@link #writeElement(java.lang.Object)}, los
+     * {@link Map} como un objeto con sus entradas en el orden del mapa y
+     * cualquier otro objeto como un elemento
+     * 
+     * @param body El cuerpo a escribir
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public void writeBody(Object body) throws IOException {
+        if (body instanceof Collection) {
+            beginArray();
+            for (Object element : (Collection<?>) body) {
+                writeElement(element);
+            }
+            endArray();
+        } else if (body != null && body.getClass().isArray()) {
+            beginArray();
+            int length = Array.getLength(body);
+            for (int i = 0; i < length; i++) {
+                writeElement(Array.get(body, i));
+            }
+            endArray();
+        } else if (body instanceof Map) {
+            writeMap((Map<?, ?>) body);
+        } else {
+            writeElement(body);
+        }
+    }
+    
+    /**
+     * Escribe un elemento de primer nivel de un arreglo con las reglas de
+     * {@link JSONHelper#toJsonArray(java.util.Collection)}: los
+     * {@link IJsonable} con su {@link IJsonable#toJson()}, los String,
+     * Number, Boolean y Character como valores simples y cualquier otro
+     * objeto como un java bean, ver {@link #writeBean(java.lang.Object)}. Los
+     * valores json, mapas, colecciones y arreglos anidados se escriben con
+     * {@link #writeValue(java.lang.Object)}
+     * 
+     * @param element El elemento a escribir
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public void writeElement(Object element) throws IOException {
+        if (element == null || element instanceof String || element instanceof Number
+                || element instanceof Boolean || element instanceof IJsonable
+                || element instanceof JSONObject || element instanceof JSONArray
+                || element instanceof JSONString || element instanceof Map
+                || element instanceof Collection || element.getClass().isArray()) {
+            writeValue(element);
+        } else if (element instanceof Character) {
+            value(element.toString());
+        } else {
+            writeBean(element);
+        }
+    }
+    
+    /**
+     * Escribe el valor de una propiedad, ver la descripción de la clase
+     * 
+     * @param value El objeto a escribir
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public void writeValue(Object value) throws IOException {
+        if (value instanceof IJsonable) {
+            writeObject(((IJsonable) value).toJson());
+            return;
+        }
+        if (value != null && !isJsonValue(value)) {
+            JsonCodec codec = JsonCodecs.forClass(value.getClass());
+            if (codec != null) {
+                codec.write(value, this);
+                return;
+            }
+        }
+        writeJson(value);
+    }
+    
+    private static boolean isJsonValue(Object value) {
+        return value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof JSONObject || value instanceof JSONArray;
+    }
+    
+    /**
+     * Escribe un valor igual que {@code JSONObject.writeValue} de org.json,
+     * que es como se escribían las propiedades de los beans y el contenido
+     * de los objetos json
+     */
+    private void writeJson(Object value) throws IOException {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            nullValue();
+        } else if (value instanceof String) {
+            value((String) value);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            value(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            value((Number) value);
+        } else if (value instanceof Boolean) {
+            value(((Boolean) value).booleanValue());
+        } else if (value instanceof JSONObject) {
+            writeObject((JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            writeArray((JSONArray) value);
+        } else if (value instanceof Map) {
+            writeObject(new JSONObject((Map) value));
+        } else if (value instanceof Collection) {
+            writeArray(new JSONArray((Collection) value));
+        } else if (value.getClass().isArray()) {
+            writeArray(new JSONArray(value));
+        } else if (value instanceof JSONString) {
+            jsonString((JSONString) value);
+        } else {
+            value(value.toString());
+        }
+    }
+    
+    /**
+     * Escribe un java bean con su {@link JsonCodec} si la clase lo tiene o
+     * con sus campos que tengan getter
+     * 
+     * @param bean El bean a escribir
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public void writeBean(Object bean) throws IOException {
+        JsonCodec codec = JsonCodecs.forClass(bean.getClass());
+        if (codec != null) {
+            codec.write(bean, this);
+            return;
+        }
+        beginObject();
+        for (SerializerPlan.Property property : SerializerPlan.of(bean.getClass()).getProperties()) {
+            Object value;
+            try {
+                value = property.get(bean);
+            } catch (Throwable ex) {
+                System.err.println("Error creating JSON " + ex.getClass().getSimpleName()
+                        + " in field " + property.getName());
+                continue;
+            }
+            property(property.getKey(), value);
+        }
+        endObject();
+    }
+    
+    private void writeObject(JSONObject json) throws IOException {
+        beginObject();
+        Iterator keys = json.keys();
+        while (keys.hasNext()) {
+            String key = (String) keys.next();
+            name(key);
+            writeJson(json.opt(key));
+        }
+        endObject();
+    }
+    
+    private void writeArray(JSONArray json) throws IOException {
+        beginArray();
+        for (int i = 0; i < json.length(); i++) {
+            writeJson(json.opt(i));
+        }
+        endArray();
+    }
+    
+    private void writeMap(Map<?, ?> map) throws IOException {
+        beginObject();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (entry.getValue() != null) {
+                name(String.valueOf(entry.getKey()));
+                writeValue(entry.getValue());
+            }
+        }
+        endObject();
+    }
+    
+    /**
+     * Envía al destino lo que se haya escrito hasta ahora
+     * 
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public void flush() throws IOException {
+    }
+    
+    /**
+     * Envía lo que quede pendiente y cierra el destino, si el generador
+     * escribe en un stream
+     * 
+     * @throws IOException Si ocurre un error de I/O
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+    
+}
@@ -0,0 +1,62 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.nio.charset.StandardCharsets;
+import org.json.JSONObject;
+
+/**
+ * Nombre de una propiedad json codificado una sola vez. Los codecs y planes
+ * de serialización guardan sus claves como constantes de este tipo para que
+ * escribirlas no tenga que escapar ni codificar el texto en cada objeto
+ *
+ * @author Angel
+ */
+public final class JsonKey {
+    
+    /**
+     * Crea una clave json
+     * 
+     * @param name El nombre de la propiedad
+     * @return La clave codificada
+     */
+    public static JsonKey of(String name) {
+        return new JsonKey(name);
+    }
+    
+    private final String name;
+    private final byte[] encoded;
+    
+    private JsonKey(String name) {
+        this.name = name;
+        this.encoded = JSONObject.quote(name).concat(":").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Obtiene el nombre de la propiedad
+     * 
+     * @return El nombre sin codificar
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Obtiene la clave codificada en UTF-8, entre comillas y seguida de dos
+     * puntos
+     * 
+     * @return Los bytes de la clave. No deben modificarse
+     */
+    byte[] getEncoded() {
+        return encoded;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+    
+}
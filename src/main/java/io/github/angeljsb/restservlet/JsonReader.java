@@ -0,0 +1,362 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Lector de json que toma los caracteres directamente de un {@link Reader}
+ * por bloques, sin copiar antes todo el contenido a un String. Los objetos y
+ * arreglos se construyen como {@link JSONObject} y {@link JSONArray}.<br><br>
+ *
+ * Acepta lo mismo que {@code JSONTokener} de org.json y da el mismo
+ * resultado: strings entre comillas dobles o simples, claves y valores sin
+ * comillas convertidos con
+ * {@link JSONObject#stringToValue(java.lang.String)}, {@code ;} como
+ * separador de las propiedades, comas sobrantes al final y posiciones
+ * vacías de los arreglos como {@code null}. Igual que org.json, rechaza los
+ * saltos de línea sin escapar dentro de los strings
+ *
+ * @author Angel
+ */
+final class JsonReader {
+
+    /**
+     * Caracteres que terminan un valor sin comillas, los mismos de org.json
+     */
+    private static final String LITERAL_END = ",:]}/\\\"[{;=#";
+
+    private static final int MIN_BUFFER = 256;
+    private static final int MAX_BUFFER = 16 * 1024;
+
+    private final Reader reader;
+    private final char[] buffer;
+    private final StringBuilder text = new StringBuilder();
+    private final int maxDepth;
+    private int position;
+    private int limit;
+    private int depth;
+
+    /**
+     * Crea un lector de json sin límite de profundidad
+     *
+     * @param reader El origen de los caracteres
+     * @param sizeHint La cantidad aproximada de caracteres a leer, por
+     * ejemplo el Content-Length de la request, o un número negativo si no se
+     * conoce
+     */
+    JsonReader(Reader reader, long sizeHint) {
+        this(reader, sizeHint, 0);
+    }
+
+    /**
+     * Crea un lector de json
+     *
+     * @param reader El origen de los caracteres
+     * @param sizeHint La cantidad aproximada de caracteres a leer, por
+     * ejemplo el Content-Length de la request, o un número negativo si no se
+     * conoce
+     * @param maxDepth La cantidad máxima de objetos y arreglos anidados, o 0
+     * si no hay límite. Al superarla se lanza una {@link RestException} con
+     * status 413 antes de seguir leyendo
+     */
+    JsonReader(Reader reader, long sizeHint, int maxDepth) {
+        this.reader = reader;
+        this.maxDepth = maxDepth;
+        int size = sizeHint < 0 ? MAX_BUFFER : (int) Math.min(MAX_BUFFER, sizeHint + 1);
+        this.buffer = new char[Math.max(MIN_BUFFER, size)];
+    }
+
+    /**
+     * Lee un objeto json y agrega sus propiedades al mapa, sin crear un
+     * {@link JSONObject} para el objeto de primer nivel
+     *
+     * @param map El mapa donde se guardan las propiedades
+     * @throws IOException Si ocurre un error de I/O
+     * @throws JSONException Si el contenido no es un objeto json
+     */
+    void readObject(Map<String, Object> map) throws IOException {
+        if (nextClean() != '{') {
+            throw syntaxError("A JSONObject text must begin with '{'");
+        }
+        enter();
+        char c = nextClean();
+        if (c == '}') {
+            return;
+        }
+        while (true) {
+            String key = readKey(c);
+            if (nextClean() != ':') {
+                throw syntaxError("Expected a ':' after a key");
+            }
+            if (map.put(key, readValue(nextClean())) != null) {
+                throw syntaxError("Duplicate key \"" + key + "\"");
+            }
+            c = nextClean();
+            if (c == '}') {
+                return;
+            }
+            if (c != ',' && c != ';') {
+                throw syntaxError("Expected a ',' or '}'");
+            }
+            c = nextClean();
+            if (c == '}') {
+                // org.json acepta un separador al final
+                return;
+            }
+        }
+    }
+
+    /**
+     * Lee un valor json de cualquier tipo
+     *
+     * @return El valor leído
+     * @throws IOException Si ocurre un error de I/O
+     * @throws JSONException Si el contenido no es json
+     */
+    Object readValue() throws IOException {
+        return readValue(nextClean());
+    }
+
+    private Object readValue(char c) throws IOException {
+        switch (c) {
+            case '"':
+            case '\'':
+                return readString(c);
+            case '{':
+                enter();
+                JSONObject object = readNestedObject();
+                depth--;
+                return object;
+            case '[':
+                enter();
+                JSONArray array = readArray();
+                depth--;
+                return array;
+            default:
+                return readLiteral(c);
+        }
+    }
+
+    private JSONObject readNestedObject() throws IOException {
+        JSONObject object = new JSONObject();
+        char c = nextClean();
+        if (c == '}') {
+            return object;
+        }
+        while (true) {
+            String key = readKey(c);
+            if (nextClean() != ':') {
+                throw syntaxError("Expected a ':' after a key");
+            }
+            if (object.has(key)) {
+                throw syntaxError("Duplicate key \"" + key + "\"");
+            }
+            object.put(key, readValue(nextClean()));
+            c = nextClean();
+            if (c == '}') {
+                return object;
+            }
+            if (c != ',' && c != ';') {
+                throw syntaxError("Expected a ',' or '}'");
+            }
+            c = nextClean();
+            if (c == '}') {
+                return object;
+            }
+        }
+    }
+
+    private JSONArray readArray() throws IOException {
+        JSONArray array = new JSONArray();
+        char c = nextClean();
+        if (c == ']') {
+            return array;
+        }
+        while (true) {
+            if (c == ',') {
+                // Como en org.json, una posición vacía es null
+                array.put(JSONObject.NULL);
+            } else {
+                array.put(readValue(c));
+                c = nextClean();
+            }
+            if (c == ']') {
+                return array;
+            }
+            if (c != ',') {
+                throw syntaxError("Expected a ',' or ']'");
+            }
+            c = nextClean();
+            if (c == ']') {
+                return array;
+            }
+        }
+    }
+
+    /**
+     * Lee la clave de una propiedad. Como en org.json puede ser cualquier
+     * valor, que se convierte a texto
+     */
+    private String readKey(char c) throws IOException {
+        if (c == 0) {
+            throw syntaxError("A JSONObject text must end with '}'");
+        }
+        return readValue(c).toString();
+    }
+
+    /**
+     * Lee un valor sin comillas hasta el siguiente separador y lo convierte
+     * con {@link JSONObject#stringToValue(java.lang.String)}, que reconoce
+     * {@code true}, {@code false}, {@code null} y los números y devuelve el
+     * texto en los demás casos
+     */
+    private Object readLiteral(char first) throws IOException {
+        text.setLength(0);
+        if (isLiteral(first)) {
+            text.append(first);
+            while (true) {
+                if (position == limit && !fill()) {
+                    break;
+                }
+                char c = buffer[position];
+                if (!isLiteral(c)) {
+                    break;
+                }
+                text.append(c);
+                position++;
+            }
+        }
+
+        String literal = text.toString().trim();
+        if (literal.isEmpty()) {
+            throw syntaxError("Missing value");
+        }
+        return JSONObject.stringToValue(literal);
+    }
+
+    private static boolean isLiteral(char c) {
+        return c >= ' ' && LITERAL_END.indexOf(c) < 0;
+    }
+
+    private String readString(char quote) throws IOException {
+        text.setLength(0);
+        while (true) {
+            int start = position;
+            while (position < limit) {
+                char c = buffer[position];
+                if (c == quote || c == '\\' || c == '\n' || c == '\r' || c == 0) {
+                    break;
+                }
+                position++;
+            }
+            text.append(buffer, start, position - start);
+
+            if (position == limit) {
+                if (!fill()) {
+                    throw syntaxError("Unterminated string");
+                }
+                continue;
+            }
+
+            char c = buffer[position++];
+            if (c == quote) {
+                return text.toString();
+            }
+            if (c != '\\') {
+                throw syntaxError("Unterminated string");
+            }
+            text.append(readEscape());
+        }
+    }
+
+    private char readEscape() throws IOException {
+        char c = next();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(next(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Illegal escape");
+                    }
+                    code = (code << 4) | digit;
+                }
+                return (char) code;
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw syntaxError("Illegal escape");
+        }
+    }
+
+    private char next() throws IOException {
+        if (position == limit && !fill()) {
+            throw syntaxError("Unexpected end of json");
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Obtiene el siguiente caracter que no sea un espacio en blanco
+     *
+     * @return El caracter o {@code 0} si se llegó al final o, como en
+     * org.json, a un caracter nulo
+     */
+    private char nextClean() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return 0;
+            }
+            char c = buffer[position++];
+            if (c > ' ' || c == 0) {
+                return c;
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        int read = reader.read(buffer, 0, buffer.length);
+        while (read == 0) {
+            read = reader.read(buffer, 0, buffer.length);
+        }
+        if (read < 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private void enter() {
+        if (++depth > maxDepth && maxDepth > 0) {
+            throw RequestLimits.tooLarge("The body is nested deeper than " + maxDepth + " levels");
+        }
+    }
+
+    private static JSONException syntaxError(String message) {
+        return new JSONException(message);
+    }
+
+}
@@ -0,0 +1,396 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+/**
+ * Generador que escribe el json como UTF-8 directamente en un
+ * {@link OutputStream}, sin construir el texto completo en memoria. Los
+ * Strings se escapan con las mismas reglas de
+ * {@link JSONObject#quote(java.lang.String)} y los números con las de
+ * {@link JSONObject#numberToString(java.lang.Number)}, así que el resultado es
+ * el mismo que el {@code toString()} de org.json.<br><br>
+ *
+ * El buffer de bytes es de cada hilo y se reutiliza entre respuestas; se
+ * devuelve al cerrar el generador
+ *
+ * @author Angel
+ */
+final class JsonStreamGenerator extends JsonGenerator {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[] TRUE = "true".getBytes();
+    private static final byte[] FALSE = "false".getBytes();
+
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private final OutputStream out;
+    private byte[] buffer;
+    private int count;
+    private boolean[] first = new boolean[16];
+    private int depth;
+    private boolean afterName;
+    private boolean flushed;
+
+    /**
+     * Crea un generador sobre un stream
+     *
+     * @param out El destino de los bytes
+     */
+    JsonStreamGenerator(OutputStream out) {
+        this.out = out;
+        this.buffer = BUFFERS.get();
+        // Si el buffer del hilo ya está en uso se trabaja con uno propio
+        BUFFERS.set(null);
+        if (this.buffer == null) {
+            this.buffer = new byte[BUFFER_SIZE];
+        }
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        beforeValue();
+        write('{');
+        push();
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        depth--;
+        write('}');
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        beforeValue();
+        write('[');
+        push();
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        depth--;
+        write(']');
+    }
+
+    @Override
+    public void name(String name) throws IOException {
+        separate();
+        writeQuoted(name);
+        write(':');
+        afterName = true;
+    }
+
+    @Override
+    public void name(JsonKey key) throws IOException {
+        separate();
+        write(key.getEncoded());
+        afterName = true;
+    }
+
+    @Override
+    public void value(String value) throws IOException {
+        beforeValue();
+        writeQuoted(value);
+    }
+
+    @Override
+    public void value(Number value) throws IOException {
+        beforeValue();
+        if ((value instanceof Double && !Double.isFinite(value.doubleValue()))
+                || (value instanceof Float && !Float.isFinite(value.floatValue()))) {
+            write(NULL);
+            return;
+        }
+        writeAscii(JSONObject.numberToString(value));
+    }
+
+    @Override
+    public void value(long value) throws IOException {
+        beforeValue();
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            write('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        ensure(digits);
+        for (int i = count + digits - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count += digits;
+    }
+
+    @Override
+    public void value(double value) throws IOException {
+        value(Double.valueOf(value));
+    }
+
+    @Override
+    public void value(boolean value) throws IOException {
+        beforeValue();
+        write(value ? TRUE : FALSE);
+    }
+
+    @Override
+    public void nullValue() throws IOException {
+        beforeValue();
+        write(NULL);
+    }
+
+    @Override
+    protected void jsonString(JSONString value) throws IOException {
+        beforeValue();
+        writeUtf8(value.toJSONString());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Escribe un salto de línea fuera de cualquier objeto o arreglo, para
+     * separar los valores de primer nivel en NDJSON
+     *
+     * @throws IOException Si ocurre un error de I/O
+     */
+    void lineBreak() throws IOException {
+        write('\n');
+    }
+
+    /**
+     * Indica si ya se envió algún byte al stream
+     *
+     * @return {@code true} si parte del json ya salió del buffer
+     */
+    boolean hasFlushed() {
+        return flushed;
+    }
+
+    /**
+     * Descarta lo que quede en el buffer sin escribirlo ni cerrar el stream y
+     * devuelve el buffer. El generador no debe usarse después
+     */
+    void discard() {
+        if (buffer != null) {
+            count = 0;
+            BUFFERS.set(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Escribe lo que quede en el buffer, cierra el stream y devuelve el
+     * buffer para que lo use la siguiente respuesta del hilo
+     *
+     * @throws IOException Si ocurre un error de I/O
+     */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            flushBuffer();
+            out.close();
+        } finally {
+            BUFFERS.set(buffer);
+            buffer = null;
+        }
+    }
+
+    private void push() {
+        depth++;
+        if (depth == first.length) {
+            first = Arrays.copyOf(first, depth * 2);
+        }
+        first[depth] = true;
+    }
+
+    private void separate() throws IOException {
+        if (first[depth]) {
+            first[depth] = false;
+        } else {
+            write(',');
+        }
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+        } else if (depth > 0) {
+            separate();
+        }
+    }
+
+    private void writeQuoted(String string) throws IOException {
+        write('"');
+        char previous = 0;
+        int length = string.length();
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '\\':
+                case '"':
+                    write('\\');
+                    write(c);
+                    break;
+                case '/':
+                    if (previous == '<') {
+                        write('\\');
+                    }
+                    write(c);
+                    break;
+                case '\b':
+                    writeEscape('b');
+                    break;
+                case '\t':
+                    writeEscape('t');
+                    break;
+                case '\n':
+                    writeEscape('n');
+                    break;
+                case '\f':
+                    writeEscape('f');
+                    break;
+                case '\r':
+                    writeEscape('r');
+                    break;
+                default:
+                    if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+                        ensure(6);
+                        buffer[count++] = '\\';
+                        buffer[count++] = 'u';
+                        buffer[count++] = HEX[(c >> 12) & 0xF];
+                        buffer[count++] = HEX[(c >> 8) & 0xF];
+                        buffer[count++] = HEX[(c >> 4) & 0xF];
+                        buffer[count++] = HEX[c & 0xF];
+                    } else if (c < 0x80) {
+                        write(c);
+                    } else {
+                        i = writeChar(string, i, c);
+                    }
+            }
+            previous = c;
+        }
+        write('"');
+    }
+
+    private void writeEscape(char c) throws IOException {
+        write('\\');
+        write(c);
+    }
+
+    private void writeUtf8(String string) throws IOException {
+        int length = string.length();
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                write(c);
+            } else {
+                i = writeChar(string, i, c);
+            }
+        }
+    }
+
+    /**
+     * Codifica un caracter que no es ASCII
+     *
+     * @return El índice del último caracter usado, que es el siguiente si el
+     * caracter es el inicio de un par sustituto
+     */
+    private int writeChar(String string, int index, char c) throws IOException {
+        ensure(4);
+        if (c < 0x800) {
+            buffer[count++] = (byte) (0xC0 | (c >> 6));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            if (Character.isHighSurrogate(c) && index + 1 < string.length()
+                    && Character.isLowSurrogate(string.charAt(index + 1))) {
+                int code = Character.toCodePoint(c, string.charAt(index + 1));
+                buffer[count++] = (byte) (0xF0 | (code >> 18));
+                buffer[count++] = (byte) (0x80 | ((code >> 12) & 0x3F));
+                buffer[count++] = (byte) (0x80 | ((code >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (code & 0x3F));
+                return index + 1;
+            }
+            // Igual que String.getBytes con un sustituto sin pareja
+            buffer[count++] = '?';
+        } else {
+            buffer[count++] = (byte) (0xE0 | (c >> 12));
+            buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return index;
+    }
+
+    private void writeAscii(String string) throws IOException {
+        int length = string.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            buffer[count++] = (byte) string.charAt(i);
+        }
+    }
+
+    private void write(char c) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) c;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - count) {
+            flushBuffer();
+            if (bytes.length > buffer.length) {
+                flushed = true;
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void ensure(int length) throws IOException {
+        if (length > buffer.length - count) {
+            flushBuffer();
+            if (length > buffer.length) {
+                buffer = new byte[length];
+            }
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            flushed = true;
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+/**
+ * Generador que construye {@link JSONObject} y {@link JSONArray} en memoria.
+ * Lo usa {@link JSONHelper} para obtener el json de los beans con un
+ * {@link JsonCodec} generado
+ *
+ * @author Angel
+ */
+final class JsonTreeGenerator extends JsonGenerator {
+    
+    private final List<Object> containers = new ArrayList();
+    private final List<String> names = new ArrayList();
+    private String name;
+    private Object result;
+
+    /**
+     * Obtiene el primer valor completo que se escribió
+     * 
+     * @return El valor construido
+     */
+    Object getResult() {
+        return result;
+    }
+
+    @Override
+    public void beginObject() {
+        begin(new JSONObject());
+    }
+
+    @Override
+    public void endObject() {
+        end();
+    }
+
+    @Override
+    public void beginArray() {
+        begin(new JSONArray());
+    }
+
+    @Override
+    public void endArray() {
+        end();
+    }
+
+    @Override
+    public void name(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public void value(String value) {
+        add(value);
+    }
+
+    @Override
+    public void value(Number value) {
+        add(value);
+    }
+
+    @Override
+    public void value(long value) {
+        add(value == (int) value ? Integer.valueOf((int) value) : Long.valueOf(value));
+    }
+
+    @Override
+    public void value(boolean value) {
+        add(value);
+    }
+
+    @Override
+    public void nullValue() {
+        add(JSONObject.NULL);
+    }
+
+    @Override
+    protected void jsonString(JSONString value) {
+        add(value);
+    }
+    
+    private void begin(Object container) {
+        add(container);
+        containers.add(container);
+        names.add(name);
+    }
+    
+    private void end() {
+        containers.remove(containers.size() - 1);
+        name = names.remove(names.size() - 1);
+    }
+    
+    private void add(Object value) {
+        if (containers.isEmpty()) {
+            if (result == null) {
+                result = value;
+            }
+            return;
+        }
+        Object container = containers.get(containers.size() - 1);
+        if (container instanceof JSONArray) {
+            ((JSONArray) container).put(value);
+        } else {
+            ((JSONObject) container).put(name, value);
+        }
+    }
+    
+}
@@ -0,0 +1,70 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Cambia los límites de las peticiones que acepta un {@link RestServlet},
+ * que evitan que un solo cliente llene la memoria del servidor con un body
+ * enorme. Los servlets sin la anotación usan los valores por defecto.<br><br>
+ *
+ * Las peticiones cuyo {@code Content-Length} supera {@link #maxBodySize()}
+ * se responden con status 413 sin leer el body ni ejecutar los métodos de
+ * procesamiento. Los bodies sin {@code Content-Length}, enviados por partes
+ * (chunked), se cortan con el mismo status apenas superan el límite mientras
+ * se leen. Los bodies {@code multipart/form-data} no se limitan por su
+ * tamaño total, así que los archivos pueden superar el límite; solo se
+ * limita la suma de sus campos de texto. Los demás límites se comprueban al leer los parametros y también
+ * responden 413. Con cualquiera de ellos se cierra la conexión, para que el
+ * contenedor no tenga que descartar el resto del body.<br><br>
+ *
+ * Los parametros de inicio {@code maxBodySize}, {@code maxJsonDepth},
+ * {@code maxParameters} y {@code maxParts} tienen prioridad sobre la
+ * anotación. Un límite de 0 lo desactiva
+ *
+ * @author Angel
+ */
+@Target(value = {ElementType.TYPE})
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface LimitRequests {
+
+    /**
+     * El tamaño máximo del body en bytes. En los bodies multipart se aplica
+     * solo a la suma de los campos de texto, no a los archivos
+     *
+     * @return El tamaño máximo
+     */
+    public long maxBodySize() default 10 * 1024 * 1024;
+
+    /**
+     * La cantidad máxima de objetos y arreglos anidados en un body json o
+     * CBOR, contando el objeto de primer nivel
+     *
+     * @return La profundidad máxima
+     */
+    public int maxJsonDepth() default 64;
+
+    /**
+     * La cantidad máxima de parametros del query string y, por separado, de
+     * propiedades del objeto de primer nivel del body
+     *
+     * @return La cantidad máxima de parametros
+     */
+    public int maxParameters() default 1000;
+
+    /**
+     * La cantidad máxima de partes de un body multipart, incluyendo los
+     * archivos
+     *
+     * @return La cantidad máxima de partes
+     */
+    public int maxParts() default 100;
+
+}
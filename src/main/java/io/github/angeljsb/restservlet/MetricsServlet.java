@@ -0,0 +1,195 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet que responde las métricas de todos los {@link RestServlet} de la
+ * aplicación que usan {@link CollectMetrics}. Se registra como cualquier
+ * servlet, por ejemplo:
+ *
+ * <pre>
+ * &#64;WebServlet("/metrics")
+ * public class Metrics extends MetricsServlet {}
+ * </pre>
+ *
+ * Por defecto responde un json con las rutas de cada servlet y las
+ * latencias en milisegundos. Si el header {@code Accept} pide
+ * {@code text/plain} o {@code application/openmetrics-text}, como hace
+ * Prometheus, o el parametro {@code format} es {@code prometheus}, responde
+ * en el formato de texto de Prometheus, con las latencias en segundos como
+ * un summary con los cuantiles 0.5, 0.99 y 0.999
+ *
+ * @author Angel
+ */
+public class MetricsServlet extends RestServlet {
+
+    private static final String TEXT_FORMAT = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    private static final Comparator<RequestMetrics.RouteSnapshot> ORDER
+            = Comparator.comparing(RequestMetrics.RouteSnapshot::getRoute)
+                    .thenComparing(RequestMetrics.RouteSnapshot::getMethod);
+
+    @Override
+    protected Object processGet(RestRequestReader requestReader, RestResponseWriter responseWriter)
+            throws ServletException, IOException {
+        Map<String, List<RequestMetrics.RouteSnapshot>> snapshots = snapshot(this.getServletContext());
+        if (isPrometheus(requestReader)) {
+            byte[] text = toPrometheus(snapshots).getBytes(StandardCharsets.UTF_8);
+            HttpServletResponse response = responseWriter.getResponse();
+            response.setContentType(TEXT_FORMAT);
+            response.setContentLength(text.length);
+            try (OutputStream out = response.getOutputStream()) {
+                out.write(text);
+            }
+            return null;
+        }
+        return toJson(snapshots);
+    }
+
+    private static boolean isPrometheus(RestRequestReader reader) {
+        String format = reader.getRequest().getParameter("format");
+        if (format != null) {
+            return "prometheus".equalsIgnoreCase(format);
+        }
+        String accept = reader.getHeader("Accept");
+        return accept != null && (accept.contains("text/plain") || accept.contains("openmetrics"));
+    }
+
+    /**
+     * Copia las métricas de los servlets, ordenadas por nombre de servlet,
+     * ruta y método
+     */
+    private static Map<String, List<RequestMetrics.RouteSnapshot>> snapshot(ServletContext context) {
+        Map<String, List<RequestMetrics.RouteSnapshot>> snapshots = new TreeMap();
+        if (context == null) {
+            return snapshots;
+        }
+        for (RequestMetrics metrics : RequestMetrics.getAll(context)) {
+            List<RequestMetrics.RouteSnapshot> routes = metrics.snapshot();
+            routes.sort(ORDER);
+            snapshots.put(metrics.getServletName(), routes);
+        }
+        return snapshots;
+    }
+
+    private static Map<String, Object> toJson(Map<String, List<RequestMetrics.RouteSnapshot>> snapshots) {
+        Map<String, Object> json = new LinkedHashMap();
+        snapshots.forEach((servlet, routes) -> {
+            List<Object> list = new ArrayList();
+            for (RequestMetrics.RouteSnapshot route : routes) {
+                Map<String, Object> latency = new LinkedHashMap();
+                latency.put("mean", route.getMeanLatency());
+                latency.put("p50", route.getP50());
+                latency.put("p99", route.getP99());
+                latency.put("p999", route.getP999());
+                latency.put("max", route.getMaxLatency());
+                Map<String, Object> item = new LinkedHashMap();
+                item.put("method", route.getMethod());
+                item.put("route", route.getRoute());
+                item.put("requests", route.getRequests());
+                item.put("status", route.getStatus());
+                item.put("latencyMs", latency);
+                item.put("requestBytes", route.getRequestBytes());
+                item.put("responseBytes", route.getResponseBytes());
+                list.add(item);
+            }
+            json.put(servlet, list);
+        });
+        return json;
+    }
+
+    private static String toPrometheus(Map<String, List<RequestMetrics.RouteSnapshot>> snapshots) {
+        StringBuilder out = new StringBuilder(1024);
+        family(out, "restservlet_requests_total", "counter", "Requests by servlet, method, route and status");
+        snapshots.forEach((servlet, routes) -> {
+            for (RequestMetrics.RouteSnapshot route : routes) {
+                route.getStatus().forEach((status, count) -> {
+                    sample(out, "restservlet_requests_total", servlet, route, "status", status);
+                    out.append(count).append('\n');
+                });
+            }
+        });
+        family(out, "restservlet_request_duration_seconds", "summary", "Request latency");
+        snapshots.forEach((servlet, routes) -> {
+            for (RequestMetrics.RouteSnapshot route : routes) {
+                for (double quantile : QUANTILES) {
+                    sample(out, "restservlet_request_duration_seconds", servlet, route,
+                            "quantile", String.valueOf(quantile));
+                    out.append(seconds(route.getLatencyPercentile(quantile))).append('\n');
+                }
+                sample(out, "restservlet_request_duration_seconds_sum", servlet, route, null, null);
+                out.append(seconds(route.getTotalLatency())).append('\n');
+                sample(out, "restservlet_request_duration_seconds_count", servlet, route, null, null);
+                out.append(route.getRequests()).append('\n');
+            }
+        });
+        family(out, "restservlet_request_bytes_total", "counter", "Request body bytes");
+        snapshots.forEach((servlet, routes) -> {
+            for (RequestMetrics.RouteSnapshot route : routes) {
+                sample(out, "restservlet_request_bytes_total", servlet, route, null, null);
+                out.append(route.getRequestBytes()).append('\n');
+            }
+        });
+        family(out, "restservlet_response_bytes_total", "counter", "Response body bytes before compression");
+        snapshots.forEach((servlet, routes) -> {
+            for (RequestMetrics.RouteSnapshot route : routes) {
+                sample(out, "restservlet_response_bytes_total", servlet, route, null, null);
+                out.append(route.getResponseBytes()).append('\n');
+            }
+        });
+        return out.toString();
+    }
+
+    private static void family(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String servlet,
+            RequestMetrics.RouteSnapshot route, String label, String value) {
+        out.append(name).append('{');
+        label(out, "servlet", servlet).append(',');
+        label(out, "method", route.getMethod()).append(',');
+        label(out, "route", route.getRoute());
+        if (label != null) {
+            label(out.append(','), label, value);
+        }
+        out.append("} ");
+    }
+
+    private static StringBuilder label(StringBuilder out, String name, String value) {
+        out.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"');
+    }
+
+    private static String seconds(long nanos) {
+        return String.valueOf(nanos / 1_000_000_000.0);
+    }
+
+}
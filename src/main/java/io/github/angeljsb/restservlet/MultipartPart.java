@@ -0,0 +1,277 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Una parte de un body multipart leído con {@link MultipartReader}. Sus
+ * headers están en memoria; su contenido sigue en la request hasta que se
+ * lee con {@link #getInputStream()} o
+ * {@link #transferTo(java.nio.file.Path)}, o hasta que se guarda porque se
+ * pasó a la siguiente parte o se pidió {@link #getString()} o
+ * {@link #getSize()}. Una parte guardada puede leerse cuantas veces se
+ * quiera mientras dure la petición
+ *
+ * @author Angel
+ */
+public final class MultipartPart {
+
+    private static final long TRANSFER_CHUNK = 1024 * 1024;
+
+    private final MultipartReader reader;
+    private final Map<String, String> headers;
+    private final String name;
+    private final String fileName;
+    private boolean read;
+    private boolean spooled;
+    private byte[] head;
+    private int headLength;
+    private Path spoolFile;
+    private long size = -1;
+
+    MultipartPart(MultipartReader reader, Map<String, String> headers) {
+        this.reader = reader;
+        this.headers = headers;
+        String disposition = headers.get("content-disposition");
+        this.name = disposition == null ? null : MultipartReader.parameter(disposition, "name");
+        this.fileName = disposition == null ? null : MultipartReader.parameter(disposition, "filename");
+    }
+
+    /**
+     * Obtiene el nombre del campo del formulario
+     *
+     * @return El {@code name} del {@code Content-Disposition} o {@code null}
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Obtiene el nombre del archivo tal como lo envió el cliente
+     *
+     * @return El {@code filename} del {@code Content-Disposition} o
+     * {@code null} si la parte no es un archivo
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Indica si la parte es un archivo
+     *
+     * @return {@code true} si la parte tiene {@code filename}
+     */
+    public boolean isFile() {
+        return fileName != null;
+    }
+
+    /**
+     * Obtiene el tipo del contenido
+     *
+     * @return El {@code Content-Type} de la parte o {@code null}
+     */
+    public String getContentType() {
+        return headers.get("content-type");
+    }
+
+    /**
+     * Obtiene un header de la parte
+     *
+     * @param name El nombre del header, sin importar mayúsculas
+     * @return El valor o {@code null} si la parte no tiene el header
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Obtiene el contenido de la parte. Si la parte no se ha guardado, el
+     * stream lee directamente de la request y solo puede obtenerse una vez,
+     * antes de pasar a la siguiente parte
+     *
+     * @return El contenido
+     * @throws IOException Si ocurre un error de I/O
+     * @throws IllegalStateException Si el contenido ya se leyó de la request
+     */
+    public InputStream getInputStream() throws IOException {
+        if (spooled) {
+            checkNotDeleted();
+            InputStream memory = new ByteArrayInputStream(head, 0, headLength);
+            return spoolFile == null ? memory : new SequenceInputStream(memory, Files.newInputStream(spoolFile));
+        }
+        return openBody();
+    }
+
+    /**
+     * Obtiene el contenido de la parte como texto, guardándolo antes si hace
+     * falta. Usa el character encoding de la request o UTF-8
+     *
+     * @return El contenido
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public String getString() throws IOException {
+        spool();
+        checkNotDeleted();
+        if (spoolFile == null) {
+            return new String(head, 0, headLength, reader.getCharset());
+        }
+        return RestRequestReader.readInputStream(getInputStream(), reader.getCharset().name());
+    }
+
+    /**
+     * Obtiene el tamaño del contenido, guardándolo antes si hace falta
+     *
+     * @return La cantidad de bytes o -1 si el contenido ya se leyó de la
+     * request con {@link #getInputStream()}
+     * @throws IOException Si ocurre un error de I/O
+     */
+    public long getSize() throws IOException {
+        if (!read) {
+            spool();
+        }
+        return size;
+    }
+
+    /**
+     * Escribe el contenido en un archivo, reemplazándolo si existe. Si la
+     * parte no se ha guardado, el contenido pasa de la request al archivo
+     * sin acumularse en memoria; si se guardó, la parte en el archivo
+     * temporal se copia con {@link FileChannel#transferFrom}, sin pasar por
+     * el heap
+     *
+     * @param target El archivo destino
+     * @return La cantidad de bytes escritos
+     * @throws IOException Si ocurre un error de I/O
+     * @throws IllegalStateException Si el contenido ya se leyó de la request
+     */
+    public long transferTo(Path target) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (!spooled) {
+                long written = transfer(openBody(), out, 0);
+                size = written;
+                return written;
+            }
+            checkNotDeleted();
+            ByteBuffer memory = ByteBuffer.wrap(head, 0, headLength);
+            while (memory.hasRemaining()) {
+                out.write(memory);
+            }
+            if (spoolFile == null) {
+                return headLength;
+            }
+            try (FileChannel in = FileChannel.open(spoolFile, StandardOpenOption.READ)) {
+                return headLength + transfer(in, out, headLength);
+            }
+        }
+    }
+
+    /**
+     * Borra el archivo temporal de la parte, si tiene. Después de borrarlo
+     * el contenido ya no puede leerse
+     */
+    public void delete() {
+        Path file = spoolFile;
+        if (file == null) {
+            return;
+        }
+        spoolFile = null;
+        head = null;
+        headLength = 0;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            System.err.println("Cannot delete the multipart temp file " + file + ": " + ex.getMessage());
+        }
+    }
+
+    private void checkNotDeleted() {
+        if (head == null) {
+            throw new IllegalStateException("The temp file of the part " + name + " was deleted");
+        }
+    }
+
+    boolean isRead() {
+        return read;
+    }
+
+    /**
+     * Guarda el contenido que sigue en la request: hasta el umbral del
+     * lector en memoria y el resto en un archivo temporal
+     */
+    void spool() throws IOException {
+        if (spooled) {
+            return;
+        }
+        MultipartReader.PartBody body = openBody();
+        int threshold = reader.getSpoolThreshold();
+        byte[] memory = new byte[Math.min(threshold, 4096)];
+        int count = 0;
+        while (count < threshold) {
+            if (count == memory.length) {
+                memory = Arrays.copyOf(memory, Math.min(threshold, memory.length * 2));
+            }
+            int n = body.read(memory, count, memory.length - count);
+            if (n < 0) {
+                break;
+            }
+            count += n;
+        }
+        head = memory;
+        headLength = count;
+        size = count;
+        spooled = true;
+        if (count < threshold) {
+            return;
+        }
+        // Una parte del tamaño exacto del umbral, o vacía con umbral 0, no
+        // necesita un archivo: se prueba un byte más antes de crearlo
+        int next = body.read();
+        if (next < 0) {
+            return;
+        }
+        Path dir = reader.getTempDir();
+        Path file = dir == null ? Files.createTempFile("multipart-", ".tmp")
+                : Files.createTempFile(dir, "multipart-", ".tmp");
+        spoolFile = file;
+        reader.track(this);
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.wrap(new byte[]{(byte) next}));
+            size += 1 + transfer(body, out, 1);
+        }
+    }
+
+    private MultipartReader.PartBody openBody() {
+        if (read) {
+            throw new IllegalStateException("The content of the part " + name + " was already read");
+        }
+        read = true;
+        return new MultipartReader.PartBody(reader, this);
+    }
+
+    private static long transfer(ReadableByteChannel in, FileChannel out, long position) throws IOException {
+        long total = 0;
+        long n;
+        while ((n = out.transferFrom(in, position + total, TRANSFER_CHUNK)) > 0) {
+            total += n;
+        }
+        return total;
+    }
+
+}
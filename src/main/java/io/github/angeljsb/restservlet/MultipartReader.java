@@ -0,0 +1,474 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Recorre las partes de un body {@code multipart/form-data} a medida que
+ * llegan, directamente desde el input stream de la request y con un buffer
+ * de tamaño fijo. Se obtiene con {@link RestRequestReader#getMultipart()}:
+ *
+ * <pre>
+ * MultipartReader multipart = requestReader.getMultipart();
+ * while (multipart.hasNext()) {
+ *     MultipartPart part = multipart.next();
+ *     if (part.isFile()) {
+ *         part.transferTo(uploads.resolve(UUID.randomUUID().toString()));
+ *     } else {
+ *         fields.put(part.getName(), part.getString());
+ *     }
+ * }
+ * </pre>
+ *
+ * El contenido de la parte actual puede leerse una sola vez desde la
+ * request con {@link MultipartPart#getInputStream()} o
+ * {@link MultipartPart#transferTo(java.nio.file.Path)}. Si se pasa a la
+ * siguiente parte sin leerlo, o se piden métodos que necesitan el contenido
+ * completo, este se guarda: los primeros bytes en memoria y el resto en un
+ * archivo temporal, ver {@link StreamMultipart}. Los archivos temporales se
+ * borran al cerrar el lector, lo que hace el {@link RestServlet} al terminar
+ * la petición.<br><br>
+ *
+ * Los cuerpos que no tienen el formato esperado se responden con status
+ * 400, y los que superan los {@link LimitRequests límites} del servlet con
+ * status 413
+ *
+ * @author Angel
+ * @see MultipartPart
+ */
+public final class MultipartReader implements Iterator<MultipartPart>, Closeable {
+
+    /**
+     * Bytes de cada parte que se guardan en memoria si el servlet no usa
+     * {@link StreamMultipart}
+     */
+    public static final int DEFAULT_SPOOL_THRESHOLD = 64 * 1024;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_HEADER_SIZE = 16 * 1024;
+
+    /**
+     * Busca un parametro de un header como {@code Content-Type} o
+     * {@code Content-Disposition}, por ejemplo el {@code boundary} o el
+     * {@code filename}. Los valores pueden ir entre comillas
+     *
+     * @param header El valor del header
+     * @param name El nombre del parametro, sin importar mayúsculas
+     * @return El valor del parametro o {@code null} si no está
+     */
+    static String parameter(String header, String name) {
+        int length = header.length();
+        int i = header.indexOf(';');
+        while (i >= 0 && i < length) {
+            i++;
+            int equals = header.indexOf('=', i);
+            if (equals < 0) {
+                return null;
+            }
+            String key = header.substring(i, equals).trim();
+            i = equals + 1;
+            while (i < length && header.charAt(i) == ' ') {
+                i++;
+            }
+            String value;
+            if (i < length && header.charAt(i) == '"') {
+                StringBuilder sb = new StringBuilder();
+                i++;
+                while (i < length && header.charAt(i) != '"') {
+                    char c = header.charAt(i);
+                    if (c == '\\' && i + 1 < length
+                            && (header.charAt(i + 1) == '"' || header.charAt(i + 1) == '\\')) {
+                        c = header.charAt(++i);
+                    }
+                    sb.append(c);
+                    i++;
+                }
+                value = sb.toString();
+                i = header.indexOf(';', i);
+            } else {
+                int end = header.indexOf(';', i);
+                value = (end < 0 ? header.substring(i) : header.substring(i, end)).trim();
+                i = end;
+            }
+            if (key.equalsIgnoreCase(name)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static RestException malformed(String message) {
+        return new RestException(HttpServletResponse.SC_BAD_REQUEST, message, false);
+    }
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final Charset charset;
+    private final int spoolThreshold;
+    private final Path tempDir;
+    private final RequestLimits limits;
+    private final byte[] buffer;
+    private final List<MultipartPart> spooled = new ArrayList();
+    private int position;
+    private int limit;
+    private int dataEnd;
+    private boolean delimiterFound;
+    private boolean eof;
+    private boolean finished;
+    private boolean closed;
+    private int partCount;
+    private MultipartPart current;
+    private MultipartPart next;
+
+    /**
+     * Crea un lector sobre un body multipart
+     *
+     * @param in El body de la request, ya acotado por los límites
+     * @param boundary El {@code boundary} del {@code Content-Type}
+     * @param charset El character encoding de la request o {@code null}
+     * @param spoolThreshold Los bytes de cada parte que se guardan en memoria
+     * @param tempDir La carpeta de los archivos temporales o {@code null}
+     * para usar la del sistema
+     * @param limits Los límites del servlet
+     */
+    MultipartReader(InputStream in, String boundary, String charset, int spoolThreshold, Path tempDir,
+            RequestLimits limits) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.charset = charset == null ? StandardCharsets.UTF_8 : Charset.forName(charset);
+        this.spoolThreshold = spoolThreshold;
+        this.tempDir = tempDir;
+        this.limits = limits;
+        this.buffer = new byte[Math.max(BUFFER_SIZE, delimiter.length * 2)];
+        // El primer delimitador no lleva el salto de línea delante
+        this.buffer[0] = '\r';
+        this.buffer[1] = '\n';
+        this.limit = 2;
+    }
+
+    /**
+     * Indica si quedan partes. Si la parte actual no se leyó, se guarda
+     * antes de buscar la siguiente
+     *
+     * @return {@code true} si hay otra parte
+     * @throws UncheckedIOException Si ocurre un error de I/O leyendo la
+     * request
+     */
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            if (closed) {
+                throw new IllegalStateException("The multipart reader is closed");
+            }
+            try {
+                next = advance();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return next != null;
+    }
+
+    /**
+     * Obtiene la siguiente parte, con sus headers ya leídos y su contenido
+     * aún en la request
+     *
+     * @return La parte
+     * @throws NoSuchElementException Si no quedan partes
+     */
+    @Override
+    public MultipartPart next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        MultipartPart part = next;
+        next = null;
+        return part;
+    }
+
+    /**
+     * Borra los archivos temporales de las partes guardadas. Las partes que
+     * siguen en la request ya no pueden leerse
+     */
+    @Override
+    public void close() {
+        closed = true;
+        current = null;
+        for (MultipartPart part : spooled) {
+            part.delete();
+        }
+        spooled.clear();
+    }
+
+    private MultipartPart advance() throws IOException {
+        if (current != null && !current.isRead()) {
+            current.spool();
+        }
+        current = null;
+        skipBody();
+        position += delimiter.length;
+        delimiterFound = false;
+        ensure(2);
+        if (buffer[position] == '-' && buffer[position + 1] == '-') {
+            finished = true;
+            return null;
+        }
+        int headerSize = readLine(null, 0);
+        Map<String, String> headers = new HashMap();
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        while (true) {
+            line.reset();
+            headerSize = readLine(line, headerSize);
+            if (line.size() == 0) {
+                break;
+            }
+            String header = new String(line.toByteArray(), charset);
+            int colon = header.indexOf(':');
+            if (colon > 0) {
+                headers.put(header.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                        header.substring(colon + 1).trim());
+            }
+        }
+        dataEnd = position;
+        limits.checkParts(++partCount);
+        current = new MultipartPart(this, headers);
+        return current;
+    }
+
+    /**
+     * Lee una línea de headers hasta el salto de línea, sin incluirlo
+     *
+     * @param line Donde se guarda la línea o {@code null} para descartarla
+     * @param size Los bytes de headers leídos en esta parte
+     * @return Los bytes de headers leídos contando esta línea
+     */
+    private int readLine(ByteArrayOutputStream line, int size) throws IOException {
+        while (true) {
+            if (position >= limit) {
+                fill("The multipart body ends inside the part headers");
+                continue;
+            }
+            byte c = buffer[position++];
+            if (++size > MAX_HEADER_SIZE) {
+                throw RequestLimits.tooLarge("The part headers exceed " + MAX_HEADER_SIZE + " bytes");
+            }
+            if (c == '\n') {
+                return size;
+            }
+            if (c != '\r' && line != null) {
+                line.write(c);
+            }
+        }
+    }
+
+    private void ensure(int count) throws IOException {
+        while (limit - position < count) {
+            fill("The multipart body ends without the closing boundary");
+        }
+    }
+
+    /**
+     * Mueve los bytes pendientes al principio del buffer y lee más de la
+     * request
+     */
+    private void fill(String endMessage) throws IOException {
+        if (eof) {
+            throw malformed(endMessage);
+        }
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            dataEnd = Math.max(0, dataEnd - position);
+            position = 0;
+        }
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /**
+     * Obtiene cuántos bytes del contenido de la parte actual pueden leerse
+     * del buffer sin pasar el delimitador, leyendo más de la request si hace
+     * falta
+     *
+     * @return La cantidad de bytes o 0 si el contenido terminó
+     */
+    private int dataAvailable() throws IOException {
+        while (true) {
+            if (position < dataEnd) {
+                return dataEnd - position;
+            }
+            if (delimiterFound) {
+                return 0;
+            }
+            int found = indexOfDelimiter(position);
+            if (found >= 0) {
+                dataEnd = found;
+                delimiterFound = true;
+                continue;
+            }
+            int safe = limit - delimiter.length + 1;
+            if (safe > position) {
+                dataEnd = safe;
+                continue;
+            }
+            fill("The multipart body ends without the closing boundary");
+        }
+    }
+
+    private int indexOfDelimiter(int from) {
+        byte first = delimiter[0];
+        int last = limit - delimiter.length;
+        outer:
+        for (int i = from; i <= last; i++) {
+            if (buffer[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < delimiter.length; j++) {
+                if (buffer[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private void skipBody() throws IOException {
+        int available;
+        while ((available = dataAvailable()) > 0) {
+            position += available;
+        }
+    }
+
+    /**
+     * Lee contenido de una parte, que debe ser la actual
+     */
+    int read(MultipartPart part, byte[] b, int off, int len) throws IOException {
+        checkCurrent(part);
+        if (len == 0) {
+            return 0;
+        }
+        int available = dataAvailable();
+        if (available == 0) {
+            return -1;
+        }
+        int count = Math.min(len, available);
+        System.arraycopy(buffer, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Lee contenido de una parte, que debe ser la actual, copiándolo del
+     * buffer directamente al destino
+     */
+    int read(MultipartPart part, ByteBuffer dst) throws IOException {
+        checkCurrent(part);
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        int available = dataAvailable();
+        if (available == 0) {
+            return -1;
+        }
+        int count = Math.min(dst.remaining(), available);
+        dst.put(buffer, position, count);
+        position += count;
+        return count;
+    }
+
+    private void checkCurrent(MultipartPart part) throws IOException {
+        if (part != current) {
+            throw new IOException("The part is no longer in the request");
+        }
+    }
+
+    int getSpoolThreshold() {
+        return spoolThreshold;
+    }
+
+    Path getTempDir() {
+        return tempDir;
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Registra una parte con archivo temporal para borrarlo al cerrar
+     */
+    void track(MultipartPart part) {
+        spooled.add(part);
+    }
+
+    /**
+     * Canal y stream sobre el contenido de la parte actual, que termina en
+     * el delimitador de la siguiente. Cerrarlo no cierra la request
+     */
+    static final class PartBody extends InputStream implements ReadableByteChannel {
+
+        private final MultipartReader reader;
+        private final MultipartPart part;
+        private final byte[] single = new byte[1];
+        private boolean open = true;
+
+        PartBody(MultipartReader reader, MultipartPart part) {
+            this.reader = reader;
+            this.part = part;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = read(single, 0, 1);
+            return read < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return reader.read(part, b, off, len);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return reader.read(part, dst);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+    }
+
+}
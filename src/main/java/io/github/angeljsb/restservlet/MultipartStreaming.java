@@ -0,0 +1,98 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import javax.servlet.ServletContext;
+
+/**
+ * Configuración de la lectura de bodies multipart de un servlet, ver
+ * {@link StreamMultipart}
+ *
+ * @author Angel
+ */
+final class MultipartStreaming {
+
+    /**
+     * Los bodies multipart se leen con el contenedor y
+     * {@link RestRequestReader#getMultipart()} usa los valores por defecto
+     */
+    static final MultipartStreaming DEFAULT = new MultipartStreaming(false,
+            MultipartReader.DEFAULT_SPOOL_THRESHOLD, null);
+
+    /**
+     * Lee la configuración de un servlet
+     *
+     * @param servlet El servlet
+     * @return La configuración de la anotación y los parametros de inicio
+     */
+    static MultipartStreaming forServlet(RestServlet servlet) {
+        StreamMultipart ann = servlet.getClass().getAnnotation(StreamMultipart.class);
+        boolean enabled = ann != null;
+        int threshold = ann != null ? ann.spoolThreshold() : MultipartReader.DEFAULT_SPOOL_THRESHOLD;
+
+        String param = servlet.getInitParameter("streamMultipart");
+        if (param != null) {
+            enabled = Boolean.parseBoolean(param.trim());
+        }
+        param = servlet.getInitParameter("multipartSpoolThreshold");
+        if (param != null) {
+            threshold = Integer.parseInt(param.trim());
+        }
+
+        Path tempDir = null;
+        ServletContext context = servlet.getServletContext();
+        Object dir = context == null ? null : context.getAttribute(ServletContext.TEMPDIR);
+        if (dir instanceof File) {
+            tempDir = ((File) dir).toPath();
+        } else if (dir != null) {
+            tempDir = Paths.get(dir.toString());
+        }
+        return new MultipartStreaming(enabled, threshold, tempDir);
+    }
+
+    private final boolean enabled;
+    private final int spoolThreshold;
+    private final Path tempDir;
+
+    private MultipartStreaming(boolean enabled, int spoolThreshold, Path tempDir) {
+        this.enabled = enabled;
+        this.spoolThreshold = Math.max(0, spoolThreshold);
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * Indica si los bodies multipart se dejan sin leer para
+     * {@link RestRequestReader#getMultipart()}
+     *
+     * @return {@code true} si el servlet usa {@link StreamMultipart}
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Obtiene los bytes de cada parte que se guardan en memoria
+     *
+     * @return El tamaño en bytes
+     */
+    int getSpoolThreshold() {
+        return spoolThreshold;
+    }
+
+    /**
+     * Obtiene la carpeta de los archivos temporales
+     *
+     * @return La carpeta temporal de la aplicación o {@code null} para usar
+     * la del sistema
+     */
+    Path getTempDir() {
+        return tempDir;
+    }
+
+}
@@ -0,0 +1,467 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Almacén fuera del heap para los cuerpos grandes de la
+ * {@link ResponseCache}. Sin archivo, cada cuerpo se guarda en un
+ * {@link ByteBuffer} directo. Con archivo, los cuerpos se agregan a un
+ * archivo de datos mapeado en memoria y un índice en formato json por líneas
+ * relaciona cada clave con su región del archivo, de modo que al reiniciar la
+ * aplicación la cache vuelve a cargarse sin procesar ninguna petición.<br><br>
+ *
+ * El espacio de las entradas descartadas se recupera compactando el archivo
+ * en una nueva generación cuando ya no caben más cuerpos. La generación
+ * anterior se conserva hasta la siguiente compactación porque el contenedor
+ * puede estar enviándola con sendfile
+ *
+ * @author Angel
+ */
+abstract class OffHeapStore implements Closeable {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private static final ThreadLocal<byte[]> CHUNKS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[CHUNK_SIZE];
+        }
+    };
+
+    /**
+     * Crea un almacén
+     *
+     * @param maxBytes La cantidad máxima de bytes guardados
+     * @param file La ruta base del archivo o {@code null} para guardar los
+     * cuerpos solo en memoria directa
+     * @return El almacén
+     * @throws IOException Si no puede abrirse el archivo
+     */
+    static OffHeapStore create(long maxBytes, String file) throws IOException {
+        if (file == null || file.isEmpty()) {
+            return new DirectStore(maxBytes);
+        }
+        return new FileStore(Paths.get(file), maxBytes);
+    }
+
+    /**
+     * Guarda un cuerpo
+     *
+     * @param key La clave de la petición
+     * @param body Los bytes del cuerpo
+     * @param length La cantidad de bytes a guardar
+     * @param meta Los datos de la respuesta que se guardan en el índice
+     * @return La región donde quedó el cuerpo o {@code null} si no hay
+     * espacio
+     */
+    abstract Region allocate(String key, byte[] body, int length, JSONObject meta);
+
+    /**
+     * Libera el espacio de una región que salió de la cache
+     *
+     * @param region La región
+     */
+    abstract void release(Region region);
+
+    /**
+     * Obtiene la cantidad de bytes ocupados por las regiones vigentes
+     *
+     * @return Los bytes usados
+     */
+    abstract long getUsedBytes();
+
+    /**
+     * Obtiene las regiones guardadas en el archivo por una ejecución
+     * anterior
+     *
+     * @return Las regiones en el orden en que se guardaron
+     */
+    List<Region> load() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    /**
+     * Un cuerpo guardado fuera del heap
+     */
+    static final class Region {
+
+        private final String key;
+        private final int length;
+        private final JSONObject meta;
+        private volatile Location location;
+
+        Region(String key, int length, JSONObject meta, Location location) {
+            this.key = key;
+            this.length = length;
+            this.meta = meta;
+            this.location = location;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        int getLength() {
+            return length;
+        }
+
+        JSONObject getMeta() {
+            return meta;
+        }
+
+        /**
+         * Obtiene el archivo y la posición donde está el cuerpo, que cambian
+         * si el archivo se compacta
+         *
+         * @return La ubicación actual
+         */
+        Location getLocation() {
+            return location;
+        }
+
+        /**
+         * Copia el cuerpo a un stream por bloques, sin pasarlo completo al
+         * heap
+         *
+         * @param out El destino
+         * @throws IOException Si ocurre un error de I/O
+         */
+        void writeTo(OutputStream out) throws IOException {
+            ByteBuffer source = location.buffer.duplicate();
+            byte[] chunk = CHUNKS.get();
+            while (source.hasRemaining()) {
+                int count = Math.min(chunk.length, source.remaining());
+                source.get(chunk, 0, count);
+                out.write(chunk, 0, count);
+            }
+        }
+
+    }
+
+    /**
+     * El lugar donde está guardado un cuerpo
+     */
+    static final class Location {
+
+        private final Path file;
+        private final long offset;
+        private final ByteBuffer buffer;
+
+        Location(Path file, long offset, ByteBuffer buffer) {
+            this.file = file;
+            this.offset = offset;
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return El archivo de datos o {@code null} si el cuerpo solo está
+         * en memoria
+         */
+        Path getFile() {
+            return file;
+        }
+
+        long getOffset() {
+            return offset;
+        }
+
+    }
+
+    /**
+     * Guarda cada cuerpo en un buffer directo, que se libera cuando el
+     * recolector descarta la región
+     */
+    private static final class DirectStore extends OffHeapStore {
+
+        private final long maxBytes;
+        private final AtomicLong used = new AtomicLong();
+
+        DirectStore(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        Region allocate(String key, byte[] body, int length, JSONObject meta) {
+            long current;
+            do {
+                current = used.get();
+                if (current + length > maxBytes) {
+                    return null;
+                }
+            } while (!used.compareAndSet(current, current + length));
+            ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+            // Se escribe en una vista para que el buffer quede en la posición 0
+            buffer.duplicate().put(body, 0, length);
+            return new Region(key, length, meta, new Location(null, -1, buffer));
+        }
+
+        @Override
+        void release(Region region) {
+            used.addAndGet(-region.getLength());
+        }
+
+        @Override
+        long getUsedBytes() {
+            return used.get();
+        }
+
+    }
+
+    /**
+     * Guarda los cuerpos en un archivo de datos mapeado en memoria, con un
+     * índice que se escribe a medida que se agregan y descartan regiones
+     */
+    private static final class FileStore extends OffHeapStore {
+
+        private final Path base;
+        private final Path indexFile;
+        private final long maxBytes;
+        private final Set<Region> live = new LinkedHashSet();
+        private final List<Region> loaded;
+        private int generation;
+        private Path dataFile;
+        private FileChannel channel;
+        private BufferedWriter index;
+        private long end;
+        private long used;
+
+        FileStore(Path base, long maxBytes) throws IOException {
+            this.base = base;
+            this.indexFile = Paths.get(base + ".index");
+            this.maxBytes = maxBytes;
+            Path parent = base.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Map<String, JSONObject> entries = readIndex();
+            this.dataFile = dataFile(generation);
+            this.channel = FileChannel.open(dataFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.end = channel.size();
+            this.loaded = new ArrayList();
+            for (JSONObject entry : entries.values()) {
+                long offset = entry.getLong("offset");
+                int length = entry.getInt("length");
+                if (offset + length > end) {
+                    // El cuerpo no terminó de escribirse
+                    continue;
+                }
+                Region region = new Region(entry.getString("key"), length, entry.getJSONObject("meta"),
+                        new Location(dataFile, offset, channel.map(FileChannel.MapMode.READ_ONLY, offset, length)));
+                live.add(region);
+                loaded.add(region);
+                used += length;
+            }
+            Files.deleteIfExists(dataFile(generation - 1));
+            rewriteIndex();
+        }
+
+        private Path dataFile(int generation) {
+            return Paths.get(base + "." + generation + ".data");
+        }
+
+        /**
+         * Lee el índice y se queda con la última versión de cada clave que no
+         * haya sido descartada
+         */
+        private Map<String, JSONObject> readIndex() throws IOException {
+            Map<String, JSONObject> entries = new LinkedHashMap();
+            if (!Files.exists(indexFile)) {
+                return entries;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        JSONObject record = new JSONObject(line);
+                        if (record.has("generation")) {
+                            generation = record.getInt("generation");
+                        } else if (record.has("remove")) {
+                            JSONObject entry = entries.get(record.getString("remove"));
+                            if (entry != null && entry.getLong("offset") == record.getLong("offset")) {
+                                entries.remove(record.getString("remove"));
+                            }
+                        } else {
+                            entries.remove(record.getString("key"));
+                            entries.put(record.getString("key"), record);
+                        }
+                    } catch (JSONException ex) {
+                        // Una línea cortada al detenerse la aplicación
+                    }
+                }
+            }
+            return entries;
+        }
+
+        @Override
+        synchronized List<Region> load() {
+            List<Region> regions = new ArrayList(loaded);
+            loaded.clear();
+            return regions;
+        }
+
+        @Override
+        synchronized Region allocate(String key, byte[] body, int length, JSONObject meta) {
+            if (channel == null || length > maxBytes) {
+                return null;
+            }
+            try {
+                if (end + length > maxBytes) {
+                    if (used + length > maxBytes) {
+                        return null;
+                    }
+                    compact();
+                }
+                long offset = end;
+                ByteBuffer source = ByteBuffer.wrap(body, 0, length);
+                while (source.hasRemaining()) {
+                    channel.write(source, offset + source.position());
+                }
+                end += length;
+                Region region = new Region(key, length, meta, new Location(dataFile, offset,
+                        channel.map(FileChannel.MapMode.READ_ONLY, offset, length)));
+                live.add(region);
+                used += length;
+                writeRecord(entryRecord(region));
+                return region;
+            } catch (IOException ex) {
+                System.err.println("Cannot store the response " + key + ": " + ex.getMessage());
+                return null;
+            }
+        }
+
+        @Override
+        synchronized void release(Region region) {
+            if (!live.remove(region)) {
+                return;
+            }
+            used -= region.getLength();
+            if (index != null) {
+                try {
+                    writeRecord(new JSONObject().put("remove", region.getKey())
+                            .put("offset", region.getLocation().getOffset()));
+                } catch (IOException ex) {
+                    System.err.println("Cannot update the cache index: " + ex.getMessage());
+                }
+            }
+        }
+
+        @Override
+        synchronized long getUsedBytes() {
+            return used;
+        }
+
+        /**
+         * Copia las regiones vigentes a un archivo de datos nuevo, sin los
+         * huecos de las descartadas
+         */
+        private void compact() throws IOException {
+            Path target = dataFile(generation + 1);
+            FileChannel compacted = FileChannel.open(target, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long position = 0;
+            try {
+                for (Region region : live) {
+                    ByteBuffer source = region.getLocation().buffer.duplicate();
+                    long offset = position;
+                    while (source.hasRemaining()) {
+                        position += compacted.write(source, position);
+                    }
+                    region.location = new Location(target, offset,
+                            compacted.map(FileChannel.MapMode.READ_ONLY, offset, region.getLength()));
+                }
+            } catch (IOException ex) {
+                compacted.close();
+                throw ex;
+            }
+            channel.close();
+            Files.deleteIfExists(dataFile(generation - 1));
+            generation++;
+            channel = compacted;
+            dataFile = target;
+            end = position;
+            rewriteIndex();
+        }
+
+        /**
+         * Reemplaza el índice por uno con solo las regiones vigentes
+         */
+        private void rewriteIndex() throws IOException {
+            if (index != null) {
+                index.close();
+            }
+            Path temp = Paths.get(indexFile + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(new JSONObject().put("generation", generation).toString());
+                writer.newLine();
+                for (Region region : live) {
+                    writer.write(entryRecord(region).toString());
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            index = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        }
+
+        private static JSONObject entryRecord(Region region) {
+            return new JSONObject()
+                    .put("key", region.getKey())
+                    .put("offset", region.getLocation().getOffset())
+                    .put("length", region.getLength())
+                    .put("meta", region.getMeta());
+        }
+
+        private void writeRecord(JSONObject record) throws IOException {
+            index.write(record.toString());
+            index.newLine();
+            index.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (channel == null) {
+                return;
+            }
+            try {
+                index.close();
+            } finally {
+                channel.close();
+                channel = null;
+                index = null;
+            }
+        }
+
+    }
+
+}
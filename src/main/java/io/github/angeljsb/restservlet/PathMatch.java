@@ -0,0 +1,71 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Resultado de comparar un pathInfo con un {@link PathPattern}. Guarda los
+ * valores de los parametros en el mismo orden que
+ * {@link PathPattern#getParameterNames()}, sin construir un mapa intermedio
+ *
+ * @author Angel
+ */
+public final class PathMatch {
+
+    private final PathPattern pattern;
+    private final String[] values;
+
+    PathMatch(PathPattern pattern, String[] values) {
+        this.pattern = pattern;
+        this.values = values;
+    }
+
+    /**
+     * Obtiene el patrón que coincidió con el pathInfo
+     *
+     * @return El patrón compilado
+     */
+    public PathPattern getPathPattern() {
+        return pattern;
+    }
+
+    /**
+     * Obtiene el patrón que coincidió tal y como fue declarado
+     *
+     * @return El patrón original
+     */
+    public String getPattern() {
+        return pattern.getPattern();
+    }
+
+    /**
+     * Obtiene el valor de un parametro del pathInfo
+     *
+     * @param name El nombre del parametro
+     * @return El valor o {@code null} si el patrón no declara el parametro
+     */
+    public String getParameter(String name) {
+        for (int i = 0; i < values.length; i++) {
+            if (pattern.getParameterName(i).equals(name)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Recorre los parametros encontrados en el pathInfo
+     *
+     * @param action La acción a ejecutar con cada nombre y valor
+     */
+    public void forEach(BiConsumer<String, String> action) {
+        for (int i = 0; i < values.length; i++) {
+            action.accept(pattern.getParameterName(i), values[i]);
+        }
+    }
+
+}
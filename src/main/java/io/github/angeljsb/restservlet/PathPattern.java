@@ -0,0 +1,170 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Forma compilada de uno de los patrones declarados en
+ * {@link WithPathParameters#pathInfoPatterns()}. La expresión regular y los
+ * nombres de los parametros se calculan una sola vez al crear el objeto, de
+ * modo que comprobar un pathInfo solo necesita un {@link Matcher}.
+ *
+ * @author Angel
+ */
+public final class PathPattern {
+
+    private static final Pattern PARAMETER = Pattern.compile("\\{([a-zA-Z0-9]+)\\}");
+    private static final String REGEX_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    /**
+     * Compila un patrón de pathInfo
+     *
+     * @param pattern El patrón, por ejemplo {@code "/{id}/items/{item}"}
+     * @return El patrón compilado
+     */
+    public static PathPattern compile(String pattern) {
+        Matcher matcher = PARAMETER.matcher(pattern);
+        List<String> names = new ArrayList();
+        while (matcher.find()) {
+            names.add(matcher.group(1));
+        }
+
+        String regex = matcher.replaceAll("(?<$1>[\\\\w\\\\-~]+)");
+        regex = regex.endsWith("/") ? regex + "{0,1}" : regex + "/{0,1}";
+        return new PathPattern(pattern, Pattern.compile(regex),
+                names.toArray(new String[names.size()]), toSegments(pattern));
+    }
+
+    /**
+     * Divide el patrón en segmentos para usarlo en un {@link PathTrie}. Los
+     * parametros quedan como {@code null} y los literales como texto
+     *
+     * @return Los segmentos o {@code null} si algún segmento mezcla texto con
+     * parametros o usa caracteres especiales de expresiones regulares
+     */
+    private static String[] toSegments(String pattern) {
+        if (!pattern.startsWith("/")) {
+            return null;
+        }
+        String path = pattern.length() > 1 && pattern.endsWith("/")
+                ? pattern.substring(1, pattern.length() - 1)
+                : pattern.substring(1);
+        if (path.isEmpty()) {
+            return new String[0];
+        }
+
+        String[] segments = path.split("/", -1);
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (PARAMETER.matcher(segment).matches()) {
+                segments[i] = null;
+            } else if (!isLiteral(segment)) {
+                return null;
+            }
+        }
+        return segments;
+    }
+
+    private static boolean isLiteral(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            if (REGEX_CHARACTERS.indexOf(segment.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final String pattern;
+    private final Pattern regex;
+    private final String[] parameterNames;
+    private final String[] segments;
+
+    private PathPattern(String pattern, Pattern regex, String[] parameterNames, String[] segments) {
+        this.pattern = pattern;
+        this.regex = regex;
+        this.parameterNames = parameterNames;
+        this.segments = segments;
+    }
+
+    /**
+     * Obtiene el patrón tal y como fue declarado
+     *
+     * @return El patrón original
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Obtiene los nombres de los parametros del patrón en el orden en que
+     * aparecen
+     *
+     * @return Una copia del arreglo de nombres
+     */
+    public String[] getParameterNames() {
+        return parameterNames.clone();
+    }
+
+    /**
+     * Indica si el patrón declara al menos un parametro
+     *
+     * @return {@code true} si el patrón tiene parametros
+     */
+    public boolean hasParameters() {
+        return parameterNames.length > 0;
+    }
+
+    /**
+     * Indica si el patrón puede compararse segmento por segmento, sin usar
+     * su expresión regular
+     *
+     * @return {@code true} si cada segmento es un literal o un parametro
+     */
+    public boolean isSegmented() {
+        return segments != null;
+    }
+
+    String[] getSegments() {
+        return segments;
+    }
+
+    int getParameterCount() {
+        return parameterNames.length;
+    }
+
+    String getParameterName(int index) {
+        return parameterNames[index];
+    }
+
+    /**
+     * Comprueba si un pathInfo coincide con el patrón
+     *
+     * @param pathInfo El pathInfo de la request
+     * @return El resultado de la comparación o {@code null} si no coincide
+     */
+    public PathMatch match(String pathInfo) {
+        Matcher complete = regex.matcher(pathInfo);
+        if (!complete.matches()) {
+            return null;
+        }
+
+        String[] values = new String[parameterNames.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = complete.group(parameterNames[i]);
+        }
+        return new PathMatch(this, values);
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+}
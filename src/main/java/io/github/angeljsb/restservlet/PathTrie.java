@@ -0,0 +1,198 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+/**
+ * Árbol de segmentos para comparar un pathInfo con muchos patrones a la vez.
+ * Cada nivel del árbol corresponde a un segmento del pathInfo, así que el
+ * costo de una comparación depende de la profundidad de la ruta y no de la
+ * cantidad de patrones.<br><br>
+ *
+ * Los segmentos literales tienen prioridad sobre los parametros
+ * {@code {param}}: si la rama literal no llega a ningún patrón se prueba la
+ * rama del parametro. Solo admite patrones en los que cada segmento es un
+ * literal sin caracteres especiales de expresiones regulares o un parametro
+ * completo, ver {@link PathPattern#getSegments()}
+ *
+ * @author Angel
+ */
+final class PathTrie {
+
+    private final Node root = new Node();
+    private int maxParameters;
+    private int size;
+
+    /**
+     * Agrega un patrón al árbol. Si ya existe un patrón con la misma forma, se
+     * conserva el primero
+     *
+     * @param pattern El patrón a agregar. Debe poder expresarse por segmentos
+     */
+    void add(PathPattern pattern) {
+        String[] segments = pattern.getSegments();
+        Node node = root;
+        for (String segment : segments) {
+            if (segment == null) {
+                if (node.parameter == null) {
+                    node.parameter = new Node();
+                }
+                node = node.parameter;
+            } else {
+                node = node.literalChild(segment);
+            }
+        }
+        if (node.terminal == null) {
+            node.terminal = pattern;
+            size++;
+        }
+        maxParameters = Math.max(maxParameters, pattern.getParameterCount());
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Busca el patrón que coincide con el pathInfo
+     *
+     * @param path El pathInfo de la request
+     * @return El resultado o {@code null} si ningún patrón coincide
+     */
+    PathMatch match(String path) {
+        if (path.isEmpty() || path.charAt(0) != '/') {
+            return null;
+        }
+        if (path.length() == 1) {
+            return root.terminal == null ? null : new PathMatch(root.terminal, new String[0]);
+        }
+
+        int[] bounds = new int[maxParameters * 2];
+        PathPattern found = find(root, path, 1, bounds, 0);
+        if (found == null) {
+            return null;
+        }
+
+        String[] values = new String[found.getParameterCount()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = path.substring(bounds[i * 2], bounds[i * 2 + 1]);
+        }
+        return new PathMatch(found, values);
+    }
+
+    private static PathPattern find(Node node, String path, int start, int[] bounds, int count) {
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = path.length();
+        }
+
+        Node literal = node.findLiteral(path, start, end);
+        if (literal != null) {
+            PathPattern found = next(literal, path, end, bounds, count);
+            if (found != null) {
+                return found;
+            }
+        }
+
+        if (node.parameter != null && isParameterValue(path, start, end)) {
+            bounds[count * 2] = start;
+            bounds[count * 2 + 1] = end;
+            return next(node.parameter, path, end, bounds, count + 1);
+        }
+        return null;
+    }
+
+    private static PathPattern next(Node child, String path, int end, int[] bounds, int count) {
+        int length = path.length();
+        if (end >= length - 1) {
+            // Fin del pathInfo, con o sin una barra final
+            return child.terminal;
+        }
+        return find(child, path, end + 1, bounds, count);
+    }
+
+    private static boolean isParameterValue(String path, int start, int end) {
+        if (start == end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '_' || c == '-' || c == '~';
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Node {
+
+        private String[] keys = new String[0];
+        private Node[] children = new Node[0];
+        private int count;
+        private Node parameter;
+        private PathPattern terminal;
+
+        Node literalChild(String segment) {
+            Node existing = findLiteral(segment, 0, segment.length());
+            if (existing != null) {
+                return existing;
+            }
+
+            Node child = new Node();
+            if ((count + 1) * 2 > keys.length) {
+                String[] oldKeys = keys;
+                Node[] oldChildren = children;
+                keys = new String[Math.max(4, oldKeys.length * 2)];
+                children = new Node[keys.length];
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != null) {
+                        insert(oldKeys[i], oldChildren[i]);
+                    }
+                }
+            }
+            insert(segment, child);
+            count++;
+            return child;
+        }
+
+        private void insert(String key, Node child) {
+            int mask = keys.length - 1;
+            int i = key.hashCode() & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            children[i] = child;
+        }
+
+        /**
+         * Busca un hijo literal usando el mismo hash que
+         * {@link String#hashCode()} sobre la región del pathInfo, para no
+         * crear un substring por cada segmento
+         */
+        Node findLiteral(String path, int start, int end) {
+            if (keys.length == 0) {
+                return null;
+            }
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + path.charAt(i);
+            }
+            int mask = keys.length - 1;
+            int length = end - start;
+            for (int i = hash & mask; keys[i] != null; i = (i + 1) & mask) {
+                String key = keys[i];
+                if (key.length() == length && key.regionMatches(0, path, start, length)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,37 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marca un método de un {@link RestServlet} como el encargado de procesar las
+ * peticiones {@code PUT} cuyo pathInfo coincida con {@link #value()}.<br><br>
+ * 
+ * El método puede recibir un {@link RestRequestReader}, un
+ * {@link RestRequestReader} y un {@link RestResponseWriter}, o ningún
+ * parametro. Lo que devuelva se envía como json en la response, igual que en
+ * {@link RestServlet#processPut(io.github.angeljsb.restservlet.RestRequestReader, io.github.angeljsb.restservlet.RestResponseWriter) processPut}.
+ * Los métodos se buscan una sola vez al iniciar el servlet
+ *
+ * @author Angel
+ */
+@Target(value = {ElementType.METHOD})
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface Put {
+    
+    /**
+     * El patrón del pathInfo que procesa el método, con el mismo formato de
+     * {@link WithPathParameters#pathInfoPatterns()}. Ej: {@code "/{id}"}
+     * 
+     * @return El patrón del pathInfo
+     */
+    public String value() default "/";
+    
+}
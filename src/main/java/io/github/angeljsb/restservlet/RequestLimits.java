@@ -0,0 +1,246 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Límites de las peticiones de un servlet, configurados con
+ * {@link LimitRequests}. Todos los límites superados se informan con una
+ * {@link RestException} de status 413 sin stack trace
+ *
+ * @author Angel
+ */
+final class RequestLimits {
+
+    /**
+     * Sin límites, para los lectores que no crea un {@link RestServlet}
+     */
+    static final RequestLimits NONE = new RequestLimits(0, 0, 0, 0);
+
+    private static final LimitRequests DEFAULTS = Defaults.class.getAnnotation(LimitRequests.class);
+
+    @LimitRequests
+    private static final class Defaults {
+    }
+
+    /**
+     * Lee los límites de un servlet
+     *
+     * @param servlet El servlet
+     * @return Los límites de la anotación y los parametros de inicio, o los
+     * valores por defecto
+     */
+    static RequestLimits forServlet(RestServlet servlet) {
+        LimitRequests ann = servlet.getClass().getAnnotation(LimitRequests.class);
+        if (ann == null) {
+            ann = DEFAULTS;
+        }
+        long maxBodySize = ann.maxBodySize();
+        int maxJsonDepth = ann.maxJsonDepth();
+        int maxParameters = ann.maxParameters();
+        int maxParts = ann.maxParts();
+
+        String param = servlet.getInitParameter("maxBodySize");
+        if (param != null) {
+            maxBodySize = Long.parseLong(param.trim());
+        }
+        param = servlet.getInitParameter("maxJsonDepth");
+        if (param != null) {
+            maxJsonDepth = Integer.parseInt(param.trim());
+        }
+        param = servlet.getInitParameter("maxParameters");
+        if (param != null) {
+            maxParameters = Integer.parseInt(param.trim());
+        }
+        param = servlet.getInitParameter("maxParts");
+        if (param != null) {
+            maxParts = Integer.parseInt(param.trim());
+        }
+        return new RequestLimits(maxBodySize, maxJsonDepth, maxParameters, maxParts);
+    }
+
+    /**
+     * Crea el error de un límite superado
+     *
+     * @param message La descripción del límite
+     * @return Una excepción con status 413
+     */
+    static RestException tooLarge(String message) {
+        return new RestException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, message, false);
+    }
+
+    private final long maxBodySize;
+    private final int maxJsonDepth;
+    private final int maxParameters;
+    private final int maxParts;
+
+    private RequestLimits(long maxBodySize, int maxJsonDepth, int maxParameters, int maxParts) {
+        this.maxBodySize = Math.max(0, maxBodySize);
+        this.maxJsonDepth = Math.max(0, maxJsonDepth);
+        this.maxParameters = Math.max(0, maxParameters);
+        this.maxParts = Math.max(0, maxParts);
+    }
+
+    /**
+     * Obtiene el tamaño máximo del body
+     *
+     * @return Los bytes o 0 si no hay límite
+     */
+    long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * Obtiene la profundidad máxima de los bodies json y CBOR
+     *
+     * @return La profundidad o 0 si no hay límite
+     */
+    int getMaxJsonDepth() {
+        return maxJsonDepth;
+    }
+
+    /**
+     * Indica si el {@code Content-Length} de la request supera el tamaño
+     * máximo, lo que permite rechazarla sin leer el body. Los bodies
+     * multipart nunca se rechazan por su tamaño total, porque el límite
+     * solo se aplica a sus campos de texto y no a los archivos
+     *
+     * @param request La request
+     * @return {@code true} si la request debe rechazarse
+     */
+    boolean exceedsContentLength(HttpServletRequest request) {
+        return maxBodySize > 0 && request.getContentLengthLong() > maxBodySize
+                && !isMultipart(request);
+    }
+
+    private static boolean isMultipart(HttpServletRequest request) {
+        String content = request.getContentType();
+        return content != null && content.contains(MediaType.MULTIPART_FORM_DATA);
+    }
+
+    /**
+     * Comprueba el {@code Content-Length} de la request
+     *
+     * @param request La request
+     * @throws RestException Con status 413 si supera el tamaño máximo
+     */
+    void checkContentLength(HttpServletRequest request) {
+        if (exceedsContentLength(request)) {
+            throw tooLarge("The request body of " + request.getContentLengthLong()
+                    + " bytes exceeds the limit of " + maxBodySize + " bytes");
+        }
+    }
+
+    /**
+     * Comprueba la cantidad de parametros de una fuente
+     *
+     * @param count La cantidad de parametros
+     * @throws RestException Con status 413 si supera el máximo
+     */
+    void checkParameters(int count) {
+        if (maxParameters > 0 && count > maxParameters) {
+            throw tooLarge("The request has more than " + maxParameters + " parameters");
+        }
+    }
+
+    /**
+     * Comprueba la cantidad de partes de un body multipart
+     *
+     * @param count La cantidad de partes
+     * @throws RestException Con status 413 si supera el máximo
+     */
+    void checkParts(int count) {
+        if (maxParts > 0 && count > maxParts) {
+            throw tooLarge("The request has more than " + maxParts + " parts");
+        }
+    }
+
+    /**
+     * Comprueba el tamaño acumulado de los campos de texto de un body
+     * multipart
+     *
+     * @param size La suma de los bytes de los campos leídos hasta ahora
+     * @throws RestException Con status 413 si supera el tamaño máximo
+     */
+    void checkTextSize(long size) {
+        if (maxBodySize > 0 && size > maxBodySize) {
+            throw tooLarge("The multipart fields exceed the limit of " + maxBodySize + " bytes");
+        }
+    }
+
+    /**
+     * Limita la lectura del body al tamaño máximo
+     *
+     * @param in El body de la request
+     * @return Un stream que lanza una {@link RestException} con status 413
+     * en cuanto se lee un byte más del tamaño máximo, o el mismo stream si
+     * no hay límite
+     */
+    InputStream limit(InputStream in) {
+        return maxBodySize > 0 ? new BoundedInputStream(in, maxBodySize) : in;
+    }
+
+    /**
+     * Stream que cuenta los bytes leídos. Nunca pide al stream original más
+     * de un byte por encima del límite, así un body chunked se corta apenas
+     * lo supera
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long count;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, (int) Math.min(len, limit - count + 1));
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, limit - count + 1));
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(long read) {
+            count += read;
+            if (count > limit) {
+                throw tooLarge("The request body exceeds the limit of " + limit + " bytes");
+            }
+        }
+
+    }
+
+}
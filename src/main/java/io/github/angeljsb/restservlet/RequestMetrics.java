@@ -0,0 +1,324 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.ServletContext;
+
+/**
+ * Las métricas de las peticiones de un {@link RestServlet}, separadas por
+ * método http y por el patrón de {@link WithPathParameters} que coincidió
+ * con el pathInfo. Las peticiones que no coinciden con ningún patrón se
+ * cuentan en la ruta {@value #ANY_ROUTE}, para que la cantidad de rutas no
+ * dependa de los paths que envíen los clientes.<br><br>
+ *
+ * Por cada ruta se cuentan las peticiones por status, un histograma de
+ * latencias y la cantidad de bytes de los bodies de las requests y de las
+ * responses. Registrar una petición no usa locks ni crea objetos, salvo la
+ * primera vez que aparece una ruta. Ver {@link CollectMetrics} y
+ * {@link MetricsServlet}
+ *
+ * @author Angel
+ */
+public final class RequestMetrics {
+
+    /**
+     * La ruta de las peticiones cuyo pathInfo no coincide con ningún patrón
+     */
+    public static final String ANY_ROUTE = "*";
+
+    private static final String CONTEXT_ATTRIBUTE = RequestMetrics.class.getName();
+    private static final int MAX_STATUS = 600;
+
+    /**
+     * Obtiene las métricas de los servlets de una aplicación que usan
+     * {@link CollectMetrics}
+     *
+     * @param context El contexto de la aplicación
+     * @return Las métricas de cada servlet, en ningún orden en particular
+     */
+    public static Collection<RequestMetrics> getAll(ServletContext context) {
+        Map<String, RequestMetrics> registry = registry(context, false);
+        return registry == null ? Collections.<RequestMetrics>emptyList()
+                : Collections.unmodifiableCollection(registry.values());
+    }
+
+    /**
+     * Crea las métricas de un servlet si usa {@link CollectMetrics} o el
+     * init-param {@code collectMetrics}, y las agrega al contexto de la
+     * aplicación
+     *
+     * @param servlet El servlet
+     * @return Las métricas o {@code null} si el servlet no las recolecta
+     */
+    static RequestMetrics forServlet(RestServlet servlet) {
+        String param = servlet.getInitParameter("collectMetrics");
+        boolean collect = param == null
+                ? servlet.getClass().isAnnotationPresent(CollectMetrics.class)
+                : Boolean.parseBoolean(param.trim());
+        if (!collect) {
+            return null;
+        }
+        RequestMetrics metrics = new RequestMetrics(servlet.getServletName());
+        ServletContext context = servlet.getServletContext();
+        if (context != null) {
+            registry(context, true).put(metrics.servletName, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Quita las métricas de un servlet del contexto de la aplicación
+     *
+     * @param servlet El servlet que se está destruyendo
+     */
+    static void unregister(RestServlet servlet) {
+        ServletContext context = servlet.getServletContext();
+        Map<String, RequestMetrics> registry = context == null ? null : registry(context, false);
+        if (registry != null) {
+            registry.remove(servlet.getServletName());
+        }
+    }
+
+    private static Map<String, RequestMetrics> registry(ServletContext context, boolean create) {
+        Map<String, RequestMetrics> registry = (Map) context.getAttribute(CONTEXT_ATTRIBUTE);
+        if (registry == null && create) {
+            synchronized (RequestMetrics.class) {
+                registry = (Map) context.getAttribute(CONTEXT_ATTRIBUTE);
+                if (registry == null) {
+                    registry = new ConcurrentHashMap();
+                    context.setAttribute(CONTEXT_ATTRIBUTE, registry);
+                }
+            }
+        }
+        return registry;
+    }
+
+    private final String servletName;
+    private final ConcurrentMap<String, ConcurrentMap<String, RouteMetrics>> methods = new ConcurrentHashMap();
+
+    RequestMetrics(String servletName) {
+        this.servletName = servletName;
+    }
+
+    /**
+     * Obtiene el nombre del servlet de estas métricas
+     *
+     * @return El nombre del servlet
+     */
+    public String getServletName() {
+        return servletName;
+    }
+
+    /**
+     * Registra una petición terminada
+     *
+     * @param method El método http
+     * @param route El patrón que coincidió o {@code null}
+     * @param status El status de la respuesta
+     * @param latency Los nanosegundos que tomó la petición
+     * @param requestBytes El tamaño del body de la request o un número
+     * negativo si no se conoce
+     * @param responseBytes Los bytes del cuerpo enviado
+     */
+    void record(String method, String route, int status, long latency, long requestBytes, long responseBytes) {
+        ConcurrentMap<String, RouteMetrics> routes = methods.get(method);
+        if (routes == null) {
+            routes = methods.computeIfAbsent(method, key -> new ConcurrentHashMap());
+        }
+        String key = route == null ? ANY_ROUTE : route;
+        RouteMetrics metrics = routes.get(key);
+        if (metrics == null) {
+            metrics = routes.computeIfAbsent(key, RouteMetrics::new);
+        }
+        metrics.record(status, latency, requestBytes, responseBytes);
+    }
+
+    /**
+     * Copia las métricas de todas las rutas
+     *
+     * @return Una copia por cada método y ruta que ha recibido peticiones
+     */
+    public List<RouteSnapshot> snapshot() {
+        List<RouteSnapshot> list = new ArrayList();
+        methods.forEach((method, routes) -> routes.forEach(
+                (route, metrics) -> list.add(metrics.snapshot(method))));
+        return list;
+    }
+
+    /**
+     * Los contadores de un método y una ruta
+     */
+    private static final class RouteMetrics {
+
+        private final String route;
+        private final AtomicLongArray statuses = new AtomicLongArray(MAX_STATUS);
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+
+        RouteMetrics(String route) {
+            this.route = route;
+        }
+
+        void record(int status, long nanos, long requestLength, long responseLength) {
+            statuses.incrementAndGet(status > 0 && status < MAX_STATUS ? status : 0);
+            latency.record(nanos);
+            if (requestLength > 0) {
+                requestBytes.add(requestLength);
+            }
+            if (responseLength > 0) {
+                responseBytes.add(responseLength);
+            }
+        }
+
+        RouteSnapshot snapshot(String method) {
+            Map<String, Long> counts = new LinkedHashMap();
+            for (int i = 0; i < MAX_STATUS; i++) {
+                long count = statuses.get(i);
+                if (count > 0) {
+                    counts.put(i == 0 ? "other" : String.valueOf(i), count);
+                }
+            }
+            return new RouteSnapshot(method, route, counts, latency.snapshot(),
+                    requestBytes.sum(), responseBytes.sum());
+        }
+
+    }
+
+    /**
+     * Las métricas de un método y una ruta en un momento dado. Las
+     * latencias de los getters están en milisegundos
+     */
+    public static final class RouteSnapshot {
+
+        private final String method;
+        private final String route;
+        private final Map<String, Long> status;
+        private final LatencyHistogram.Snapshot latency;
+        private final long requestBytes;
+        private final long responseBytes;
+
+        RouteSnapshot(String method, String route, Map<String, Long> status,
+                LatencyHistogram.Snapshot latency, long requestBytes, long responseBytes) {
+            this.method = method;
+            this.route = route;
+            this.status = Collections.unmodifiableMap(status);
+            this.latency = latency;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * Obtiene la ruta
+         *
+         * @return El patrón tal y como fue declarado o
+         * {@value RequestMetrics#ANY_ROUTE}
+         */
+        public String getRoute() {
+            return route;
+        }
+
+        /**
+         * Obtiene la cantidad de peticiones
+         *
+         * @return Las peticiones de todos los status
+         */
+        public long getRequests() {
+            return latency.getCount();
+        }
+
+        /**
+         * Obtiene la cantidad de peticiones por status
+         *
+         * @return Un mapa del status, como texto, a su cantidad de
+         * peticiones. Los status fuera del rango de http se cuentan en
+         * {@code other}
+         */
+        public Map<String, Long> getStatus() {
+            return status;
+        }
+
+        /**
+         * Calcula un percentil de las latencias
+         *
+         * @param quantile La fracción de las peticiones, entre 0 y 1
+         * @return La latencia en nanosegundos, con un error menor al 6.25%
+         */
+        public long getLatencyPercentile(double quantile) {
+            return latency.percentile(quantile);
+        }
+
+        public double getP50() {
+            return millis(latency.percentile(0.5));
+        }
+
+        public double getP99() {
+            return millis(latency.percentile(0.99));
+        }
+
+        public double getP999() {
+            return millis(latency.percentile(0.999));
+        }
+
+        public double getMaxLatency() {
+            return millis(latency.getMax());
+        }
+
+        public double getMeanLatency() {
+            long count = latency.getCount();
+            return count == 0 ? 0 : millis(latency.getTotal()) / count;
+        }
+
+        /**
+         * Obtiene la suma de las latencias
+         *
+         * @return La suma en nanosegundos
+         */
+        public long getTotalLatency() {
+            return latency.getTotal();
+        }
+
+        /**
+         * Obtiene los bytes recibidos en los bodies de las requests, según
+         * su {@code Content-Length}
+         *
+         * @return La suma de los bytes
+         */
+        public long getRequestBytes() {
+            return requestBytes;
+        }
+
+        /**
+         * Obtiene los bytes enviados en los cuerpos de las responses, antes
+         * de comprimirse
+         *
+         * @return La suma de los bytes
+         */
+        public long getResponseBytes() {
+            return responseBytes;
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+
+    }
+
+}
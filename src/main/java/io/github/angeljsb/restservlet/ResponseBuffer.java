@@ -0,0 +1,38 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Configura el buffer donde {@link RestResponseWriter#send(java.lang.Object)}
+ * serializa las respuestas de un {@link RestServlet}. Los cuerpos que caben
+ * en {@link #limit()} se envían con su {@code Content-Length} exacto y una
+ * sola escritura; los más grandes pasan a enviarse por partes a medida que
+ * se serializan, sin {@code Content-Length}.<br><br>
+ * 
+ * Las respuestas que necesitan su ETag o que se guardan en la cache se
+ * serializan completas aunque superen el límite. El parametro de inicio
+ * {@code responseBufferLimit} tiene prioridad sobre la anotación
+ *
+ * @author Angel
+ * @see BufferPool
+ */
+@Target(value = {ElementType.TYPE})
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface ResponseBuffer {
+    
+    /**
+     * El tamaño máximo en bytes de un cuerpo que se envía completo
+     * 
+     * @return El límite del buffer
+     */
+    public int limit() default 1024 * 1024;
+    
+}
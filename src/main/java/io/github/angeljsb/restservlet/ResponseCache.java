@@ -0,0 +1,353 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Cache de respuestas de un {@link RestServlet} configurada con
+ * {@link CacheResponse}. Las entradas se reparten en segmentos según el hash
+ * de su clave y cada segmento es un mapa LRU con su propio lock, así que las
+ * peticiones con claves distintas casi nunca compiten entre sí.<br><br>
+ * 
+ * Las claves empiezan por el pathInfo, de modo que
+ * {@link #invalidate(java.lang.String)} con un prefijo como
+ * {@code "/users/42"} descarta todas las respuestas de ese recurso.<br><br>
+ * 
+ * Si se configura {@link CacheResponse#offHeapThreshold()}, los cuerpos de
+ * ese tamaño o más se guardan en un {@link OffHeapStore}, fuera del heap, y
+ * en el heap solo quedan sus headers
+ *
+ * @author Angel
+ */
+public final class ResponseCache {
+    
+    private static final int MAX_SEGMENTS = 16;
+    
+    /**
+     * Lee la configuración de cache de un servlet
+     * 
+     * @param servlet El servlet
+     * @return La cache o {@code null} si el servlet no usa cache
+     * @throws IOException Si no puede abrirse el archivo de la cache
+     */
+    static ResponseCache forServlet(RestServlet servlet) throws IOException {
+        CacheResponse ann = servlet.getClass().getAnnotation(CacheResponse.class);
+        String ttlParam = servlet.getInitParameter("cacheTtl");
+        String maxParam = servlet.getInitParameter("cacheMaxEntries");
+        if (ann == null && ttlParam == null && maxParam == null) {
+            return null;
+        }
+        long ttl = ttlParam != null ? Long.parseLong(ttlParam.trim()) : ann != null ? ann.ttl() : 60000L;
+        int maxEntries = maxParam != null ? Integer.parseInt(maxParam.trim()) : ann != null ? ann.maxEntries() : 1000;
+        String[] query = ann == null ? new String[0] : ann.queryParameters();
+        if (ttl <= 0 || maxEntries <= 0) {
+            return null;
+        }
+        String thresholdParam = servlet.getInitParameter("cacheOffHeapThreshold");
+        String bytesParam = servlet.getInitParameter("cacheOffHeapMaxBytes");
+        String fileParam = servlet.getInitParameter("cacheFile");
+        int threshold = thresholdParam != null ? Integer.parseInt(thresholdParam.trim())
+                : ann != null ? ann.offHeapThreshold() : -1;
+        long maxBytes = bytesParam != null ? Long.parseLong(bytesParam.trim())
+                : ann != null ? ann.offHeapMaxBytes() : 256L * 1024 * 1024;
+        String file = fileParam != null ? fileParam.trim() : ann != null ? ann.file() : null;
+        OffHeapStore store = threshold >= 0 && maxBytes > 0 ? OffHeapStore.create(maxBytes, file) : null;
+        return new ResponseCache(ttl, maxEntries, query, store, threshold);
+    }
+    
+    private final long ttl;
+    private final String[] queryParameters;
+    private final Segment[] segments;
+    private final OffHeapStore store;
+    private final int offHeapThreshold;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    
+    private ResponseCache(long ttl, int maxEntries, String[] queryParameters,
+            OffHeapStore store, int offHeapThreshold) {
+        this.ttl = ttl;
+        this.queryParameters = queryParameters.clone();
+        this.store = store;
+        this.offHeapThreshold = offHeapThreshold;
+        int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxEntries));
+        this.segments = new Segment[count];
+        int capacity = (maxEntries + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(capacity, store);
+        }
+        if (store != null) {
+            long now = System.currentTimeMillis();
+            for (OffHeapStore.Region region : store.load()) {
+                CachedResponse cached = CachedResponse.restore(region);
+                if (cached.getExpiresAt() <= now) {
+                    store.release(region);
+                } else {
+                    segmentFor(region.getKey()).put(region.getKey(), cached);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Calcula la clave de una petición
+     * 
+     * @param reader El lector de la request
+     * @return El pathInfo seguido de los parametros de query configurados
+     * y, si la respuesta no es json, de su {@link WireFormat}
+     */
+    String keyFor(RestRequestReader reader) {
+        HttpServletRequest request = reader.getRequest();
+        String pathInfo = reader.getPathInfo();
+        StringBuilder key = new StringBuilder(pathInfo == null ? "/" : pathInfo);
+        char separator = '?';
+        for (String name : queryParameters) {
+            String[] values = request.getParameterValues(name);
+            if (values == null) {
+                continue;
+            }
+            for (String value : values) {
+                key.append(separator).append(name).append('=').append(value);
+                separator = '&';
+            }
+        }
+        WireFormat format = WireFormats.forAccept(request.getHeader("Accept"));
+        if (format != WireFormats.JSON) {
+            key.append('#').append(format.getMediaType());
+        }
+        return key.toString();
+    }
+    
+    /**
+     * Busca una respuesta vigente
+     * 
+     * @param key La clave de la petición
+     * @return La respuesta o {@code null} si no está o ya expiró
+     */
+    CachedResponse get(String key) {
+        CachedResponse cached = segmentFor(key).get(key, System.currentTimeMillis());
+        if (cached == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return cached;
+    }
+    
+    /**
+     * Guarda una respuesta que está por enviarse. El cuerpo se copia al heap
+     * o, si alcanza el umbral configurado, al almacén fuera del heap
+     * 
+     * @param key La clave de la petición
+     * @param response La response con los headers a guardar
+     * @param body El buffer con el cuerpo serializado
+     * @param length La cantidad de bytes del cuerpo
+     * @param hash El hash del cuerpo para el ETag o {@code null}
+     */
+    void put(String key, HttpServletResponse response, byte[] body, int length, String hash) {
+        CachedResponse cached;
+        if (store != null && length >= offHeapThreshold) {
+            cached = CachedResponse.capture(response, null, hash);
+            cached.setExpiresAt(System.currentTimeMillis() + ttl);
+            OffHeapStore.Region region = store.allocate(key, body, length, cached.describe());
+            if (region == null) {
+                // Se descartan las expiradas para hacer espacio y se intenta de nuevo
+                purgeExpired();
+                region = store.allocate(key, body, length, cached.describe());
+                if (region == null) {
+                    return;
+                }
+            }
+            cached = cached.withRegion(region);
+        } else {
+            cached = CachedResponse.capture(response, Arrays.copyOf(body, length), hash);
+            cached.setExpiresAt(System.currentTimeMillis() + ttl);
+        }
+        segmentFor(key).put(key, cached);
+    }
+    
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        for (Segment segment : segments) {
+            segment.removeExpired(now);
+        }
+    }
+    
+    /**
+     * Descarta las respuestas cuya clave empieza por un prefijo
+     * 
+     * @param prefix El inicio de las claves, normalmente un pathInfo
+     * @return La cantidad de respuestas descartadas
+     */
+    public int invalidate(String prefix) {
+        int removed = 0;
+        for (Segment segment : segments) {
+            removed += segment.removeIf(prefix);
+        }
+        return removed;
+    }
+    
+    /**
+     * Descarta todas las respuestas guardadas
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+    
+    /**
+     * Obtiene la cantidad de respuestas guardadas, incluidas las expiradas
+     * que aún no se han descartado
+     * 
+     * @return La cantidad de entradas
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+    
+    /**
+     * Obtiene la cantidad de bytes que ocupan los cuerpos guardados fuera del
+     * heap
+     * 
+     * @return Los bytes usados o {@code 0} si la cache no guarda cuerpos
+     * fuera del heap
+     */
+    public long getOffHeapBytes() {
+        return store == null ? 0 : store.getUsedBytes();
+    }
+    
+    /**
+     * Cierra el archivo de la cache, si tiene uno. El índice ya está
+     * escrito, así que la siguiente ejecución vuelve a cargar las respuestas
+     * vigentes
+     */
+    void close() {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException ex) {
+                System.err.println("Error closing the response cache: " + ex.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Obtiene la cantidad de peticiones respondidas desde la cache
+     * 
+     * @return La cantidad de aciertos
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+    
+    /**
+     * Obtiene la cantidad de peticiones que no estaban en la cache
+     * 
+     * @return La cantidad de fallos
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+    
+    private Segment segmentFor(String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (segments.length - 1)];
+    }
+    
+    /**
+     * Un mapa LRU protegido por su propio lock. Las entradas que salen del
+     * mapa liberan su región fuera del heap
+     */
+    private static final class Segment {
+        
+        private final LinkedHashMap<String, CachedResponse> map;
+        private final OffHeapStore store;
+        
+        Segment(final int capacity, OffHeapStore store) {
+            this.store = store;
+            this.map = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                    if (size() > capacity) {
+                        release(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+        
+        private void release(CachedResponse cached) {
+            if (cached != null && cached.getRegion() != null) {
+                store.release(cached.getRegion());
+            }
+        }
+        
+        synchronized CachedResponse get(String key, long now) {
+            CachedResponse cached = map.get(key);
+            if (cached != null && cached.getExpiresAt() <= now) {
+                release(map.remove(key));
+                return null;
+            }
+            return cached;
+        }
+        
+        synchronized void put(String key, CachedResponse response) {
+            release(map.put(key, response));
+        }
+        
+        synchronized int removeIf(String prefix) {
+            int removed = 0;
+            Iterator<Map.Entry<String, CachedResponse>> entries = map.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, CachedResponse> entry = entries.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    release(entry.getValue());
+                    entries.remove();
+                    removed++;
+                }
+            }
+            return removed;
+        }
+        
+        synchronized void removeExpired(long now) {
+            Iterator<CachedResponse> values = map.values().iterator();
+            while (values.hasNext()) {
+                CachedResponse cached = values.next();
+                if (cached.getExpiresAt() <= now) {
+                    release(cached);
+                    values.remove();
+                }
+            }
+        }
+        
+        synchronized void clear() {
+            for (CachedResponse cached : map.values()) {
+                release(cached);
+            }
+            map.clear();
+        }
+        
+        synchronized int size() {
+            return map.size();
+        }
+        
+    }
+    
+}
@@ -0,0 +1,330 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Compresión de las respuestas de un servlet, configurada con
+ * {@link CompressResponses}. Cada respuesta se guarda en memoria hasta
+ * superar el umbral; si no lo supera se envía sin comprimir y con su
+ * Content-Length exacto.<br><br>
+ * 
+ * Los {@link Deflater} son de cada hilo y se reutilizan entre respuestas para
+ * no reservar y liberar su memoria nativa en cada una. El formato gzip se
+ * escribe a mano alrededor de un Deflater sin cabecera zlib
+ *
+ * @author Angel
+ */
+final class ResponseCompression {
+    
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final byte[] GZIP_HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+    
+    private static final ThreadLocal<Compressor> GZIP = new ThreadLocal<Compressor>() {
+        @Override
+        protected Compressor initialValue() {
+            return new Compressor(true);
+        }
+    };
+    
+    private static final ThreadLocal<Compressor> DEFLATE = new ThreadLocal<Compressor>() {
+        @Override
+        protected Compressor initialValue() {
+            return new Compressor(false);
+        }
+    };
+    
+    /**
+     * Lee la configuración de compresión de un servlet
+     * 
+     * @param servlet El servlet
+     * @return La configuración o {@code null} si la compresión no está activa
+     */
+    static ResponseCompression forServlet(RestServlet servlet) {
+        CompressResponses ann = servlet.getClass().getAnnotation(CompressResponses.class);
+        int threshold = ann == null ? -1 : ann.threshold();
+        int level = ann == null ? Deflater.DEFAULT_COMPRESSION : ann.level();
+        
+        String param = servlet.getInitParameter("compressionThreshold");
+        if (param != null) {
+            threshold = Integer.parseInt(param.trim());
+        }
+        param = servlet.getInitParameter("compressionLevel");
+        if (param != null) {
+            level = Integer.parseInt(param.trim());
+        }
+        return threshold < 0 ? null : new ResponseCompression(threshold, level);
+    }
+    
+    /**
+     * Elige la codificación que prefiere el cliente entre gzip y deflate
+     * 
+     * @param acceptEncoding El header Accept-Encoding de la request
+     * @return {@code "gzip"}, {@code "deflate"} o {@code null} si el cliente
+     * no acepta ninguna
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        float gzip = -1, deflate = -1, any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            int semicolon = part.indexOf(';');
+            String coding = (semicolon < 0 ? part : part.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+            float q = semicolon < 0 ? 1 : quality(part.substring(semicolon + 1));
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = q;
+            } else if (coding.equals("deflate")) {
+                deflate = q;
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return "gzip";
+        }
+        return deflate > 0 ? "deflate" : null;
+    }
+    
+    private static float quality(String params) {
+        for (String param : params.split(";")) {
+            param = param.trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2));
+                } catch (NumberFormatException ex) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+    
+    private final int threshold;
+    private final int level;
+    
+    private ResponseCompression(int threshold, int level) {
+        this.threshold = threshold;
+        this.level = level;
+    }
+    
+    /**
+     * Abre el stream donde escribir el cuerpo de una respuesta
+     * 
+     * @param request La request, de la que se toma el Accept-Encoding
+     * @param response La response
+     * @return Un stream que comprime si el cliente lo acepta y el cuerpo
+     * supera el umbral, o el stream de la response
+     * @throws IOException Si ocurre un error de I/O
+     */
+    OutputStream open(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (response.containsHeader("Content-Encoding")) {
+            return response.getOutputStream();
+        }
+        String vary = response.getHeader("Vary");
+        if (vary == null) {
+            response.setHeader("Vary", "Accept-Encoding");
+        } else if (!vary.toLowerCase(Locale.ROOT).contains("accept-encoding")) {
+            response.addHeader("Vary", "Accept-Encoding");
+        }
+        String encoding = negotiate(request.getHeader("Accept-Encoding"));
+        if (encoding == null) {
+            return response.getOutputStream();
+        }
+        return new CompressingStream(response, encoding);
+    }
+    
+    /**
+     * Indica con qué codificación se enviará un cuerpo de tamaño conocido que
+     * se escriba de una sola vez en el stream de {@link #open}
+     * 
+     * @param request La request
+     * @param response La response
+     * @param length El tamaño del cuerpo sin comprimir
+     * @return La codificación o {@code null} si se enviará sin comprimir
+     */
+    String encodingFor(HttpServletRequest request, HttpServletResponse response, int length) {
+        if (length <= threshold || response.containsHeader("Content-Encoding")) {
+            return null;
+        }
+        return negotiate(request.getHeader("Accept-Encoding"));
+    }
+    
+    /**
+     * Un Deflater con su buffer de salida
+     */
+    private static final class Compressor {
+        
+        private final Deflater deflater;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        
+        Compressor(boolean nowrap) {
+            this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+        }
+        
+    }
+    
+    private final class CompressingStream extends OutputStream {
+        
+        private final HttpServletResponse response;
+        private final String encoding;
+        private final boolean gzip;
+        private byte[] pending;
+        private int pendingCount;
+        private OutputStream target;
+        private Compressor compressor;
+        private CRC32 crc;
+        private boolean closed;
+
+        CompressingStream(HttpServletResponse response, String encoding) {
+            this.response = response;
+            this.encoding = encoding;
+            this.gzip = encoding.equals("gzip");
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (target == null) {
+                if (pendingCount + len <= threshold) {
+                    if (pending == null) {
+                        pending = new byte[threshold];
+                    }
+                    System.arraycopy(b, off, pending, pendingCount, len);
+                    pendingCount += len;
+                    return;
+                }
+                start();
+            }
+            deflate(b, off, len);
+        }
+
+        /**
+         * Envía lo escrito hasta ahora. Una respuesta que se envía por partes
+         * se comprime desde la primera parte aunque no haya superado el
+         * umbral
+         */
+        @Override
+        public void flush() throws IOException {
+            if (target == null) {
+                start();
+            }
+            Deflater deflater = compressor.deflater;
+            int count;
+            do {
+                count = deflater.deflate(compressor.buffer, 0, BUFFER_SIZE, Deflater.SYNC_FLUSH);
+                target.write(compressor.buffer, 0, count);
+            } while (count == BUFFER_SIZE);
+            target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (target == null) {
+                response.setContentLength(pendingCount);
+                OutputStream out = response.getOutputStream();
+                if (pendingCount > 0) {
+                    out.write(pending, 0, pendingCount);
+                }
+                out.close();
+                return;
+            }
+            try {
+                Deflater deflater = compressor.deflater;
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(compressor.buffer);
+                    target.write(compressor.buffer, 0, count);
+                }
+                if (gzip) {
+                    writeTrailer(deflater.getBytesRead());
+                }
+            } finally {
+                release();
+            }
+            target.close();
+        }
+        
+        private void start() throws IOException {
+            response.setHeader("Content-Encoding", encoding);
+            target = response.getOutputStream();
+            ThreadLocal<Compressor> local = gzip ? GZIP : DEFLATE;
+            compressor = local.get();
+            // Si el Deflater del hilo ya está en uso se trabaja con uno propio
+            local.set(null);
+            if (compressor == null) {
+                compressor = new Compressor(gzip);
+            }
+            compressor.deflater.setLevel(level);
+            if (gzip) {
+                crc = new CRC32();
+                target.write(GZIP_HEADER);
+            }
+            if (pendingCount > 0) {
+                deflate(pending, 0, pendingCount);
+            }
+            pending = null;
+        }
+        
+        private void deflate(byte[] b, int off, int len) throws IOException {
+            if (gzip) {
+                crc.update(b, off, len);
+            }
+            Deflater deflater = compressor.deflater;
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                int count = deflater.deflate(compressor.buffer);
+                target.write(compressor.buffer, 0, count);
+            }
+        }
+        
+        private void writeTrailer(long size) throws IOException {
+            long value = crc.getValue();
+            byte[] trailer = new byte[8];
+            for (int i = 0; i < 4; i++) {
+                trailer[i] = (byte) (value >> (8 * i));
+                trailer[i + 4] = (byte) (size >> (8 * i));
+            }
+            target.write(trailer);
+        }
+        
+        private void release() {
+            compressor.deflater.reset();
+            ThreadLocal<Compressor> local = gzip ? GZIP : DEFLATE;
+            if (local.get() == null) {
+                local.set(compressor);
+            } else {
+                // El hilo ya tiene otro; este no se vuelve a usar
+                compressor.deflater.end();
+            }
+        }
+        
+    }
+    
+}
@@ -7,7 +7,12 @@ package io.github.angeljsb.restservlet;
 
 /**
  * Error que maneja un codigo de error para repostar errores de http
- * y enviarlos en las responses
+ * y enviarlos en las responses.<br><br>
+ *
+ * Los errores esperados del cliente, como un parametro que falta, pueden
+ * crearse sin stack trace con
+ * {@link #RestException(int, java.lang.String, boolean)}, lo que hace que
+ * lanzarlos cueste casi lo mismo que crear cualquier otro objeto
  *
  * @author Angel
  */
@@ -19,6 +24,19 @@ public class RestException extends RuntimeException {
         super(message);
         this.statusCode = statusCode;
     }
+    
+    /**
+     * Crea un error indicando si debe guardar el stack trace
+     * 
+     * @param statusCode El status http del error
+     * @param message El mensaje del error
+     * @param stackTrace {@code false} para no recorrer la pila al crear el
+     * error, en cuyo caso {@link #getStackTrace()} devuelve un arreglo vacío
+     */
+    public RestException(int statusCode, String message, boolean stackTrace) {
+        super(message, null, false, stackTrace);
+        this.statusCode = statusCode;
+    }
 
     public int getStatusCode() {
         return statusCode;
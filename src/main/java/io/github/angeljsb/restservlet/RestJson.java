@@ -0,0 +1,30 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marca un java bean para que el procesador de anotaciones
+ * {@code RestServlet-processor} genere en tiempo de compilación un
+ * {@link JsonCodec} para él. El codec generado se llama como la clase con el
+ * sufijo {@code _JsonCodec} y lo usan automáticamente
+ * {@link RestResponseWriter#send(java.lang.Object)}, {@link JSONHelper} y
+ * {@link RestRequestReader#getBody(java.lang.Class)}, sin reflexión.<br><br>
+ * 
+ * Si el procesador no se ejecutó al compilar la clase, se sigue usando la
+ * conversión por reflexión
+ *
+ * @author Angel
+ */
+@Target(value = {ElementType.TYPE})
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface RestJson {
+    
+}
@@ -15,7 +15,6 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.function.Function;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -31,8 +30,9 @@ import org.json.JSONObject;
 
 /**
  * Clase que permite leer los parametros en la request a un servlet. Permite
- * leer request body de tipo JSON y obtener los parametros en los distintos
- * tipos nativos, además de obtener cookies y headers de la request
+ * leer request body de tipo JSON, o en cualquier otro {@link WireFormat}, y
+ * obtener los parametros en los distintos tipos nativos, además de obtener
+ * cookies y headers de la request
  *
  * @since v1.0.0
  * @author Angel
@@ -52,9 +52,10 @@ public class RestRequestReader {
         String set = charset == null ? "UTF-8" : charset;
         try (Reader br = new InputStreamReader(is, set)) {
             StringBuilder sb = new StringBuilder();
-            int cp;
-            while ((cp = br.read()) != -1) {
-                sb.append((char) cp);
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = br.read(buffer)) != -1) {
+                sb.append(buffer, 0, read);
             }
             return sb.toString();
         }
@@ -71,62 +72,136 @@ public class RestRequestReader {
      * @since v1.0.0
      */
     public static JSONObject getParamsJson(InputStream is, String charset) throws IOException, JSONException {
-        String json = readInputStream(is, charset);
-        try {
-            return new JSONObject(json);
+        String set = charset == null ? "UTF-8" : charset;
+        try (Reader br = new InputStreamReader(is, set)) {
+            Object json = new JsonReader(br, -1).readValue();
+            return json instanceof JSONObject ? (JSONObject) json : new JSONObject();
         } catch (JSONException ex) {
             return new JSONObject();
         }
     }
 
     private HttpServletRequest httpServletRequest;
+    private final String pathInfo;
+    private Map<String, String> pathParameters;
+    private Map<String, String> queryParameters;
+    private Map<String, Object> bodyParameters;
+    private RestException queryError;
+    private RestException bodyError;
     private Map<String, String> parameterMap;
-    private String _METHOD;
+    private String queryMethod;
+    private String bodyMethod;
+    private PathMatch pathMatch;
+    private RequestLimits limits = RequestLimits.NONE;
+    private MultipartStreaming multipartStreaming = MultipartStreaming.DEFAULT;
+    private ErrorLog errorLog;
+    private long startTime;
+    private MultipartReader multipart;
 
     /**
-     * Crea un Reader que puede obtener datos desde la request especificada
+     * Crea un Reader que puede obtener datos desde la request especificada.
+     * Los parametros no se leen al crear el objeto: los del query string y
+     * los del body se leen la primera vez que algún método los necesite, de
+     * modo que leer solo headers o parametros del pathInfo no lee el body
      *
      * @param request La http request a leer
      */
     public RestRequestReader(HttpServletRequest request) {
         this.httpServletRequest = request;
+        this.pathInfo = request == null ? null : request.getPathInfo();
+        this.pathParameters = new HashMap();
+    }
 
-        this.parameterMap = new HashMap();
+    private boolean isPost() {
+        return "POST".equalsIgnoreCase(this.httpServletRequest.getMethod());
+    }
 
-        Map<String, String[]> reqParams = request.getParameterMap();
+    /**
+     * Obtiene los parametros del query string, leyéndolos la primera vez.
+     * Si superan los {@link LimitRequests límites} la {@link RestException}
+     * se guarda y se lanza de nuevo en cada llamada, sin volver a leerlos
+     */
+    private Map<String, String> getQueryParameters() {
+        if (this.queryParameters != null) {
+            return this.queryParameters;
+        }
+        if (this.queryError != null) {
+            throw this.queryError;
+        }
+        try {
+            this.queryParameters = this.readQueryParameters();
+        } catch (RestException ex) {
+            this.queryError = ex;
+            throw ex;
+        }
+        return this.queryParameters;
+    }
+
+    private Map<String, String> readQueryParameters() {
+        Map<String, String> map = new HashMap();
+        Map<String, String[]> reqParams = this.httpServletRequest.getParameterMap();
+        this.limits.checkParameters(reqParams.size());
         if (!reqParams.isEmpty()) {
             reqParams.forEach((key, value) -> {
                 if (value.length > 1) {
                     JSONArray arr = new JSONArray(value);
-                    parameterMap.put(key, arr.toString());
+                    map.put(key, arr.toString());
                 } else if (value.length == 1) {
-                    parameterMap.put(key, value[0]);
+                    map.put(key, value[0]);
                 }
             });
         }
+        if (this.isPost()) {
+            this.queryMethod = map.remove("_METHOD");
+        }
+        return map;
+    }
 
+    /**
+     * Obtiene los parametros del body, leyéndolo la primera vez. Si el body
+     * supera los {@link LimitRequests límites} la {@link RestException} se
+     * guarda y se lanza de nuevo en cada llamada, porque el stream ya quedó
+     * leído a medias y no puede leerse otra vez
+     */
+    private Map<String, Object> getBodyParameters() {
+        if (this.bodyParameters != null) {
+            return this.bodyParameters;
+        }
+        if (this.bodyError != null) {
+            throw this.bodyError;
+        }
+        try {
+            this.bodyParameters = this.readBodyParameters();
+        } catch (RestException ex) {
+            this.bodyError = ex;
+            throw ex;
+        }
+        return this.bodyParameters;
+    }
+
+    private Map<String, Object> readBodyParameters() {
+        Map<String, Object> map = new HashMap();
+        HttpServletRequest request = this.httpServletRequest;
         String content = request.getContentType();
 
-        if (content != null && content.contains(MediaType.APPLICATION_JSON)) {
-            try {
-                JSONObject json = getParamsJson(request.getInputStream(), request.getCharacterEncoding());
-                Set<String> keySet = json.keySet();
-                for (String key : keySet) {
-                    this.parameterMap.put(key, json.get(key).toString());
-                }
-            } catch (IOException ex) {
-                ex.printStackTrace(System.err);
-            }
+        WireFormat format = WireFormats.forContentType(content);
+        if (format != null) {
+            readBody(format, map);
         }
 
-        if (content != null && content.contains(MediaType.MULTIPART_FORM_DATA)) {
+        if (content != null && content.contains(MediaType.MULTIPART_FORM_DATA)
+                && !this.multipartStreaming.isEnabled()) {
             try {
-                Collection<Part> parts = this.httpServletRequest.getParts();
+                Collection<Part> parts = request.getParts();
+                this.limits.checkParts(parts.size());
                 Map<String, List<String>> multipartMap = new HashMap();
+                long textSize = 0;
                 for (Part part : parts) {
                     if (part.getHeader("Content-Type") != null){
                         continue;
                     }
+                    textSize += part.getSize();
+                    this.limits.checkTextSize(textSize);
                     String name = part.getName();
                     String value = readInputStream(part.getInputStream(), request.getCharacterEncoding());
                     List<String> vals;
@@ -138,39 +213,181 @@ public class RestRequestReader {
                     }
                     vals.add(value);
                 }
+                this.limits.checkParameters(multipartMap.size());
                 multipartMap.forEach((key, value) -> {
                     if (value.size() == 1) {
-                        this.parameterMap.put(key, value.get(0));
+                        map.put(key, value.get(0));
                     } else {
-                        this.parameterMap.put(key, new JSONArray(value).toString());
+                        map.put(key, new JSONArray(value));
                     }
                 });
             } catch (IOException | ServletException ex) {
-                ex.printStackTrace(System.err);
+                this.logError(ex);
             }
         }
 
-        String method = this.parameterMap.get("_METHOD");
-        if (request.getMethod().equalsIgnoreCase("POST") && method != null) {
-            this._METHOD = method;
-            this.parameterMap.remove("_METHOD");
-        } else {
-            this._METHOD = null;
+        if (this.isPost()) {
+            Object method = map.remove("_METHOD");
+            this.bodyMethod = method == null ? null : method.toString();
+        }
+        return map;
+    }
+
+    /**
+     * Lee el body en una sola pasada, directamente desde el input stream de
+     * la request y sin copiarlo antes a un String. El body puede estar en json
+     * o en cualquier otro {@link WireFormat}; las propiedades del objeto
+     * quedan en el mapa con su valor json. El body se lee a través de los
+     * {@link LimitRequests límites} del servlet, que cortan la lectura con
+     * una {@link RestException} apenas se superan
+     */
+    private void readBody(WireFormat format, Map<String, Object> map) {
+        HttpServletRequest request = this.httpServletRequest;
+        this.limits.checkContentLength(request);
+        try {
+            format.readObject(this.limits.limit(request.getInputStream()), request.getCharacterEncoding(),
+                    request.getContentLengthLong(), this.limits.getMaxJsonDepth(), map);
+            this.limits.checkParameters(map.size());
+        } catch (JSONException ex) {
+            map.clear();
+        } catch (IOException ex) {
+            this.logError(ex);
+        }
+    }
+
+    /**
+     * Registra en el {@link ErrorLog} del servlet un error al leer la request
+     * que no impide atenderla. Sin registro el error se descarta
+     */
+    private void logError(Throwable error) {
+        ErrorLog log = this.errorLog;
+        if (log != null) {
+            log.log(this.httpServletRequest, this.pathInfo, this.getMatchedPattern(),
+                    HttpServletResponse.SC_BAD_REQUEST, this.startTime, error);
         }
     }
 
+    /**
+     * Busca un parametro con la prioridad de siempre: primero los del
+     * pathInfo, luego los del body y por último los del query string. Cada
+     * fuente se lee solo si las anteriores no tienen el parametro. Los
+     * valores del body json se devuelven con su tipo json, sin pasar a texto
+     */
+    private Object findValue(String key) {
+        if (this.parameterMap != null) {
+            return this.parameterMap.get(key);
+        }
+        Object value = this.pathParameters.get(key);
+        if (value == null) {
+            value = this.getBodyParameters().get(key);
+        }
+        if (value == null) {
+            value = this.getQueryParameters().get(key);
+        }
+        return value;
+    }
+
     /**
      * Funciona para añadir parametros extra al lector que no han sido leídos
      * inicialmente. Esto funciona, por ejemplo, para los parametros en el
      * pathInfo, que no se pueden leer sin la ayuda del Servlet, así que el
      * servlet se puede encargar de leerlos y agregarlos al objeto
-     * RestRequestReader
+     * RestRequestReader. Estos parametros tienen prioridad sobre los del
+     * body y el query string
      *
      * @param key El nombre del parametro
      * @param value El valor del parmetro
      */
     protected void putParameter(String key, Object value) {
-        this.parameterMap.put(key, value.toString());
+        this.pathParameters.put(key, value.toString());
+        if (this.parameterMap != null) {
+            this.parameterMap.put(key, value.toString());
+        }
+    }
+
+    /**
+     * Establece los límites que se aplican al leer los parametros
+     *
+     * @param limits Los límites del servlet
+     */
+    void setLimits(RequestLimits limits) {
+        this.limits = limits;
+    }
+
+    /**
+     * Establece dónde se registran los errores al leer la request
+     *
+     * @param errorLog El registro del servlet
+     * @param startTime El {@link System#nanoTime()} en que empezó la petición
+     */
+    void setErrorLog(ErrorLog errorLog, long startTime) {
+        this.errorLog = errorLog;
+        this.startTime = startTime;
+    }
+
+    /**
+     * Establece cómo se leen los bodies multipart
+     *
+     * @param multipartStreaming La configuración del servlet
+     */
+    void setMultipartStreaming(MultipartStreaming multipartStreaming) {
+        this.multipartStreaming = multipartStreaming;
+    }
+
+    /**
+     * Borra los archivos temporales del body multipart, si se leyó con
+     * {@link #getMultipart()}. Se llama al terminar la petición
+     */
+    void release() {
+        if (this.multipart != null) {
+            this.multipart.close();
+        }
+    }
+
+    /**
+     * Agrega al lector los parametros encontrados en el pathInfo y guarda el
+     * patrón que coincidió
+     *
+     * @param match El resultado de comparar el pathInfo con los patrones del
+     * servlet
+     */
+    protected void setPathMatch(PathMatch match) {
+        this.pathMatch = match;
+        match.forEach(this::putParameter);
+    }
+
+    /**
+     * Obtiene el resultado de comparar el pathInfo con los patrones declarados
+     * en {@link WithPathParameters}
+     *
+     * @return El resultado o {@code null} si ningún patrón coincidió
+     */
+    public PathMatch getPathMatch() {
+        return pathMatch;
+    }
+
+    /**
+     * Obtiene el patrón de {@link WithPathParameters} que coincidió con el
+     * pathInfo de la request
+     *
+     * @return El patrón tal y como fue declarado o {@code null} si ningún
+     * patrón coincidió
+     */
+    public String getMatchedPattern() {
+        return pathMatch == null ? null : pathMatch.getPattern();
+    }
+
+    /**
+     * Obtiene el pathInfo de la request tal y como llegó al servlet. Se lee
+     * al crear el lector porque algunos contenedores, como Jetty, restauran
+     * el pathInfo de la request cuando el hilo del contenedor sale del
+     * servlet, y los métodos que se ejecutan en modo asíncrono verían otro
+     * valor
+     *
+     * @return El pathInfo o {@code null} si la url no tiene
+     */
+    public String getPathInfo() {
+        return pathInfo;
     }
 
     /**
@@ -207,17 +424,31 @@ public class RestRequestReader {
      * {@code [...values]} y pueden ser obtenidos por medio del constructor
      * {@link org.json.JSONArray#JSONArray(java.lang.String) JSONArray(String)}
      *
+     * Este método lee todas las fuentes de parametros de la request
+     *
      * @return Un mapa con todos los parametros en formato String
      */
     public Map<String, String> getParameterMap() {
+        if (this.parameterMap == null) {
+            Map<String, String> map = new HashMap(this.getQueryParameters());
+            this.getBodyParameters().forEach((key, value) -> map.put(key, value.toString()));
+            map.putAll(this.pathParameters);
+            this.parameterMap = map;
+        }
         return parameterMap;
     }
 
-    private void comproveKey(String key) {
-        if (!this.parameterMap.containsKey(key)) {
+    private Object comproveValue(String key) {
+        Object value = this.findValue(key);
+        if (value == null) {
             throw new RestException(HttpServletResponse.SC_BAD_REQUEST,
-                    "Parameter " + key + " is obligatory");
+                    "Parameter " + key + " is obligatory", false);
         }
+        return value;
+    }
+
+    private String comproveKey(String key) {
+        return this.comproveValue(key).toString();
     }
 
     private <T> T parse(String s, Function<String, T> mapper) {
@@ -225,14 +456,26 @@ public class RestRequestReader {
             return mapper.apply(s);
         } catch (Exception ex) {
             throw new RestException(HttpServletResponse.SC_BAD_REQUEST,
-                    ex.getMessage());
+                    ex.getMessage(), false);
         }
     }
 
+    /**
+     * Devuelve el valor por defecto solo si el parametro no existe o no puede
+     * convertirse. Los errores al leer los parametros, como un body que
+     * supera los límites, se lanzan igual que en los métodos sin valor por
+     * defecto
+     */
     private <T> T getParameterOrDefault(String key, T def, Function<String, T> mapper) {
+        if (this.findValue(key) == null) {
+            return def;
+        }
         try {
             return mapper.apply(key);
         } catch (RestException ex) {
+            if (ex.getStatusCode() != HttpServletResponse.SC_BAD_REQUEST) {
+                throw ex;
+            }
             return def;
         }
     }
@@ -247,8 +490,7 @@ public class RestRequestReader {
      * {@link #getByte(java.lang.String, byte) }
      */
     public byte getByte(String key) {
-        this.comproveKey(key);
-        String value = this.parameterMap.get(key);
+        String value = this.comproveKey(key);
         return parse(value, Byte::parseByte);
     }
 
@@ -275,9 +517,11 @@ public class RestRequestReader {
      * {@link #getInt(java.lang.String, int) }
      */
     public int getInt(String key) {
-        this.comproveKey(key);
-        String value = this.parameterMap.get(key);
-        return parse(value, Integer::parseInt);
+        Object value = this.comproveValue(key);
+        if (value instanceof Integer) {
+            return (Integer) value;
+        }
+        return parse(value.toString(), Integer::parseInt);
     }
 
     /**
@@ -303,9 +547,11 @@ public class RestRequestReader {
      * {@link #getLong(java.lang.String, long) }
      */
     public long getLong(String key) {
-        this.comproveKey(key);
-        String value = this.parameterMap.get(key);
-        return parse(value, Long::parseLong);
+        Object value = this.comproveValue(key);
+        if (value instanceof Long || value instanceof Integer) {
+            return ((Number) value).longValue();
+        }
+        return parse(value.toString(), Long::parseLong);
     }
 
     /**
@@ -331,9 +577,11 @@ public class RestRequestReader {
      * {@link #getFloat(java.lang.String, float) }
      */
     public float getFloat(String key) {
-        this.comproveKey(key);
-        String value = this.parameterMap.get(key);
-        return parse(value, Float::parseFloat);
+        Object value = this.comproveValue(key);
+        if (value instanceof Number) {
+            return ((Number) value).floatValue();
+        }
+        return parse(value.toString(), Float::parseFloat);
     }
 
     /**
@@ -359,9 +607,11 @@ public class RestRequestReader {
      * {@link #getDouble(java.lang.String, double) }
      */
     public double getDouble(String key) {
-        this.comproveKey(key);
-        String value = this.parameterMap.get(key);
-        return parse(value, Double::parseDouble);
+        Object value = this.comproveValue(key);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return parse(value.toString(), Double::parseDouble);
     }
 
     /**
@@ -387,9 +637,11 @@ public class RestRequestReader {
      * {@link #getBoolean(java.lang.String, boolean) }
      */
     public boolean getBoolean(String key) {
-        this.comproveKey(key);
-        String value = this.parameterMap.get(key);
-        return parse(value, Boolean::parseBoolean);
+        Object value = this.comproveValue(key);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        return parse(value.toString(), Boolean::parseBoolean);
     }
 
     /**
@@ -415,8 +667,7 @@ public class RestRequestReader {
      * {@link #getString(java.lang.String, java.lang.String) }
      */
     public String getString(String key) {
-        this.comproveKey(key);
-        return this.parameterMap.get(key);
+        return this.comproveKey(key);
     }
 
     /**
@@ -446,9 +697,11 @@ public class RestRequestReader {
      * {@link #getArray(java.lang.String, java.lang.Object[]) getArray(String, Object[])}
      */
     public JSONArray getArray(String key) {
-        this.comproveKey(key);
-        String value = this.parameterMap.get(key);
-        return parse(value, RestRequestReader::strToJSONArray);
+        Object value = this.comproveValue(key);
+        if (value instanceof JSONArray) {
+            return (JSONArray) value;
+        }
+        return parse(value.toString(), RestRequestReader::strToJSONArray);
     }
 
     /**
@@ -479,9 +732,11 @@ public class RestRequestReader {
     }
 
     public List getList(String key) {
-        this.comproveKey(key);
-        String value = this.parameterMap.get(key);
-        return parse(value, RestRequestReader::strToColl);
+        Object value = this.comproveValue(key);
+        if (value instanceof JSONArray) {
+            return toList((JSONArray) value);
+        }
+        return parse(value.toString(), RestRequestReader::strToColl);
     }
 
     public List getList(String key, List def) {
@@ -498,8 +753,11 @@ public class RestRequestReader {
     }
 
     private static List strToColl(String jsonArray) {
-        JSONArray arr = strToJSONArray(jsonArray);
-        ArrayList list = new ArrayList();
+        return toList(strToJSONArray(jsonArray));
+    }
+
+    private static List toList(JSONArray arr) {
+        ArrayList list = new ArrayList(arr.length());
         for (int i = 0; i < arr.length(); i++) {
             list.add(arr.get(i));
         }
@@ -521,9 +779,11 @@ public class RestRequestReader {
      * {@link #getJSON(java.lang.String, java.lang.Object) getJSON(String, Object[])}
      */
     public JSONObject getJSON(String key) {
-        this.comproveKey(key);
-        String value = this.parameterMap.get(key);
-        return parse(value, JSONObject::new);
+        Object value = this.comproveValue(key);
+        if (value instanceof JSONObject) {
+            return (JSONObject) value;
+        }
+        return parse(value.toString(), JSONObject::new);
     }
 
     /**
@@ -553,6 +813,44 @@ public class RestRequestReader {
         return getParameterOrDefault(key, def == null ? null : new JSONObject(def), this::getJSON);
     }
 
+    /**
+     * Crea un java bean con los parametros de la request. Cada setter del
+     * bean recibe el parametro con el mismo nombre, convertido al tipo del
+     * setter. Los objetos y arreglos anidados del body json se convierten
+     * directamente en beans, listas, mapas o arreglos, sin volver a pasar por
+     * texto. Las propiedades sin parametro quedan con su valor inicial
+     *
+     * @param <T> El tipo del bean
+     * @param type La clase del bean, que debe tener un constructor sin
+     * parametros
+     * @return El bean con los valores de la request
+     * @throws RestException Si algún parametro no puede convertirse al tipo
+     * de su propiedad
+     */
+    public <T> T getBody(Class<T> type) {
+        return BeanBinder.bind(type, this::findValue);
+    }
+
+    /**
+     * Obtiene un parametro de la request convertido al tipo especificado. Si
+     * el parametro es un objeto json se convierte en un java bean de ese
+     * tipo, ver {@link #getBody(java.lang.Class)}
+     *
+     * @param <T> El tipo del parametro
+     * @param key El nombre del parametro
+     * @param type La clase a la que se convierte el parametro
+     * @return El valor del parametro
+     * @throws RestException Si el parametro no existe o no puede convertirse
+     */
+    public <T> T getBody(String key, Class<T> type) {
+        Object value = this.comproveValue(key);
+        Object converted = BeanBinder.convert(value, type);
+        if (type.isPrimitive()) {
+            return (T) converted;
+        }
+        return type.cast(converted);
+    }
+
     /**
      * Returns the value of the specified request header as a String. If the
      * request did not include a header of the specified name, this method
@@ -609,11 +907,49 @@ public class RestRequestReader {
         return this.httpServletRequest.getPart(name);
     }
 
+    /**
+     * Obtiene un lector que recorre las partes del body multipart a medida
+     * que llegan, sin que el contenedor lo guarde completo. En las peticiones
+     * POST el servlet debe usar {@link StreamMultipart}, porque si no el
+     * body se lee al buscar el {@code _METHOD}. Después de llamar a este
+     * método los campos del formulario no están entre los parametros
+     *
+     * @return El lector del body, el mismo en cada llamada
+     * @throws IOException Si ocurre un error de I/O
+     * @throws RestException Con status 415 si el body no es
+     * {@code multipart/form-data}, o 413 si supera la cantidad máxima de
+     * partes
+     * @throws IllegalStateException Si el contenedor ya leyó el body
+     */
+    public MultipartReader getMultipart() throws IOException {
+        if (this.multipart != null) {
+            return this.multipart;
+        }
+        HttpServletRequest request = this.httpServletRequest;
+        String content = request.getContentType();
+        String boundary = content == null || !content.contains(MediaType.MULTIPART_FORM_DATA)
+                ? null : MultipartReader.parameter(content, "boundary");
+        if (boundary == null || boundary.isEmpty()) {
+            throw new RestException(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE,
+                    "The request body is not multipart/form-data", false);
+        }
+        if ((this.bodyParameters != null || this.bodyError != null) && !this.multipartStreaming.isEnabled()) {
+            throw new IllegalStateException("The multipart body was already read, see StreamMultipart");
+        }
+        this.multipart = new MultipartReader(request.getInputStream(), boundary,
+                request.getCharacterEncoding(), this.multipartStreaming.getSpoolThreshold(),
+                this.multipartStreaming.getTempDir(), this.limits);
+        if (this.bodyParameters == null) {
+            this.bodyParameters = new HashMap();
+        }
+        return this.multipart;
+    }
+
     public Collection<Part> getParts() {
         try {
             return this.httpServletRequest.getParts();
         } catch (IOException | ServletException ex) {
-            ex.printStackTrace(System.err);
+            this.logError(ex);
             return new ArrayList();
         }
     }
@@ -657,7 +993,13 @@ public class RestRequestReader {
      * @return El método http de la petición
      */
     public String getMethod() {
-        return this._METHOD == null ? this.getRequest().getMethod() : this._METHOD;
+        if (!this.isPost()) {
+            return this.getRequest().getMethod();
+        }
+        this.getBodyParameters();
+        this.getQueryParameters();
+        String method = this.bodyMethod != null ? this.bodyMethod : this.queryMethod;
+        return method == null ? this.getRequest().getMethod() : method;
     }
 
 }
@@ -5,10 +5,19 @@
  */
 package io.github.angeljsb.restservlet;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.core.MediaType;
 import org.json.JSONArray;
@@ -139,7 +148,38 @@ public class RestResponseWriter {
         return res;
     }
     
+    /**
+     * Tipo de contenido de las respuestas en formato NDJSON: un valor json
+     * por línea
+     */
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+    
+    /**
+     * El tamaño máximo por defecto de un cuerpo que se envía completo, ver
+     * {@link ResponseBuffer}
+     */
+    static final int DEFAULT_BUFFER_LIMIT = 1024 * 1024;
+    
+    private static final int BODY_BUFFER = 4 * 1024;
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final long FLUSH_INTERVAL = 200_000_000L;
+    
+    private final HttpServletRequest httpServletRequest;
     private HttpServletResponse httpServletResponse;
+    private ResponseCompression compression;
+    private boolean generateETag;
+    private ResponseCache responseCache;
+    private String cacheKey;
+    private int bufferLimit = DEFAULT_BUFFER_LIMIT;
+    private ErrorLog errorLog;
+    private final long startTime = System.nanoTime();
+    private boolean countBytes;
+    private long bytesSent;
+    private Runnable completion;
+    private final String pathInfo;
     
     /**
      * Crea un objeto RestResponseWriter para una response de un servlet
@@ -147,9 +187,113 @@ public class RestResponseWriter {
      * @param response La response http a la que se quiere enviar la información
      */
     public RestResponseWriter(HttpServletResponse response) {
+        this(null, response);
+    }
+    
+    /**
+     * Crea un objeto RestResponseWriter para una response de un servlet,
+     * usando los headers de la request para elegir el formato de la respuesta
+     * 
+     * @param request La request que se está respondiendo
+     * @param response La response http a la que se quiere enviar la información
+     */
+    public RestResponseWriter(HttpServletRequest request, HttpServletResponse response) {
+        this.httpServletRequest = request;
+        this.pathInfo = request == null ? null : request.getPathInfo();
         this.httpServletResponse = response;
     }
     
+    void setCompression(ResponseCompression compression) {
+        this.compression = compression;
+    }
+    
+    void setGenerateETag(boolean generateETag) {
+        this.generateETag = generateETag;
+    }
+    
+    void setBufferLimit(int bufferLimit) {
+        this.bufferLimit = bufferLimit;
+    }
+    
+    void setErrorLog(ErrorLog errorLog) {
+        this.errorLog = errorLog;
+    }
+    
+    /**
+     * El {@link System#nanoTime()} en que se creó el Writer, que es cuando
+     * empezó a atenderse la petición
+     */
+    long getStartTime() {
+        return startTime;
+    }
+    
+    /**
+     * Hace que se cuenten los bytes de los cuerpos que se envían por stream,
+     * ver {@link #getBytesSent()}
+     */
+    void setCountBytes(boolean countBytes) {
+        this.countBytes = countBytes;
+    }
+    
+    /**
+     * Los bytes de cuerpo enviados, antes de comprimirse. Solo se cuentan
+     * los que se escriben en el stream si se activó
+     * {@link #setCountBytes(boolean)}
+     */
+    long getBytesSent() {
+        return bytesSent;
+    }
+    
+    /**
+     * Guarda la acción que se ejecuta cuando termina la petición
+     */
+    void setCompletion(Runnable completion) {
+        this.completion = completion;
+    }
+    
+    /**
+     * Obtiene la acción que se ejecuta cuando termina la petición y la
+     * quita, de modo que solo quien la tomó la ejecute
+     * 
+     * @return La acción o {@code null}
+     */
+    Runnable takeCompletion() {
+        Runnable action = completion;
+        completion = null;
+        return action;
+    }
+    
+    /**
+     * Hace que el cuerpo que se envíe con {@link #send(java.lang.Object)}
+     * se guarde en la cache si la respuesta es exitosa
+     */
+    void setCacheKey(ResponseCache responseCache, String cacheKey) {
+        this.responseCache = responseCache;
+        this.cacheKey = cacheKey;
+    }
+    
+    /**
+     * Abre el stream donde se escribe el cuerpo de la respuesta, que comprime
+     * el contenido si el servlet usa {@link CompressResponses} y el cliente
+     * lo acepta
+     */
+    private OutputStream openOutputStream() throws IOException {
+        OutputStream out = compression == null || httpServletRequest == null
+                ? this.getResponse().getOutputStream()
+                : compression.open(httpServletRequest, this.getResponse());
+        return countBytes ? new CountingStream(out) : out;
+    }
+    
+    /**
+     * Obtiene la request que se está respondiendo
+     * 
+     * @return La request o {@code null} si no se especificó al crear el
+     * Writer
+     */
+    public HttpServletRequest getRequest() {
+        return httpServletRequest;
+    }
+    
     /**
      * Obtiene la response a la que este Writer envía la información
      * 
@@ -161,39 +305,89 @@ public class RestResponseWriter {
     
     /**
      * Reinicia la response y envía el error pasado como un json, cambiando
-     * el status de la petición al que declara el error
+     * el status de la petición al que declara el error. El json tiene el
+     * formato de {@link RestResponseBody} y su parte fija está ya codificada
+     * para cada status, así que solo se codifica el mensaje del error
      * 
      * @param ex El error que provoca este envío, el cual debe especificar el
      * codigo de status http
      */
     public void sendError(RestException ex) {
-        RestResponseBody body = createRestResponse(ex.getStatusCode(), ex.getMessage());
-        this.httpServletResponse.setStatus(body.getStatus());
-        this.send(body);
+        this.httpServletResponse.setStatus(ex.getStatusCode());
+        sendBytes(ErrorResponses.encode(ex.getStatusCode(), ex.getMessage()));
+    }
+    
+    /**
+     * Envía el mensaje fijo de las peticiones cuyo método de procesamiento
+     * no devolvió nada
+     */
+    void sendNoContent() {
+        sendBytes(ErrorResponses.NO_CONTENT);
+    }
+    
+    /**
+     * Envía un json ya codificado con su Content-Length exacto, calculando
+     * su ETag o guardándolo en la cache igual que
+     * {@link #send(java.lang.Object)}
+     */
+    private void sendBytes(byte[] body) {
+        this.getResponse().setContentType(MediaType.APPLICATION_JSON);
+        this.getResponse().setCharacterEncoding("UTF-8");
+        try {
+            boolean etag = needsETag();
+            if(!etag && cacheKey == null) {
+                writeBody(body, body.length, null);
+                return;
+            }
+            try(BufferedBody out = new BufferedBody(etag)) {
+                out.write(body);
+            }
+        } catch (IOException e) {
+            throw new RestException(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
     }
     
     /**
      * Convierte un objeto a formato json y lo envía como contenido de 
-     * la respuesta. Si el objeto es un JSONObject o un JSONArray
-     * lo envia tal y como está. Sino, será interpretado a formato
+     * la respuesta. El json se escribe directamente en el
+     * {@link javax.servlet.ServletOutputStream ServletOutputStream} como UTF-8,
+     * sin construir antes el texto completo. Si el objeto es un JSONObject o
+     * un JSONArray lo envia tal y como está. Sino, será interpretado a formato
      * JSON tomando en cuenta lo siguiente:
      * <ul>
-     * <li>Si es un array: Se pasa al constructor de {@link org.json.JSONArray#JSONArray(java.lang.Object) }</li>
-     * <li>Si es un String: Se pasa al constructor {@link org.json.JSONObject#JSONObject(java.lang.Object) }</li>
-     * <li>Si no es ninguno de los anteriores, se pasa a {@link org.json.JSONObject#JSONObject(java.lang.String) }</li>
+     * <li>Si es un {@link IJsonable}: Se envía el resultado de su
+     * {@link IJsonable#toJson()}</li>
+     * <li>Si es un array o una {@link Collection}: Se envía un arreglo con sus
+     * elementos convertidos igual que en
+     * {@link JSONHelper#toJsonArray(java.util.Collection)}</li>
+     * <li>Si es un {@link Map}: Se envía un objeto con sus entradas, en el
+     * orden del mapa. Los valores anidados se escriben como en org.json, ver
+     * {@link JsonGenerator}</li>
+     * <li>Si es un String: Debe ser un arreglo json</li>
+     * <li>Si es un {@link Iterator}, {@link Stream}, {@link Spliterator} o
+     * {@link ResultCursor}: Se envían sus elementos a medida que se producen,
+     * como un arreglo json o, si la request acepta
+     * {@value #APPLICATION_NDJSON}, como NDJSON. Ver
+     * {@link #sendElements(java.lang.Object)}</li>
+     * <li>Si su clase tiene un {@link JsonCodec} generado, se convierte con
+     * el codec</li>
+     * <li>Si no es ninguno de los anteriores, se pasa al constructor
+     * {@link org.json.JSONObject#JSONObject(java.lang.Object) }</li>
      * </ul>
      * 
+     * Si el header {@code Accept} de la request pide otro
+     * {@link WireFormat}, como {@code application/cbor}, el mismo contenido
+     * se escribe en ese formato, ver {@link WireFormats}
+     * 
      * @param body El objeto que se desea enviar
      */
     public void send(Object body) {
-        Object jsonBody;
-        if(body instanceof IJsonable) {
-            jsonBody = ((IJsonable) body).toJson();
-        } else if(body instanceof JSONObject || body instanceof JSONArray) {
-            jsonBody = body;
-        } else if(body.getClass().isArray()) {
-            jsonBody = JSONHelper.toJsonArray((Object[])body);
-        } else if(body instanceof String) {
+        if(isElementSource(body)) {
+            sendElements(body);
+            return;
+        }
+        Object jsonBody = body;
+        if(body instanceof String) {
             String jsonStr = (String)body;
             if(jsonStr.startsWith("[")){
                 jsonBody = new JSONArray(jsonStr);
@@ -204,22 +398,513 @@ public class RestResponseWriter {
                         + "un recurso que no puede ser interpretado como"
                         + "json: " + jsonStr);
             }
-        } else if(body instanceof Collection) {
-            Collection coll = (Collection) body;
-            jsonBody = JSONHelper.toJsonArray(coll);
-        } else {
+        } else if(!(body instanceof IJsonable || body instanceof JSONObject
+                || body instanceof JSONArray || body instanceof Collection || body instanceof Map
+                || body.getClass().isArray() || JsonCodecs.forClass(body.getClass()) != null)) {
             jsonBody = new JSONObject(body);
         }
         
-        this.getResponse().setContentType(MediaType.APPLICATION_JSON);
-        this.getResponse().setCharacterEncoding("UTF-8");
-        try(PrintWriter out = this.getResponse().getWriter()){
-            out.print(jsonBody);
+        WireFormat format = negotiateFormat();
+        this.getResponse().setContentType(format.getMediaType());
+        if(format == WireFormats.JSON) {
+            this.getResponse().setCharacterEncoding("UTF-8");
+        }
+        BufferedBody bodyStream = openBodyStream();
+        try(JsonGenerator out = format.createGenerator(bodyStream)){
+            try {
+                out.writeBody(jsonBody);
+            } catch (IOException | RuntimeException e) {
+                bodyStream.discard();
+                throw e;
+            }
         }catch (IOException e){
             throw new RestException(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
         }
     }
     
+    /**
+     * Elige el formato de la respuesta según el header {@code Accept} y
+     * agrega {@code Accept} al header {@code Vary}
+     */
+    private WireFormat negotiateFormat() {
+        if(httpServletRequest == null) {
+            return WireFormats.JSON;
+        }
+        HttpServletResponse response = this.getResponse();
+        String vary = response.getHeader("Vary");
+        if(vary == null) {
+            response.setHeader("Vary", "Accept");
+        } else if(!containsToken(vary, "accept")) {
+            response.addHeader("Vary", "Accept");
+        }
+        return WireFormats.forAccept(httpServletRequest.getHeader("Accept"));
+    }
+    
+    private static boolean containsToken(String header, String token) {
+        for(String part : header.split(",")) {
+            if(part.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Abre el stream para el cuerpo de {@link #send(java.lang.Object)}: un
+     * buffer del {@link BufferPool} que al cerrarse envía el cuerpo con su
+     * Content-Length exacto. Si el servlet usa {@link GenerateETag} o
+     * {@link CacheResponse}, el cuerpo se guarda completo para calcular su
+     * ETag o guardarlo en la cache
+     */
+    private BufferedBody openBodyStream() {
+        return new BufferedBody(needsETag());
+    }
+    
+    /**
+     * Indica si hay que calcular el ETag del cuerpo que se va a enviar
+     */
+    private boolean needsETag() {
+        boolean etag = generateETag && httpServletRequest != null
+                && !this.getResponse().containsHeader("ETag");
+        if(etag) {
+            String method = httpServletRequest.getMethod();
+            etag = "GET".equals(method) || "HEAD".equals(method);
+        }
+        return etag;
+    }
+    
+    /**
+     * Envía una respuesta guardada en la {@link ResponseCache}, con sus
+     * headers, sin procesar la petición ni volver a convertir el cuerpo
+     * 
+     * @param cached La respuesta guardada
+     */
+    void sendCached(CachedResponse cached) {
+        HttpServletResponse response = this.getResponse();
+        cached.applyHeaders(response);
+        negotiateFormat();
+        try {
+            if(cached.getRegion() == null) {
+                writeBody(cached.getBody(), cached.getBody().length, cached.getHash());
+            } else {
+                writeRegion(cached.getRegion(), cached.getHash());
+            }
+        } catch (IOException e) {
+            throw new RestException(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+    }
+    
+    /**
+     * Envía un cuerpo completo. Si tiene hash y la respuesta es exitosa,
+     * envía su ETag y, si coincide con el If-None-Match de la request,
+     * responde 304 sin cuerpo
+     */
+    private void writeBody(byte[] body, int length, String hash) throws IOException {
+        if(isNotModified(length, hash)) {
+            return;
+        }
+        if(compression == null) {
+            this.getResponse().setContentLength(length);
+        }
+        try(OutputStream out = openOutputStream()) {
+            out.write(body, 0, length);
+        }
+    }
+    
+    /**
+     * Envía un cuerpo guardado fuera del heap. Si está en un archivo, la
+     * respuesta no se comprime y el contenedor soporta sendfile, como
+     * Tomcat con NIO o APR, el contenedor envía la región del archivo
+     * directamente al socket. En otro caso se copia al stream por bloques
+     */
+    private void writeRegion(OffHeapStore.Region region, String hash) throws IOException {
+        int length = region.getLength();
+        if(isNotModified(length, hash)) {
+            return;
+        }
+        OffHeapStore.Location location = region.getLocation();
+        if(compression == null && location.getFile() != null && httpServletRequest != null
+                && "GET".equals(httpServletRequest.getMethod())
+                && Boolean.TRUE.equals(httpServletRequest.getAttribute(SENDFILE_SUPPORT))) {
+            this.getResponse().setContentLength(length);
+            httpServletRequest.setAttribute(SENDFILE_FILENAME, location.getFile().toAbsolutePath().toString());
+            httpServletRequest.setAttribute(SENDFILE_START, location.getOffset());
+            httpServletRequest.setAttribute(SENDFILE_END, location.getOffset() + length);
+            bytesSent += length;
+            return;
+        }
+        if(compression == null) {
+            this.getResponse().setContentLength(length);
+        }
+        try(OutputStream out = openOutputStream()) {
+            region.writeTo(out);
+        }
+    }
+    
+    /**
+     * Si el cuerpo tiene hash y la respuesta es exitosa, envía su ETag y, si
+     * coincide con el If-None-Match de la request, cambia el status a 304
+     * 
+     * @return {@code true} si no debe enviarse el cuerpo
+     */
+    private boolean isNotModified(int length, String hash) {
+        HttpServletResponse response = this.getResponse();
+        int status = response.getStatus();
+        if(hash != null && status >= 200 && status < 300) {
+            String encoding = compression == null ? null
+                    : compression.encodingFor(httpServletRequest, response, length);
+            String tag = ETags.forBody(hash, encoding);
+            response.setHeader("ETag", tag);
+            if(ETags.matches(httpServletRequest.getHeader("If-None-Match"), tag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean isElementSource(Object body) {
+        return body instanceof Iterator || body instanceof Stream
+                || body instanceof Spliterator || body instanceof ResultCursor;
+    }
+    
+    /**
+     * Envía los elementos de un {@link Iterator}, {@link Stream},
+     * {@link Spliterator} o {@link ResultCursor} a medida que se recorren,
+     * sin guardarlos en memoria. Cada elemento se convierte igual que en
+     * {@link #send(java.lang.Object)}. La respuesta no declara su tamaño y se
+     * envía por partes cada cierta cantidad de elementos o de tiempo.<br><br>
+     * 
+     * Si la request acepta {@value #APPLICATION_NDJSON} se envía un elemento
+     * por línea y si no, un arreglo json. Los Streams y los iteradores
+     * {@link AutoCloseable} se cierran al terminar.<br><br>
+     * 
+     * Si recorrer los elementos falla antes de que se haya enviado algún
+     * byte, se lanza el error para que se responda como cualquier otro. Si
+     * falla después, el status ya no puede cambiarse:
+     * <ul>
+     * <li>En NDJSON se envía una última línea
+     * {@code {"error":{"status":...,"message":...,"body":...}}}</li>
+     * <li>En json el arreglo se deja sin cerrar, de modo que el cliente no
+     * pueda confundir la respuesta con una completa</li>
+     * </ul>
+     * 
+     * @param source El origen de los elementos
+     * @throws RestException Si el origen falla antes de enviar algún byte
+     */
+    public void sendElements(Object source) {
+        boolean ndjson = acceptsNdjson();
+        JsonStreamGenerator out;
+        try {
+            this.getResponse().setContentType(ndjson ? APPLICATION_NDJSON : MediaType.APPLICATION_JSON);
+            this.getResponse().setCharacterEncoding("UTF-8");
+            out = new JsonStreamGenerator(openOutputStream());
+        } catch (IOException e) {
+            throw new RestException(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        }
+        
+        ElementSink sink = new ElementSink(out, ndjson);
+        Exception failure = null;
+        try {
+            if(!ndjson) {
+                out.beginArray();
+            }
+            try {
+                forEachElement(source, sink);
+            } catch (WriteFailure e) {
+                throw e.getCause();
+            } catch (Exception e) {
+                failure = e;
+            }
+            if(failure == null) {
+                if(!ndjson) {
+                    out.endArray();
+                }
+                out.close();
+                return;
+            }
+        } catch (IOException e) {
+            out.discard();
+            throw new RestException(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        } finally {
+            closeSource(source);
+        }
+        
+        if(!out.hasFlushed()) {
+            out.discard();
+            throw failure instanceof RuntimeException
+                    ? (RuntimeException) failure : new CompletionException(failure);
+        }
+        logError(failure instanceof RestException
+                ? ((RestException) failure).getStatusCode()
+                : HttpServletResponse.SC_INTERNAL_SERVER_ERROR, failure);
+        sendElementError(out, failure, ndjson);
+    }
+    
+    private void sendElementError(JsonStreamGenerator out, Exception e, boolean ndjson) {
+        try {
+            if(ndjson) {
+                int status = e instanceof RestException
+                        ? ((RestException) e).getStatusCode()
+                        : HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+                out.beginObject();
+                out.name("error");
+                out.writeBean(createRestResponse(status, e.getMessage()));
+                out.endObject();
+                out.lineBreak();
+            }
+            out.close();
+        } catch (IOException ex) {
+            out.discard();
+        }
+    }
+    
+    private static void forEachElement(Object source, Consumer<Object> sink) throws Exception {
+        if(source instanceof Iterator) {
+            ((Iterator<?>) source).forEachRemaining(sink);
+        } else if(source instanceof Stream) {
+            ((Stream<?>) source).sequential().forEachOrdered(sink);
+        } else if(source instanceof Spliterator) {
+            ((Spliterator<?>) source).forEachRemaining(sink);
+        } else {
+            ((ResultCursor<?>) source).forEach(sink);
+        }
+    }
+    
+    private void closeSource(Object source) {
+        if(source instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) source).close();
+            } catch (Exception ex) {
+                logError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, ex);
+            }
+        }
+    }
+    
+    /**
+     * Registra en el {@link ErrorLog} del servlet un error que ya no puede
+     * enviarse en la respuesta. Sin registro el error se descarta
+     */
+    private void logError(int status, Throwable error) {
+        if(errorLog != null) {
+            errorLog.log(httpServletRequest, pathInfo, null, status, startTime, error);
+        }
+    }
+    
+    private boolean acceptsNdjson() {
+        if(httpServletRequest == null) {
+            return false;
+        }
+        String accept = httpServletRequest.getHeader("Accept");
+        return accept != null && accept.toLowerCase(Locale.ROOT).contains(APPLICATION_NDJSON);
+    }
+    
+    /**
+     * Escribe cada elemento recibido con las reglas de los arreglos de
+     * primer nivel, ver {@link JsonGenerator#writeElement(java.lang.Object)},
+     * y envía lo escrito si pasaron {@value #FLUSH_INTERVAL} nanosegundos
+     * desde el último envío. El primer elemento se envía apenas se escribe,
+     * y si la fuente tarda más que ese intervalo entre elementos, cada uno se
+     * envía al escribirse
+     */
+    private static final class ElementSink implements Consumer<Object> {
+        
+        private final JsonStreamGenerator out;
+        private final boolean ndjson;
+        private long lastFlush = System.nanoTime() - FLUSH_INTERVAL;
+
+        ElementSink(JsonStreamGenerator out, boolean ndjson) {
+            this.out = out;
+            this.ndjson = ndjson;
+        }
+
+        @Override
+        public void accept(Object element) {
+            try {
+                out.writeElement(element);
+                if(ndjson) {
+                    out.lineBreak();
+                }
+                long now = System.nanoTime();
+                if(now - lastFlush >= FLUSH_INTERVAL) {
+                    out.flush();
+                    lastFlush = now;
+                }
+            } catch (IOException e) {
+                throw new WriteFailure(e);
+            }
+        }
+        
+    }
+    
+    /**
+     * Guarda el cuerpo en buffers del {@link BufferPool} y al cerrarse
+     * calcula su ETag, lo guarda en la cache si corresponde y lo envía con
+     * {@link #writeBody}. Si el cuerpo supera el límite del buffer y no hace
+     * falta completo, lo escrito hasta ahora se envía y el resto se escribe
+     * directamente en la response. Si la serialización falla el cuerpo se
+     * descarta con {@link #discard()} y no se envía ni se guarda
+     */
+    private final class BufferedBody extends OutputStream {
+        
+        private final boolean etag;
+        private final boolean complete;
+        private byte[] buf;
+        private int count;
+        private OutputStream streaming;
+        private boolean closed;
+        
+        BufferedBody(boolean etag) {
+            this.etag = etag;
+            this.complete = etag || cacheKey != null;
+            this.buf = BufferPool.getDefault().acquire(BODY_BUFFER);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if(closed) {
+                return;
+            }
+            if(ensure(1)) {
+                buf[count++] = (byte) b;
+            } else {
+                streaming.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if(closed) {
+                return;
+            }
+            if(ensure(len)) {
+                System.arraycopy(b, off, buf, count, len);
+                count += len;
+            } else {
+                streaming.write(b, off, len);
+            }
+        }
+        
+        /**
+         * Hace espacio para más bytes, cambiando a un buffer más grande o
+         * empezando a enviar el cuerpo si supera el límite
+         * 
+         * @return {@code true} si los bytes deben ir al buffer
+         */
+        private boolean ensure(int length) throws IOException {
+            if(streaming != null) {
+                return false;
+            }
+            long needed = (long) count + length;
+            if(needed <= buf.length) {
+                return true;
+            }
+            if(!complete && needed > bufferLimit) {
+                streaming = openOutputStream();
+                streaming.write(buf, 0, count);
+                BufferPool.getDefault().release(buf);
+                buf = null;
+                return false;
+            }
+            int size = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, 2L * buf.length));
+            byte[] bigger = BufferPool.getDefault().acquire(size);
+            System.arraycopy(buf, 0, bigger, 0, count);
+            BufferPool.getDefault().release(buf);
+            buf = bigger;
+            return true;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if(!closed && streaming != null) {
+                streaming.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if(streaming != null) {
+                    streaming.close();
+                    return;
+                }
+                String hash = etag ? ETags.hashOf(buf, count) : null;
+                HttpServletResponse response = getResponse();
+                if(cacheKey != null && response.getStatus() == HttpServletResponse.SC_OK) {
+                    responseCache.put(cacheKey, response, buf, count, hash);
+                }
+                writeBody(buf, count, hash);
+            } finally {
+                if(buf != null) {
+                    BufferPool.getDefault().release(buf);
+                    buf = null;
+                }
+            }
+        }
+        
+        /**
+         * Descarta el cuerpo sin enviarlo ni guardarlo en la cache y devuelve
+         * el buffer; lo que se escriba después se ignora. Si el cuerpo ya se
+         * estaba enviando, lo enviado no se cierra, así que la respuesta
+         * queda incompleta y el error no puede enviarse
+         */
+        void discard() {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            if(buf != null) {
+                BufferPool.getDefault().release(buf);
+                buf = null;
+            }
+        }
+        
+    }
+    
+    /**
+     * Stream que cuenta los bytes que se escriben en la response
+     */
+    private final class CountingStream extends FilterOutputStream {
+        
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytesSent++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytesSent += len;
+        }
+        
+    }
+    
+    /**
+     * Error al escribir un elemento, para distinguirlo de los errores del
+     * origen de los elementos
+     */
+    private static final class WriteFailure extends RuntimeException {
+        
+        WriteFailure(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+        
+    }
+    
     public void sendRedirect(String path) {
         try {
             this.httpServletResponse.sendRedirect(path);
@@ -6,10 +6,17 @@
 package io.github.angeljsb.restservlet;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Locale;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -43,6 +50,36 @@ import javax.servlet.http.HttpServletResponse;
  * </li>
  * </ul>
  * 
+ * También se pueden anotar métodos con {@link Get}, {@link Post}, {@link Put}
+ * o {@link Delete} para procesar un método http en un pathInfo específico.
+ * Los métodos anotados y los métodos anteriores que estén sobreescritos se
+ * enlazan una sola vez al iniciar el servlet. Si ninguno procesa el método
+ * http de una petición se responde con status 405, y si ninguno procesa su
+ * pathInfo con status 404.<br><br>
+ * 
+ * Los métodos de procesamiento pueden devolver un
+ * {@link CompletionStage}, por ejemplo un
+ * {@link java.util.concurrent.CompletableFuture CompletableFuture}. En ese
+ * caso la petición pasa a modo asíncrono y la respuesta se envía cuando el
+ * resultado esté listo, ver {@link AsyncTimeout} y
+ * {@link #getAsyncExecutor()}.<br><br>
+ * 
+ * Las respuestas pueden comprimirse con gzip o deflate según el
+ * {@code Accept-Encoding} de cada request, ver {@link CompressResponses}, y
+ * las peticiones GET pueden responderse con status 304 según su
+ * {@code If-None-Match}, ver {@link GenerateETag} y
+ * {@link #getETag(io.github.angeljsb.restservlet.RestRequestReader)}. Con
+ * {@link CacheResponse} las respuestas GET se guardan y reutilizan sin
+ * volver a procesar la petición. Los cuerpos se serializan en buffers
+ * reutilizables y se envían con su {@code Content-Length}, ver
+ * {@link ResponseBuffer}. Los errores se registran sin bloquear la
+ * petición, ver {@link ErrorLogging}, y con {@link CollectMetrics} se
+ * miden las peticiones de cada ruta. Los bodies demasiado grandes se
+ * rechazan con status 413 sin leerlos completos, ver
+ * {@link LimitRequests}. Con {@link StreamMultipart} los bodies multipart
+ * se recorren a medida que llegan, ver
+ * {@link RestRequestReader#getMultipart()}.<br><br>
+ * 
  * Al servlet se le asigna una ruta por medio de la anotación 
  * {@link javax.servlet.annotation.WebServlet WebServlet}
  * como a cualquier servlet normal y se pueden especificar
@@ -52,46 +89,136 @@ import javax.servlet.http.HttpServletResponse;
  */
 public abstract class RestServlet extends HttpServlet {
     
-    private void getUrlParameters(RestRequestReader requestReader) {
-        WithPathParameters ann = this.getClass().getAnnotation(WithPathParameters.class);
-        String pathInfo = requestReader.getRequest().getPathInfo();
-        if(ann == null || pathInfo == null) {
-            return;
+    /**
+     * Tiempo de espera por defecto, en milisegundos, para los métodos de
+     * procesamiento que devuelven un {@link CompletionStage}
+     */
+    public static final long DEFAULT_ASYNC_TIMEOUT = 30000L;
+    
+    private volatile RouteTable routeTable;
+    private volatile HandlerTable handlerTable;
+    private volatile long asyncTimeout = -1;
+    private ExecutorService handlerExecutor;
+    private ResponseCompression compression;
+    private boolean generateETag;
+    private ResponseCache responseCache;
+    private int responseBufferLimit = RestResponseWriter.DEFAULT_BUFFER_LIMIT;
+    private ErrorLog errorLog;
+    private RequestMetrics metrics;
+    private RequestLimits limits = RequestLimits.NONE;
+    private MultipartStreaming multipartStreaming = MultipartStreaming.DEFAULT;
+
+    /**
+     * Inicializa el servlet, compila los patrones declarados en
+     * {@link WithPathParameters} y enlaza los métodos que procesan cada
+     * método http, de manera que no tengan que buscarse en cada petición
+     *
+     * @param config La configuración del servlet
+     * @throws ServletException Si ocurre un error inicializando el servlet
+     */
+    @Override
+    public void init(ServletConfig config) throws ServletException {
+        super.init(config);
+        this.routeTable = RouteTable.forClass(this.getClass());
+        this.handlerTable = HandlerTable.build(this);
+        this.asyncTimeout = readAsyncTimeout();
+        this.handlerExecutor = createHandlerExecutor();
+        this.compression = ResponseCompression.forServlet(this);
+        String param = this.getInitParameter("generateETag");
+        this.generateETag = param == null
+                ? this.getClass().isAnnotationPresent(GenerateETag.class)
+                : Boolean.parseBoolean(param.trim());
+        String limit = this.getInitParameter("responseBufferLimit");
+        ResponseBuffer buffer = this.getClass().getAnnotation(ResponseBuffer.class);
+        this.responseBufferLimit = limit != null ? Integer.parseInt(limit.trim())
+                : buffer != null ? buffer.limit() : RestResponseWriter.DEFAULT_BUFFER_LIMIT;
+        this.errorLog = ErrorLog.forServlet(this);
+        this.metrics = RequestMetrics.forServlet(this);
+        this.limits = RequestLimits.forServlet(this);
+        this.multipartStreaming = MultipartStreaming.forServlet(this);
+        try {
+            this.responseCache = ResponseCache.forServlet(this);
+        } catch (IOException ex) {
+            throw new ServletException("Cannot open the response cache file", ex);
         }
-        String[] patterns = ann.pathInfoPatterns();
-        for(String pattern : patterns) {
-            Map<String, String> map = getParams(pathInfo, pattern);
-            
-            if(map!=null){
-                map.forEach((key, val) -> requestReader.putParameter(key, val));
-                return;
-            }
+    }
+
+    /**
+     * Detiene el executor de los métodos de procesamiento, si el servlet
+     * creó uno, cierra el archivo de la cache de respuestas, escribe los
+     * errores pendientes del registro y quita sus métricas del contexto
+     */
+    @Override
+    public void destroy() {
+        if (this.handlerExecutor != null) {
+            this.handlerExecutor.shutdown();
+            this.handlerExecutor = null;
         }
+        if (this.responseCache != null) {
+            this.responseCache.close();
+        }
+        if (this.errorLog != null) {
+            this.errorLog.close();
+        }
+        if (this.metrics != null) {
+            RequestMetrics.unregister(this);
+        }
+        super.destroy();
     }
-    
-    private Map<String, String> getParams(String pathInfo, String pattern) {
-        Matcher matcher = Pattern
-                .compile("\\{([a-zA-Z0-9]+)\\}")
-                .matcher(pattern);
-        if(!matcher.find()){
-            return null;
+
+    private ExecutorService createHandlerExecutor() {
+        HandlerExecution ann = this.getClass().getAnnotation(HandlerExecution.class);
+        ExecutionMode mode = ann == null ? ExecutionMode.CONTAINER : ann.value();
+        int threads = ann == null ? 64 : ann.threads();
+        int queue = ann == null ? 1024 : ann.queue();
+
+        String param = this.getInitParameter("handlerExecution");
+        if (param != null) {
+            mode = ExecutionMode.valueOf(param.trim().toUpperCase(Locale.ROOT));
         }
-        
-        String regex = matcher.replaceAll("(?<$1>[\\\\w\\\\-~]+)");
-        regex = regex.endsWith("/") ? regex + "{0,1}": regex + "/{0,1}";
-        Matcher complete = Pattern.compile(regex).matcher(pathInfo);
-        if(!complete.matches()) {
-            return null;
+        param = this.getInitParameter("handlerThreads");
+        if (param != null) {
+            threads = Integer.parseInt(param.trim());
         }
-        
-        HashMap<String, String> map = new HashMap();
-        matcher.reset();
-        while(matcher.find()) {
-            String paramName = matcher.group(1);
-            map.put(paramName, complete.group(paramName));
+        param = this.getInitParameter("handlerQueue");
+        if (param != null) {
+            queue = Integer.parseInt(param.trim());
+        }
+        return HandlerExecutors.create(mode, threads, queue, this.getServletName());
+    }
+
+    /**
+     * Obtiene la tabla con los patrones de pathInfo de este servlet
+     *
+     * @return La tabla de rutas compilada
+     */
+    protected final RouteTable getRouteTable() {
+        RouteTable table = this.routeTable;
+        if (table == null) {
+            table = RouteTable.forClass(this.getClass());
+            this.routeTable = table;
+        }
+        return table;
+    }
+
+    private HandlerTable getHandlerTable() throws ServletException {
+        HandlerTable table = this.handlerTable;
+        if (table == null) {
+            table = HandlerTable.build(this);
+            this.handlerTable = table;
+        }
+        return table;
+    }
+
+    private void getUrlParameters(RestRequestReader requestReader) {
+        RouteTable table = this.getRouteTable();
+        if (table.isEmpty()) {
+            return;
+        }
+        PathMatch match = table.match(requestReader.getPathInfo());
+        if (match != null) {
+            requestReader.setPathMatch(match);
         }
-            
-        return map;
     }
     
     /**
@@ -220,63 +347,333 @@ public abstract class RestServlet extends HttpServlet {
     
     protected final void doRequest(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         RestRequestReader reader = new RestRequestReader(req);
-        RestResponseWriter writer = new RestResponseWriter(resp);
+        RestResponseWriter writer = new RestResponseWriter(req, resp);
+        writer.setCompression(this.compression);
+        writer.setGenerateETag(this.generateETag);
+        writer.setBufferLimit(this.responseBufferLimit);
+        writer.setErrorLog(this.errorLog);
+        RequestMetrics requestMetrics = this.metrics;
+        if(requestMetrics != null) {
+            writer.setCountBytes(true);
+            writer.setCompletion(() -> this.recordMetrics(requestMetrics, reader, writer));
+        }
+        RequestLimits requestLimits = this.limits;
+        reader.setLimits(requestLimits);
+        reader.setErrorLog(this.errorLog, writer.getStartTime());
+        reader.setMultipartStreaming(this.multipartStreaming);
         
+        if(requestLimits.exceedsContentLength(req)) {
+            this.sendException(reader, writer, RequestLimits.tooLarge("The request body of "
+                    + req.getContentLengthLong() + " bytes exceeds the limit of "
+                    + requestLimits.getMaxBodySize() + " bytes"));
+            Runnable completion = writer.takeCompletion();
+            if(completion != null) {
+                completion.run();
+            }
+            return;
+        }
+        
+        Executor executor = this.getHandlerExecutor();
+        if(executor == null || !req.isAsyncSupported()) {
+            this.process(reader, writer, null);
+            if(!req.isAsyncStarted()) {
+                reader.release();
+            }
+            Runnable completion = writer.takeCompletion();
+            if(completion != null) {
+                completion.run();
+            }
+            return;
+        }
+        
+        AsyncRequest async = AsyncRequest.start(req, reader, writer, this.getAsyncTimeout());
+        try {
+            executor.execute(() -> this.process(reader, writer, async));
+        } catch(RejectedExecutionException ex) {
+            async.finish(() -> this.sendException(reader, writer, new RestException(
+                    HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The server is too busy", false)));
+        }
+    }
+    
+    private void process(RestRequestReader reader, RestResponseWriter writer, AsyncRequest async) {
+        Object result;
         try {
             this.getUrlParameters(reader);
 
-            Object result = null;
-            
             if(!beforeProcess(reader, writer)){
+                respond(async, () -> {});
                 return;
             }
-
-            switch(reader.getMethod().toUpperCase()) {
-                case "GET":
-                    result = this.processGet(reader, writer);
-                    break;
-                case "POST":
-                    result = this.processPost(reader, writer);
-                    break;
-                case "PUT":
-                    result = this.processPut(reader, writer);
-                    break;
-                case "DELETE":
-                    result = this.processDelete(reader, writer);
-                    break;
-                default:
-                    break;
-            }
             
-            if(writer.getResponse().isCommitted()) {
+            if(this.isNotModified(reader, writer)) {
+                respond(async, () -> {});
                 return;
             }
-
-            if(result != null) {
-                writer.send(result);
-                return;
+            
+            ResponseCache cache = this.responseCache;
+            if(cache != null && isGetOrHead(reader.getRequest())) {
+                String key = cache.keyFor(reader);
+                CachedResponse cached = cache.get(key);
+                if(cached != null) {
+                    respond(async, () -> writer.sendCached(cached));
+                    return;
+                }
+                writer.setCacheKey(cache, key);
             }
 
-            result = processRequest(reader, writer);
-            
+            result = this.getHandlerTable().dispatch(reader, writer);
+        }catch(Exception ex) {
+            respond(async, () -> this.sendException(reader, writer, ex));
+            return;
+        }
+        
+        if(result instanceof CompletionStage) {
+            this.sendAsync(reader, writer, (CompletionStage) result, async);
+            return;
+        }
+
+        respond(async, () -> this.sendResult(reader, writer, result));
+    }
+    
+    /**
+     * Envía el ETag de {@link #getETag(io.github.angeljsb.restservlet.RestRequestReader)}
+     * y, si coincide con el If-None-Match de la request, responde 304
+     * 
+     * @return {@code true} si se respondió 304 y no debe procesarse la
+     * petición
+     */
+    private boolean isNotModified(RestRequestReader reader, RestResponseWriter writer) {
+        HttpServletRequest req = reader.getRequest();
+        if(!isGetOrHead(req)) {
+            return false;
+        }
+        String tag = this.getETag(reader);
+        if(tag == null) {
+            return false;
+        }
+        tag = ETags.quote(tag);
+        HttpServletResponse resp = writer.getResponse();
+        resp.setHeader("ETag", tag);
+        if(ETags.matches(req.getHeader("If-None-Match"), tag)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
+    
+    private static boolean isGetOrHead(HttpServletRequest req) {
+        String method = req.getMethod();
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
+    
+    /**
+     * Obtiene la cache de respuestas de este servlet, para descartar las
+     * respuestas de los recursos que cambian
+     * 
+     * @return La cache o {@code null} si el servlet no usa
+     * {@link CacheResponse}
+     */
+    public final ResponseCache getResponseCache() {
+        return this.responseCache;
+    }
+    
+    /**
+     * Obtiene la versión actual del recurso que pide una petición GET o HEAD,
+     * antes de procesarla. Si el cliente ya tiene esa versión, indicado por
+     * su header {@code If-None-Match}, se responde con status 304 sin llamar
+     * a los métodos de procesamiento. Si no, la versión se envía como header
+     * ETag junto a la respuesta.<br><br>
+     * 
+     * Se llama después de {@link #beforeProcess}, así que las comprobaciones
+     * de acceso se siguen haciendo. Para las peticiones con
+     * {@code If-Modified-Since} basta con sobreescribir
+     * {@link #getLastModified(javax.servlet.http.HttpServletRequest)}, que
+     * {@link javax.servlet.http.HttpServlet HttpServlet} comprueba antes de
+     * llegar a este servlet
+     * 
+     * @param requestReader El lector de la request, con los parametros de
+     * {@link WithPathParameters} ya disponibles
+     * @return Un ETag barato de calcular, con o sin comillas, o {@code null}
+     * para procesar la petición normalmente. Por defecto {@code null}
+     */
+    protected String getETag(RestRequestReader requestReader) {
+        return null;
+    }
+    
+    private static void respond(AsyncRequest async, Runnable send) {
+        if(async == null) {
+            send.run();
+        } else {
+            async.finish(send);
+        }
+    }
+    
+    private void sendResult(RestRequestReader reader, RestResponseWriter writer, Object result) {
+        try {
             if(writer.getResponse().isCommitted()) {
                 return;
             }
-            
+
             if(result != null) {
                 writer.send(result);
                 return;
             }
-            
-            writer.send("{\"message\":\"There is no content to show\"}");
-            
-        }catch(RestException ex) {
-            ex.printStackTrace(System.err);
-            writer.sendError(ex);
-        }catch(Exception ex) {
+
+            writer.sendNoContent();
+        } catch(RuntimeException ex) {
+            this.sendException(reader, writer, ex);
+        }
+    }
+    
+    private void sendException(RestRequestReader reader, RestResponseWriter writer, Throwable ex) {
+        if(ex instanceof CompletionException && ex.getCause() != null) {
+            ex = ex.getCause();
+        }
+        RestException error = ex instanceof RestException
+                ? (RestException) ex : new RestException(500, ex.getMessage(), false);
+        ErrorLog log = this.errorLog;
+        if(log != null) {
+            log.log(reader.getRequest(), reader.getPathInfo(), reader.getMatchedPattern(), error.getStatusCode(),
+                    writer.getStartTime(), ex);
+        } else {
             ex.printStackTrace(System.err);
-            writer.sendError(new RestException(500, ex.getMessage()));
         }
+        if(writer.getResponse().isCommitted()) {
+            return;
+        }
+        if(error.getStatusCode() == HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE) {
+            writer.getResponse().setHeader("Connection", "close");
+        }
+        writer.sendError(error);
+    }
+    
+    /**
+     * Registra la petición en las métricas cuando ya se envió la respuesta.
+     * Si la petición pasó a modo asíncrono se llama al terminarla
+     */
+    private void recordMetrics(RequestMetrics requestMetrics, RestRequestReader reader, RestResponseWriter writer) {
+        HttpServletRequest req = reader.getRequest();
+        requestMetrics.record(req.getMethod(), reader.getMatchedPattern(), writer.getResponse().getStatus(),
+                System.nanoTime() - writer.getStartTime(), req.getContentLengthLong(), writer.getBytesSent());
+    }
+    
+    /**
+     * Obtiene las métricas de las peticiones de este servlet
+     * 
+     * @return Las métricas o {@code null} si el servlet no usa
+     * {@link CollectMetrics}
+     */
+    public final RequestMetrics getRequestMetrics() {
+        return this.metrics;
+    }
+    
+    /**
+     * Obtiene el registro de errores de este servlet, con la cantidad de
+     * errores escritos, descartados y omitidos
+     * 
+     * @return El registro o {@code null} si el servlet no se ha iniciado
+     * @see ErrorLogging
+     */
+    public final ErrorLog getErrorLog() {
+        return this.errorLog;
+    }
+    
+    /**
+     * Espera el resultado de un método de procesamiento que devolvió un
+     * {@link CompletionStage}. Si el contenedor lo permite la petición pasa a
+     * modo asíncrono y el hilo queda libre, sino se bloquea el hilo hasta que
+     * el resultado esté listo
+     */
+    private void sendAsync(RestRequestReader reader, RestResponseWriter writer,
+            CompletionStage<?> stage, AsyncRequest async) {
+        HttpServletRequest req = reader.getRequest();
+        
+        if(async == null && !req.isAsyncSupported()) {
+            long timeout = this.getAsyncTimeout();
+            try {
+                Object result = timeout > 0
+                        ? stage.toCompletableFuture().get(timeout, TimeUnit.MILLISECONDS)
+                        : stage.toCompletableFuture().get();
+                this.sendResult(reader, writer, result);
+            } catch (TimeoutException ex) {
+                stage.toCompletableFuture().cancel(false);
+                this.sendException(reader, writer, AsyncRequest.timeoutException());
+            } catch (ExecutionException ex) {
+                this.sendException(reader, writer, ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                this.sendException(reader, writer, ex);
+            }
+            return;
+        }
+        
+        AsyncRequest request = async == null
+                ? AsyncRequest.start(req, reader, writer, this.getAsyncTimeout()) : async;
+        request.setPending(stage.toCompletableFuture());
+        
+        BiConsumer<Object, Throwable> complete = (result, error) -> request.finish(() -> {
+            if(error != null) {
+                this.sendException(reader, writer, error);
+            } else {
+                this.sendResult(reader, writer, result);
+            }
+        });
+        
+        Executor executor = this.getAsyncExecutor();
+        if(executor == null) {
+            stage.whenComplete(complete);
+        } else {
+            stage.whenCompleteAsync(complete, executor);
+        }
+    }
+    
+    /**
+     * Obtiene el tiempo máximo en milisegundos que se espera a un
+     * {@link CompletionStage} devuelto por los métodos de procesamiento. Por
+     * defecto se toma del init-param {@code asyncTimeout}, de la anotación
+     * {@link AsyncTimeout} o es {@value #DEFAULT_ASYNC_TIMEOUT}
+     * 
+     * @return El tiempo de espera o {@code 0} para esperar sin límite
+     */
+    protected long getAsyncTimeout() {
+        long timeout = this.asyncTimeout;
+        if (timeout < 0) {
+            timeout = readAsyncTimeout();
+            this.asyncTimeout = timeout;
+        }
+        return timeout;
+    }
+    
+    private long readAsyncTimeout() {
+        String param = this.getServletConfig() == null ? null : this.getInitParameter("asyncTimeout");
+        if (param != null) {
+            return Long.parseLong(param.trim());
+        }
+        AsyncTimeout ann = this.getClass().getAnnotation(AsyncTimeout.class);
+        return ann == null ? DEFAULT_ASYNC_TIMEOUT : ann.value();
+    }
+    
+    /**
+     * Obtiene el executor donde se envía la respuesta cuando termina un
+     * {@link CompletionStage} devuelto por los métodos de procesamiento. Por
+     * defecto es {@code null}, y la respuesta se envía en el hilo que completa
+     * el resultado
+     * 
+     * @return El executor a usar o {@code null}
+     */
+    protected Executor getAsyncExecutor() {
+        return null;
+    }
+    
+    /**
+     * Obtiene el executor donde se ejecutan los métodos de procesamiento. Por
+     * defecto es el que se configura con {@link HandlerExecution}, o
+     * {@code null} si los métodos se ejecutan en el hilo del contenedor
+     * 
+     * @return El executor a usar o {@code null}
+     */
+    protected Executor getHandlerExecutor() {
+        return this.handlerExecutor;
     }
 
     @Override
@@ -0,0 +1,33 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.util.function.Consumer;
+
+/**
+ * Origen de elementos que se recorren una sola vez, por ejemplo las filas de
+ * un cursor de base de datos. Si un método de un {@link RestServlet} lo
+ * devuelve, los elementos se envían uno a uno a medida que se producen, sin
+ * guardarlos en memoria, igual que un {@link java.util.Iterator} o un
+ * {@link java.util.stream.Stream}
+ *
+ * @param <T> El tipo de los elementos
+ * @author Angel
+ */
+@FunctionalInterface
+public interface ResultCursor<T> {
+    
+    /**
+     * Entrega cada elemento a la acción, en orden
+     * 
+     * @param action La acción que escribe cada elemento en la respuesta
+     * @throws Exception Cualquier error al producir los elementos. Ver
+     * {@link RestResponseWriter#send(java.lang.Object)} para saber cómo se
+     * informa
+     */
+    public void forEach(Consumer<? super T> action) throws Exception;
+    
+}
@@ -0,0 +1,132 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tabla inmutable con los patrones de pathInfo de un servlet ya compilados.
+ * Se construye una vez por servlet a partir de su anotación
+ * {@link WithPathParameters} y se consulta en cada petición.<br><br>
+ *
+ * Los patrones formados solo por segmentos literales y parametros se buscan
+ * en un árbol de segmentos, donde los literales tienen prioridad sobre los
+ * parametros. Los demás patrones se comparan después con su expresión
+ * regular, en el orden en que fueron declarados
+ *
+ * @author Angel
+ */
+public final class RouteTable {
+
+    /**
+     * Tabla sin patrones, usada por los servlets que no declaran la anotación
+     */
+    public static final RouteTable EMPTY = new RouteTable(new PathPattern[0]);
+
+    /**
+     * Construye la tabla de rutas de una clase de servlet
+     *
+     * @param servletClass La clase a leer
+     * @return La tabla de rutas o {@link #EMPTY} si la clase no tiene la
+     * anotación {@link WithPathParameters}
+     */
+    public static RouteTable forClass(Class<?> servletClass) {
+        WithPathParameters ann = servletClass.getAnnotation(WithPathParameters.class);
+        if (ann == null) {
+            return EMPTY;
+        }
+        return of(ann.pathInfoPatterns());
+    }
+
+    /**
+     * Construye una tabla de rutas con los patrones especificados. Los
+     * patrones sin parametros también se incluyen, de manera que una ruta
+     * literal como {@code "/users/me"} no sea capturada por
+     * {@code "/users/{id}"}
+     *
+     * @param patterns Los patrones, en orden de prioridad
+     * @return La tabla de rutas
+     */
+    public static RouteTable of(String... patterns) {
+        PathPattern[] compiled = new PathPattern[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            compiled[i] = PathPattern.compile(patterns[i]);
+        }
+        return new RouteTable(compiled);
+    }
+
+    static RouteTable ofPatterns(PathPattern[] patterns) {
+        return new RouteTable(patterns.clone());
+    }
+
+    private final PathPattern[] patterns;
+    private final PathTrie trie;
+    private final PathPattern[] regexPatterns;
+
+    private RouteTable(PathPattern[] patterns) {
+        this.patterns = patterns;
+        this.trie = new PathTrie();
+        List<PathPattern> regex = new ArrayList();
+        for (PathPattern pattern : patterns) {
+            if (pattern.isSegmented()) {
+                trie.add(pattern);
+            } else {
+                regex.add(pattern);
+            }
+        }
+        this.regexPatterns = regex.toArray(new PathPattern[regex.size()]);
+    }
+
+    /**
+     * Obtiene los patrones de la tabla
+     *
+     * @return Una lista inmutable con los patrones en orden de prioridad
+     */
+    public List<PathPattern> getPatterns() {
+        return Collections.unmodifiableList(Arrays.asList(patterns));
+    }
+
+    /**
+     * Indica si la tabla no tiene patrones
+     *
+     * @return {@code true} si no hay patrones
+     */
+    public boolean isEmpty() {
+        return patterns.length == 0;
+    }
+
+    /**
+     * Busca el patrón que coincida con el pathInfo. Primero se busca en el
+     * árbol de segmentos y luego en los patrones que necesitan expresión
+     * regular
+     *
+     * @param pathInfo El pathInfo de la request
+     * @return El resultado de la comparación o {@code null} si ningún patrón
+     * coincide
+     */
+    public PathMatch match(String pathInfo) {
+        if (pathInfo == null) {
+            return null;
+        }
+        if (!trie.isEmpty()) {
+            PathMatch match = trie.match(pathInfo);
+            if (match != null) {
+                return match;
+            }
+        }
+        for (PathPattern pattern : regexPatterns) {
+            PathMatch match = pattern.match(pathInfo);
+            if (match != null) {
+                return match;
+            }
+        }
+        return null;
+    }
+
+}
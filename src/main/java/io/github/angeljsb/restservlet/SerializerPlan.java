@@ -0,0 +1,153 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plan para convertir los objetos de una clase de java bean a json. Se
+ * calcula una sola vez por clase y se guarda en un {@link ClassValue}: por
+ * cada campo declarado que tenga getter guarda el getter enlazado como
+ * {@link MethodHandle} y el nombre del campo ya codificado como clave json
+ *
+ * @author Angel
+ */
+final class SerializerPlan {
+
+    private static final ClassValue<SerializerPlan> PLANS = new ClassValue<SerializerPlan>() {
+        @Override
+        protected SerializerPlan computeValue(Class<?> type) {
+            return new SerializerPlan(type);
+        }
+    };
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * Obtiene el plan de una clase
+     *
+     * @param type La clase del bean
+     * @return El plan de la clase
+     */
+    static SerializerPlan of(Class<?> type) {
+        return PLANS.get(type);
+    }
+
+    private final Property[] properties;
+    private final Map<String, Property> byName;
+
+    private SerializerPlan(Class<?> type) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        List<Property> list = new ArrayList();
+        Map<String, Property> map = new HashMap();
+        for (Field field : type.getDeclaredFields()) {
+            if (field.isSynthetic()) {
+                continue;
+            }
+            String fieldName = field.getName();
+            try {
+                Method getter = getGetter(field);
+                getter.setAccessible(true);
+                MethodHandle handle = lookup.unreflect(getter).asType(GETTER_TYPE);
+                Property property = new Property(fieldName, handle);
+                list.add(property);
+                map.put(fieldName, property);
+            } catch (NoSuchMethodException | IllegalAccessException | RuntimeException ex) {
+                System.err.println("Error creating JSON " + ex.getClass().getSimpleName()
+                        + " in field " + fieldName);
+            }
+        }
+        this.properties = list.toArray(new Property[list.size()]);
+        this.byName = map;
+    }
+
+    private static Method getGetter(Field field) throws NoSuchMethodException {
+        Class declaring = field.getDeclaringClass();
+        String fieldName = field.getName();
+        String suffix = fieldName.substring(0, 1).toUpperCase().concat(fieldName.substring(1));
+
+        boolean isBool = field.getType().equals(Boolean.TYPE) || field.getType().equals(Boolean.class);
+        if (isBool) {
+            try {
+                return declaring.getMethod("is".concat(suffix));
+            } catch (NoSuchMethodException ex) {
+                // Los Boolean suelen usar get
+            }
+        }
+        return declaring.getMethod("get".concat(suffix));
+    }
+
+    /**
+     * Obtiene las propiedades del bean, en el orden en que se declararon sus
+     * campos
+     *
+     * @return Las propiedades
+     */
+    Property[] getProperties() {
+        return properties;
+    }
+
+    /**
+     * Busca una propiedad por el nombre de su campo
+     *
+     * @param name El nombre del campo
+     * @return La propiedad o {@code null} si el campo no existe o no tiene
+     * getter
+     */
+    Property getProperty(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Un campo del bean con su getter
+     */
+    static final class Property {
+
+        private final String name;
+        private final JsonKey key;
+        private final MethodHandle getter;
+
+        Property(String name, MethodHandle getter) {
+            this.name = name;
+            this.key = JsonKey.of(name);
+            this.getter = getter;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Obtiene el nombre del campo ya codificado como clave json
+         *
+         * @return La clave de la propiedad
+         */
+        JsonKey getKey() {
+            return key;
+        }
+
+        /**
+         * Obtiene el valor del campo en un bean
+         *
+         * @param bean El bean a leer
+         * @return El valor devuelto por el getter
+         * @throws Throwable Cualquier error lanzado por el getter
+         */
+        Object get(Object bean) throws Throwable {
+            return (Object) getter.invokeExact(bean);
+        }
+
+    }
+
+}
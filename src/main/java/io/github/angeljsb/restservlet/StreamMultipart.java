@@ -0,0 +1,41 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Hace que un {@link RestServlet} deje los bodies multipart sin leer, para
+ * recorrerlos a medida que llegan con
+ * {@link RestRequestReader#getMultipart()} en lugar de que el contenedor
+ * los guarde completos con {@code getParts()}. Los campos del formulario ya
+ * no se leen como parametros, así que el {@code _METHOD} de las peticiones
+ * POST multipart solo se busca en el query string.<br><br>
+ *
+ * Cada parte se guarda en memoria hasta {@link #spoolThreshold()} bytes y el
+ * resto en un archivo temporal, de modo que la memoria usada no depende del
+ * tamaño del body. Los parametros de inicio {@code streamMultipart} y
+ * {@code multipartSpoolThreshold} tienen prioridad sobre la anotación
+ *
+ * @author Angel
+ * @see MultipartReader
+ */
+@Target(value = {ElementType.TYPE})
+@Retention(value = RetentionPolicy.RUNTIME)
+public @interface StreamMultipart {
+
+    /**
+     * La cantidad de bytes de cada parte que se guardan en memoria antes de
+     * pasar a un archivo temporal
+     *
+     * @return El tamaño en bytes
+     */
+    public int spoolThreshold() default 64 * 1024;
+
+}
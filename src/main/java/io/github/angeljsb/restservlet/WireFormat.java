@@ -0,0 +1,94 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Formato en el que se leen los bodies y se envían las respuestas. La
+ * librería incluye json y CBOR; otros formatos, como MessagePack o Smile,
+ * pueden agregarse implementando esta interfaz y declarando la clase en
+ * {@code META-INF/services/io.github.angeljsb.restservlet.WireFormat}.<br><br>
+ *
+ * El formato de la respuesta se elige según el header {@code Accept} de la
+ * request y el del body según su {@code Content-Type}, ver
+ * {@link WireFormats}. Como los formatos escriben a partir de los eventos de
+ * {@link JsonGenerator} y leen los valores como los tipos de org.json, los
+ * beans, los {@link IJsonable}, los {@link JsonCodec} generados y los
+ * getters de parametros de {@link RestRequestReader} funcionan igual con
+ * cualquier formato. Los errores y las respuestas por elementos de
+ * {@link RestResponseWriter#sendElements(java.lang.Object)} se envían
+ * siempre como json
+ *
+ * @author Angel
+ */
+public interface WireFormat {
+
+    /**
+     * El tipo de contenido del formato, por ejemplo
+     * {@code application/cbor}
+     *
+     * @return El tipo de contenido sin parametros
+     */
+    String getMediaType();
+
+    /**
+     * Crea un generador que escribe en este formato. Al cerrarse el
+     * generador debe escribir lo que tenga pendiente y cerrar el stream
+     *
+     * @param out El destino de los bytes
+     * @return El generador
+     * @throws IOException Si ocurre un error de I/O
+     */
+    JsonGenerator createGenerator(OutputStream out) throws IOException;
+
+    /**
+     * Lee un body que contiene un objeto y agrega sus propiedades al mapa.
+     * Los valores deben ser String, Number, Boolean, {@link JSONObject},
+     * {@link JSONArray} o {@link JSONObject#NULL}
+     *
+     * @param in El body de la request
+     * @param charset El character encoding de la request o {@code null}
+     * @param length El Content-Length de la request o un número negativo si
+     * no se conoce
+     * @param map El mapa donde se guardan las propiedades
+     * @throws IOException Si ocurre un error de I/O
+     * @throws JSONException Si el body no tiene el formato esperado
+     */
+    void readObject(InputStream in, String charset, long length, Map<String, Object> map) throws IOException;
+
+    /**
+     * Lee un body igual que
+     * {@link #readObject(java.io.InputStream, java.lang.String, long, java.util.Map)},
+     * sin pasar de la profundidad especificada. Los formatos que no
+     * sobreescriben este método no limitan la profundidad; el tamaño sí se
+     * limita siempre, porque el stream que reciben ya está acotado, ver
+     * {@link LimitRequests}
+     *
+     * @param in El body de la request
+     * @param charset El character encoding de la request o {@code null}
+     * @param length El Content-Length de la request o un número negativo si
+     * no se conoce
+     * @param maxDepth La cantidad máxima de objetos y arreglos anidados,
+     * contando el objeto de primer nivel, o 0 si no hay límite
+     * @param map El mapa donde se guardan las propiedades
+     * @throws IOException Si ocurre un error de I/O
+     * @throws JSONException Si el body no tiene el formato esperado
+     * @throws RestException Con status 413 si el body es más profundo que el
+     * límite
+     */
+    default void readObject(InputStream in, String charset, long length, int maxDepth, Map<String, Object> map)
+            throws IOException {
+        readObject(in, charset, length, map);
+    }
+
+}
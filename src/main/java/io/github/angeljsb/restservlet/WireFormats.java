@@ -0,0 +1,209 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Los {@link WireFormat} disponibles: json, CBOR y los que se encuentren con
+ * {@link ServiceLoader}. Se cargan una sola vez, la primera vez que se
+ * usan.<br><br>
+ *
+ * La respuesta se envía en el formato con mayor calidad en el header
+ * {@code Accept}; si el header no nombra ningún formato conocido o solo
+ * usa comodines, se envía json
+ *
+ * @author Angel
+ */
+public final class WireFormats {
+
+    /**
+     * El formato json, que se usa si la request no pide otro
+     */
+    public static final WireFormat JSON = new JsonFormat();
+
+    /**
+     * El formato CBOR (RFC 8949)
+     */
+    public static final WireFormat CBOR = new CborFormat();
+
+    private static final List<WireFormat> FORMATS = loadFormats();
+
+    private WireFormats() {
+    }
+
+    private static List<WireFormat> loadFormats() {
+        List<WireFormat> formats = new ArrayList();
+        formats.add(JSON);
+        formats.add(CBOR);
+        Iterator<WireFormat> loaded = ServiceLoader.load(WireFormat.class,
+                WireFormats.class.getClassLoader()).iterator();
+        while (true) {
+            try {
+                if (!loaded.hasNext()) {
+                    break;
+                }
+                formats.add(loaded.next());
+            } catch (ServiceConfigurationError ex) {
+                System.err.println("Cannot load a wire format: " + ex.getMessage());
+            }
+        }
+        return Collections.unmodifiableList(formats);
+    }
+
+    /**
+     * Obtiene los formatos disponibles
+     *
+     * @return Los formatos, empezando por json y CBOR
+     */
+    public static List<WireFormat> getFormats() {
+        return FORMATS;
+    }
+
+    /**
+     * Elige el formato de una respuesta
+     *
+     * @param accept El header {@code Accept} de la request o {@code null}
+     * @return El formato con mayor calidad entre los aceptados o
+     * {@link #JSON} si no se acepta ninguno de forma explícita
+     */
+    public static WireFormat forAccept(String accept) {
+        if (accept == null || accept.isEmpty()) {
+            return JSON;
+        }
+        WireFormat best = JSON;
+        double bestQuality = 0;
+        for (String range : accept.split(",")) {
+            String[] params = range.split(";");
+            String type = params[0].trim().toLowerCase(Locale.ROOT);
+            WireFormat format = find(type);
+            if (format == null) {
+                continue;
+            }
+            double quality = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException ex) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (quality > bestQuality) {
+                best = format;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Busca el formato de un body
+     *
+     * @param contentType El header {@code Content-Type} de la request
+     * @return El formato o {@code null} si el body no tiene un formato
+     * conocido
+     */
+    public static WireFormat forContentType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        for (WireFormat format : FORMATS) {
+            if (type.contains(format.getMediaType())) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    private static WireFormat find(String type) {
+        for (WireFormat format : FORMATS) {
+            if (format.getMediaType().equals(type)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Json, con el generador y el lector de la librería
+     */
+    private static final class JsonFormat implements WireFormat {
+
+        @Override
+        public String getMediaType() {
+            return MediaType.APPLICATION_JSON;
+        }
+
+        @Override
+        public JsonGenerator createGenerator(OutputStream out) {
+            return new JsonStreamGenerator(out);
+        }
+
+        @Override
+        public void readObject(InputStream in, String charset, long length, Map<String, Object> map)
+                throws IOException {
+            readObject(in, charset, length, 0, map);
+        }
+
+        @Override
+        public void readObject(InputStream in, String charset, long length, int maxDepth,
+                Map<String, Object> map) throws IOException {
+            try (Reader reader = new InputStreamReader(in, charset == null ? "UTF-8" : charset)) {
+                new JsonReader(reader, length, maxDepth).readObject(map);
+            }
+        }
+
+    }
+
+    /**
+     * CBOR, con {@link CborGenerator} y {@link CborReader}
+     */
+    private static final class CborFormat implements WireFormat {
+
+        @Override
+        public String getMediaType() {
+            return "application/cbor";
+        }
+
+        @Override
+        public JsonGenerator createGenerator(OutputStream out) {
+            return new CborGenerator(out);
+        }
+
+        @Override
+        public void readObject(InputStream in, String charset, long length, Map<String, Object> map)
+                throws IOException {
+            readObject(in, charset, length, 0, map);
+        }
+
+        @Override
+        public void readObject(InputStream in, String charset, long length, int maxDepth,
+                Map<String, Object> map) throws IOException {
+            try (InputStream body = in) {
+                new CborReader(body, maxDepth).readObject(map);
+            }
+        }
+
+    }
+
+}
@@ -27,7 +27,13 @@ import java.lang.annotation.Target;
  * llamado {@code id} con el valor "12".<br><br>
  * 
  * Los nombres de los parametros en la ruta solo pueden tener números y
- * letras, no se permiten guiones (-) ni guiones bajos (_)
+ * letras, no se permiten guiones (-) ni guiones bajos (_)<br><br>
+ * 
+ * Si varios patrones coinciden con el mismo pathInfo, los segmentos literales
+ * tienen prioridad sobre los parametros, por ejemplo {@code "/users/me"} gana
+ * sobre {@code "/users/{id}"} sin importar el orden en que se declaren. Los
+ * patrones con segmentos que mezclan texto y parametros o usan caracteres
+ * especiales de expresiones regulares se prueban al final, en su orden
  *
  * @author Angel
  */
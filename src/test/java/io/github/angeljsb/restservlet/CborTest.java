@@ -0,0 +1,203 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Pruebas de ida y vuelta entre {@link CborGenerator} y {@link CborReader}:
+ * los extremos de los enteros, los BigInteger, las cadenas largas y el
+ * límite de profundidad
+ *
+ * @author Angel
+ */
+public class CborTest {
+
+    @Test
+    public void testLongLimits() throws IOException {
+        long[] values = {0, 23, 24, 255, 256, 65535, 65536, Integer.MAX_VALUE, Integer.MAX_VALUE + 1L,
+            Integer.MIN_VALUE, Integer.MIN_VALUE - 1L, -1, -24, -25, -256, -257,
+            Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            Object read = roundTrip(value);
+            if (value == (int) value) {
+                assertEquals(Integer.valueOf((int) value), read);
+            } else {
+                assertEquals(Long.valueOf(value), read);
+            }
+        }
+    }
+
+    /**
+     * Los BigInteger que caben en 64 bits sin signo se escriben como
+     * enteros y los demás con las etiquetas de bignum
+     */
+    @Test
+    public void testBigInteger() throws IOException {
+        BigInteger two64 = BigInteger.ONE.shiftLeft(64);
+        BigInteger[] values = {
+            BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE),
+            two64.subtract(BigInteger.ONE),
+            two64,
+            two64.negate(),
+            two64.negate().subtract(BigInteger.ONE),
+            BigInteger.valueOf(Long.MIN_VALUE).subtract(BigInteger.ONE),
+            new BigInteger("123456789012345678901234567890123456789012345678901234567890"),
+            new BigInteger("-123456789012345678901234567890123456789012345678901234567890")
+        };
+        for (BigInteger value : values) {
+            assertEquals(value, roundTrip(value));
+        }
+        // Los que caben en un long vuelven con el tipo de org.json
+        assertEquals(Long.valueOf(Long.MIN_VALUE), roundTrip(BigInteger.valueOf(Long.MIN_VALUE)));
+        assertEquals(Integer.valueOf(7), roundTrip(BigInteger.valueOf(7)));
+    }
+
+    @Test
+    public void testBigDecimal() throws IOException {
+        BigDecimal value = new BigDecimal("-1234567890123456789012345.678901");
+        assertEquals(value, roundTrip(value));
+    }
+
+    /**
+     * Una cadena de más de 64KB usa un largo de 4 bytes y cruza varias
+     * lecturas del buffer del lector
+     */
+    @Test
+    public void testLongStrings() throws IOException {
+        for (int length : new int[]{65535, 65536, 70_000, 300_000}) {
+            StringBuilder builder = new StringBuilder(length);
+            for (int i = 0; builder.length() < length; i++) {
+                builder.append(i % 7 == 0 ? 'ñ' : (char) ('a' + i % 26));
+            }
+            String value = builder.toString();
+            assertEquals(value, roundTrip(value));
+        }
+    }
+
+    @Test
+    public void testObject() throws IOException {
+        JSONObject body = new JSONObject();
+        body.put("min", Long.MIN_VALUE);
+        body.put("big", new BigInteger("99999999999999999999"));
+        body.put("name", "a");
+        body.put("list", new JSONArray().put(1).put(true).put(JSONObject.NULL).put(1.5));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CborGenerator generator = new CborGenerator(out)) {
+            generator.writeBody(body);
+        }
+        Map<String, Object> map = new HashMap();
+        new CborReader(new ByteArrayInputStream(out.toByteArray())).readObject(map);
+        assertEquals(Long.MIN_VALUE, map.get("min"));
+        assertEquals(new BigInteger("99999999999999999999"), map.get("big"));
+        assertEquals("a", map.get("name"));
+        JSONArray list = (JSONArray) map.get("list");
+        assertEquals(4, list.length());
+        assertEquals(1, list.get(0));
+        assertEquals(true, list.get(1));
+        assertEquals(JSONObject.NULL, list.get(2));
+        assertEquals(1.5, list.getDouble(3), 0);
+    }
+
+    /**
+     * Los arreglos y mapas anidados hasta el límite se leen y uno más da
+     * un 413
+     */
+    @Test
+    public void testDepthLimit() throws IOException {
+        int maxDepth = 32;
+        assertEquals(maxDepth, depth(new CborReader(new ByteArrayInputStream(nested(maxDepth)), maxDepth).readValue()));
+        try {
+            new CborReader(new ByteArrayInputStream(nested(maxDepth + 1)), maxDepth).readValue();
+            fail("The body is nested too deep");
+        } catch (RestException expected) {
+            assertEquals(413, expected.getStatusCode());
+        }
+        // Sin límite
+        assertEquals(1000, depth(new CborReader(new ByteArrayInputStream(nested(1000))).readValue()));
+    }
+
+    @Test
+    public void testDepthLimitInObject() throws IOException {
+        Map<String, Object> map = new HashMap();
+        byte[] nested = nested(3);
+        byte[] body = new byte[nested.length + 3];
+        body[0] = (byte) 0xA1; // mapa de una propiedad
+        body[1] = (byte) 0x61; // texto de un byte
+        body[2] = 'a';
+        System.arraycopy(nested, 0, body, 3, nested.length);
+        new CborReader(new ByteArrayInputStream(body), 4).readObject(map);
+        assertEquals(3, depth(map.get("a")));
+        try {
+            new CborReader(new ByteArrayInputStream(body), 3).readObject(new HashMap());
+            fail("The body is nested too deep");
+        } catch (RestException expected) {
+            assertEquals(413, expected.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testIndefiniteString() throws IOException {
+        byte[] cbor = {0x7F, 0x62, 'h', 'o', 0x63, 'l', 'a', '!', (byte) 0xFF};
+        assertEquals("hola!", new CborReader(new ByteArrayInputStream(cbor)).readValue());
+    }
+
+    @Test
+    public void testGeneratorBytes() throws IOException {
+        assertArrayEquals(new byte[]{0x3B, 0x7F, -1, -1, -1, -1, -1, -1, -1}, write(Long.MIN_VALUE));
+        assertArrayEquals(new byte[]{0x1B, 0x7F, -1, -1, -1, -1, -1, -1, -1}, write(Long.MAX_VALUE));
+        assertArrayEquals(new byte[]{(byte) 0xC2, 0x49, 1, 0, 0, 0, 0, 0, 0, 0, 0},
+                write(BigInteger.ONE.shiftLeft(64)));
+    }
+
+    private static Object roundTrip(Object value) throws IOException {
+        return new CborReader(new ByteArrayInputStream(write(value))).readValue();
+    }
+
+    private static byte[] write(Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CborGenerator generator = new CborGenerator(out)) {
+            generator.writeValue(value);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Arreglos de un elemento anidados, con el número 1 en el centro
+     */
+    private static byte[] nested(int depth) {
+        byte[] bytes = new byte[depth + 1];
+        for (int i = 0; i < depth; i++) {
+            bytes[i] = (byte) 0x81;
+        }
+        bytes[depth] = 0x01;
+        return bytes;
+    }
+
+    private static int depth(Object value) {
+        int depth = 0;
+        while (value instanceof JSONArray) {
+            assertTrue(((JSONArray) value).length() == 1);
+            value = ((JSONArray) value).get(0);
+            depth++;
+        }
+        return depth;
+    }
+
+}
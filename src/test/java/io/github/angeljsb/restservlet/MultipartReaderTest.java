@@ -0,0 +1,274 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Pruebas de {@link MultipartReader} y {@link MultipartPart}: los
+ * delimitadores que quedan partidos entre dos lecturas del buffer, los
+ * bordes del umbral de memoria y los archivos temporales
+ *
+ * @author Angel
+ */
+public class MultipartReaderTest {
+
+    private static final String BOUNDARY = "----test";
+    private static final int REFILL = 16 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path tempDir;
+
+    @Before
+    public void setUp() {
+        tempDir = folder.getRoot().toPath();
+    }
+
+    /**
+     * Recorre contenidos cuyo delimitador de cierre empieza antes, sobre y
+     * después del final del primer buffer de 16KB, leyendo la request de una
+     * vez y por pedazos pequeños
+     */
+    @Test
+    public void testBoundarySplitAcrossRefill() throws IOException {
+        for (int chunk : new int[]{Integer.MAX_VALUE, 4096, 7}) {
+            for (int size = REFILL - 200; size <= REFILL + 50; size++) {
+                byte[] first = content(size);
+                byte[] second = "fin".getBytes(StandardCharsets.UTF_8);
+                byte[] body = body(first, second);
+                try (MultipartReader reader = reader(body, chunk, MultipartReader.DEFAULT_SPOOL_THRESHOLD)) {
+                    assertArrayEquals("size " + size + " chunk " + chunk, first, readAll(reader.next()));
+                    assertArrayEquals("size " + size + " chunk " + chunk, second, readAll(reader.next()));
+                    assertFalse(reader.hasNext());
+                }
+            }
+        }
+    }
+
+    /**
+     * Un contenido con pedazos del delimitador que no llegan a formarlo no
+     * debe cortar la parte
+     */
+    @Test
+    public void testPartialDelimiterInContent() throws IOException {
+        byte[] first = ("a\r\n--" + BOUNDARY.substring(0, 7) + "\r\n-\r\n-" + BOUNDARY + "x").getBytes(StandardCharsets.UTF_8);
+        byte[] body = body(first, new byte[0]);
+        try (MultipartReader reader = reader(body, 3, MultipartReader.DEFAULT_SPOOL_THRESHOLD)) {
+            assertArrayEquals(first, readAll(reader.next()));
+            assertEquals(0, reader.next().getSize());
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    /**
+     * Con umbral 0 las partes con contenido se guardan en archivo y las
+     * vacías no crean ninguno
+     */
+    @Test
+    public void testSpoolThresholdZero() throws IOException {
+        byte[] a = content(100);
+        byte[] c = content(1);
+        try (MultipartReader reader = reader(body(a, new byte[0], c), Integer.MAX_VALUE, 0)) {
+            List<MultipartPart> parts = all(reader);
+            assertEquals(3, parts.size());
+            assertArrayEquals(a, readAll(parts.get(0)));
+            assertEquals(0, parts.get(1).getSize());
+            assertEquals("", parts.get(1).getString());
+            assertArrayEquals(c, readAll(parts.get(2)));
+            assertEquals(2, tempFiles());
+        }
+    }
+
+    /**
+     * Una parte del tamaño exacto del umbral queda en memoria; un byte más
+     * pasa a un archivo
+     */
+    @Test
+    public void testSpoolThresholdEdges() throws IOException {
+        int threshold = 1024;
+        byte[] below = content(threshold - 1);
+        byte[] exact = content(threshold);
+        byte[] above = content(threshold + 1);
+        try (MultipartReader reader = reader(body(below, exact, above), 100, threshold)) {
+            List<MultipartPart> parts = all(reader);
+            assertEquals(threshold - 1, parts.get(0).getSize());
+            assertEquals(threshold, parts.get(1).getSize());
+            assertEquals(threshold + 1, parts.get(2).getSize());
+            assertArrayEquals(below, readAll(parts.get(0)));
+            assertArrayEquals(exact, readAll(parts.get(1)));
+            assertArrayEquals(above, readAll(parts.get(2)));
+            assertEquals(1, tempFiles());
+        }
+    }
+
+    /**
+     * Las partes guardadas se pueden escribir en un archivo, estén en
+     * memoria o en un archivo temporal, y más de una vez
+     */
+    @Test
+    public void testTransferToAfterSpool() throws IOException {
+        byte[] small = content(100);
+        byte[] large = content(50_000);
+        try (MultipartReader reader = reader(body(small, large), 1000, 4096)) {
+            List<MultipartPart> parts = all(reader);
+            for (int i = 0; i < 2; i++) {
+                Path target = folder.newFile().toPath();
+                assertEquals(small.length, parts.get(0).transferTo(target));
+                assertArrayEquals(small, Files.readAllBytes(target));
+                target = folder.newFile().toPath();
+                assertEquals(large.length, parts.get(1).transferTo(target));
+                assertArrayEquals(large, Files.readAllBytes(target));
+            }
+        }
+    }
+
+    /**
+     * Una parte que no se guardó pasa directamente de la request al archivo
+     */
+    @Test
+    public void testTransferToWithoutSpool() throws IOException {
+        byte[] large = content(100_000);
+        Path target = folder.newFile().toPath();
+        try (MultipartReader reader = reader(body(large, content(10)), 5000, 1024)) {
+            MultipartPart part = reader.next();
+            assertEquals(large.length, part.transferTo(target));
+            assertArrayEquals(large, Files.readAllBytes(target));
+            assertEquals(large.length, part.getSize());
+            assertTrue(reader.hasNext());
+            assertEquals(10, reader.next().getSize());
+        }
+    }
+
+    /**
+     * Cerrar el lector borra los archivos temporales y las partes que
+     * estaban en ellos ya no pueden leerse
+     */
+    @Test
+    public void testTempFilesDeletedOnClose() throws IOException {
+        MultipartReader reader = reader(body(content(1000), content(2000), content(30)), 512, 16);
+        List<MultipartPart> parts = all(reader);
+        assertEquals(3, tempFiles());
+        reader.close();
+        assertEquals(0, tempFiles());
+        try {
+            parts.get(0).getInputStream();
+            fail("The part was deleted");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testMissingClosingBoundary() throws IOException {
+        byte[] body = body(content(100));
+        byte[] truncated = new byte[body.length - 10];
+        System.arraycopy(body, 0, truncated, 0, truncated.length);
+        try (MultipartReader reader = reader(truncated, Integer.MAX_VALUE, 1024)) {
+            readAll(reader.next());
+            fail("The body has no closing boundary");
+        } catch (RestException expected) {
+            assertEquals(400, expected.getStatusCode());
+        }
+    }
+
+    private MultipartReader reader(byte[] body, int chunk, int threshold) {
+        return new MultipartReader(new ChunkedInputStream(body, chunk), BOUNDARY, null, threshold,
+                tempDir, RequestLimits.NONE);
+    }
+
+    private long tempFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("multipart-")).count();
+        }
+    }
+
+    private static List<MultipartPart> all(MultipartReader reader) {
+        List<MultipartPart> parts = new ArrayList();
+        while (reader.hasNext()) {
+            parts.add(reader.next());
+        }
+        return parts;
+    }
+
+    private static byte[] readAll(MultipartPart part) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = part.getInputStream()) {
+            byte[] buffer = new byte[1000];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Bytes al azar con muchos {@code \r}, {@code \n} y {@code -}, para que
+     * aparezcan pedazos del delimitador
+     */
+    private static byte[] content(int size) {
+        Random random = new Random(size);
+        byte[] content = new byte[size];
+        byte[] common = {'\r', '\n', '-', '-'};
+        for (int i = 0; i < size; i++) {
+            content[i] = random.nextInt(4) == 0 ? common[random.nextInt(common.length)] : (byte) random.nextInt(256);
+        }
+        return content;
+    }
+
+    private static byte[] body(byte[]... contents) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < contents.length; i++) {
+            out.write(("--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"part" + i + "\"; filename=\"part" + i + ".bin\"\r\n"
+                    + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.write(contents[i]);
+            out.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        }
+        out.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        return out.toByteArray();
+    }
+
+    /**
+     * Entrega el body en pedazos de un tamaño máximo, como llega por la red
+     */
+    private static final class ChunkedInputStream extends ByteArrayInputStream {
+
+        private final int chunk;
+
+        ChunkedInputStream(byte[] body, int chunk) {
+            super(body);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, chunk));
+        }
+
+    }
+
+}
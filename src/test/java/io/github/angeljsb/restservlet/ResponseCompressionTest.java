@@ -0,0 +1,277 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package io.github.angeljsb.restservlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pruebas de {@link ResponseCompression}: la salida comprimida se puede
+ * leer con los streams de {@code java.util.zip} después de cada
+ * {@code flush()} y al cerrar
+ *
+ * @author Angel
+ */
+public class ResponseCompressionTest {
+
+    @Test
+    public void testGzipAcrossFlush() throws IOException {
+        FakeResponse response = new FakeResponse();
+        OutputStream out = compression(1024, 6).open(request("gzip, deflate"), response.proxy());
+        write(out, "hola");
+        out.flush();
+        assertEquals("gzip", response.headers.get("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.headers.get("Vary"));
+        // Lo enviado hasta el flush ya se puede descomprimir
+        assertEquals("hola", readPrefix(new GZIPInputStream(response.body.input()), 4));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write("hola".getBytes(StandardCharsets.UTF_8));
+        byte[] data = data(100_000);
+        for (int i = 0; i < data.length; i += 7_000) {
+            int length = Math.min(7_000, data.length - i);
+            out.write(data, i, length);
+            expected.write(data, i, length);
+            out.flush();
+            assertEquals(expected.size(), readPrefix(new GZIPInputStream(response.body.input()),
+                    expected.size()).length());
+        }
+        out.close();
+        assertTrue(response.body.closed);
+        assertArrayEquals(expected.toByteArray(), readAll(new GZIPInputStream(response.body.input())));
+    }
+
+    @Test
+    public void testDeflateAcrossFlush() throws IOException {
+        FakeResponse response = new FakeResponse();
+        OutputStream out = compression(16, 9).open(request("deflate;q=1, gzip;q=0.5"), response.proxy());
+        byte[] data = data(50_000);
+        out.write(data, 0, 10_000);
+        out.flush();
+        assertEquals("deflate", response.headers.get("Content-Encoding"));
+        assertEquals(10_000, readPrefix(new InflaterInputStream(response.body.input()), 10_000).length());
+        out.write(data, 10_000, data.length - 10_000);
+        out.close();
+        assertArrayEquals(data, readAll(new InflaterInputStream(response.body.input())));
+    }
+
+    /**
+     * Un cuerpo que no supera el umbral se envía sin comprimir y con su
+     * Content-Length
+     */
+    @Test
+    public void testBelowThreshold() throws IOException {
+        FakeResponse response = new FakeResponse();
+        OutputStream out = compression(1024, 6).open(request("gzip"), response.proxy());
+        write(out, "pequeño");
+        out.close();
+        assertNull(response.headers.get("Content-Encoding"));
+        assertEquals(response.body.bytes.size(), response.contentLength);
+        assertEquals("pequeño", new String(response.body.bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Dos respuestas abiertas a la vez en el mismo hilo: la segunda no
+     * puede usar el Deflater del hilo y trabaja con uno propio
+     */
+    @Test
+    public void testNestedStreams() throws IOException {
+        for (String encoding : new String[]{"gzip", "deflate"}) {
+            ResponseCompression compression = compression(0, 6);
+            byte[] data = data(30_000);
+            FakeResponse first = new FakeResponse();
+            FakeResponse second = new FakeResponse();
+            OutputStream outer = compression.open(request(encoding), first.proxy());
+            outer.write(data);
+            OutputStream inner = compression.open(request(encoding), second.proxy());
+            inner.write(data);
+            inner.flush();
+            inner.close();
+            outer.close();
+            assertArrayEquals(data, decode(encoding, first.body.input()));
+            assertArrayEquals(data, decode(encoding, second.body.input()));
+
+            // El Deflater del hilo sigue sirviendo después
+            FakeResponse third = new FakeResponse();
+            OutputStream out = compression.open(request(encoding), third.proxy());
+            out.write(data);
+            out.close();
+            assertArrayEquals(data, decode(encoding, third.body.input()));
+        }
+    }
+
+    @Test
+    public void testNegotiate() {
+        assertEquals("gzip", ResponseCompression.negotiate("gzip, deflate"));
+        assertEquals("deflate", ResponseCompression.negotiate("gzip;q=0.5, deflate"));
+        assertEquals("gzip", ResponseCompression.negotiate("*"));
+        assertEquals("deflate", ResponseCompression.negotiate("*, gzip;q=0"));
+        assertNull(ResponseCompression.negotiate("identity"));
+        assertNull(ResponseCompression.negotiate(null));
+    }
+
+    private static ResponseCompression compression(int threshold, int level) {
+        Map<String, String> params = new HashMap();
+        params.put("compressionThreshold", String.valueOf(threshold));
+        params.put("compressionLevel", String.valueOf(level));
+        return ResponseCompression.forServlet(new RestServlet() {
+            @Override
+            public String getInitParameter(String name) {
+                return params.get(name);
+            }
+        });
+    }
+
+    private static HttpServletRequest request(String acceptEncoding) {
+        return (HttpServletRequest) Proxy.newProxyInstance(ResponseCompressionTest.class.getClassLoader(),
+                new Class[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getHeader") && "Accept-Encoding".equalsIgnoreCase((String) args[0])) {
+                        return acceptEncoding;
+                    }
+                    return null;
+                });
+    }
+
+    private static byte[] decode(String encoding, InputStream in) throws IOException {
+        return readAll(encoding.equals("gzip") ? new GZIPInputStream(in) : new InflaterInputStream(in));
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Lee los primeros bytes de un stream al que le falta el final
+     */
+    private static String readPrefix(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int count = 0;
+        while (count < length) {
+            int read = in.read(bytes, count, length - count);
+            if (read < 0) {
+                break;
+            }
+            count += read;
+        }
+        return new String(bytes, 0, count, StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream input = in) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Texto repetido con algo de ruido, para que se comprima pero no
+     * quepa en un solo buffer del Deflater
+     */
+    private static byte[] data(int size) {
+        Random random = new Random(size);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = random.nextInt(8) == 0 ? (byte) random.nextInt(256) : (byte) ('a' + i % 13);
+        }
+        return data;
+    }
+
+    /**
+     * Una response que guarda los headers y el cuerpo en memoria
+     */
+    private static final class FakeResponse {
+
+        private final Map<String, String> headers = new HashMap();
+        private final FakeOutputStream body = new FakeOutputStream();
+        private int contentLength = -1;
+
+        HttpServletResponse proxy() {
+            return (HttpServletResponse) Proxy.newProxyInstance(ResponseCompressionTest.class.getClassLoader(),
+                    new Class[]{HttpServletResponse.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getHeader":
+                                return headers.get((String) args[0]);
+                            case "containsHeader":
+                                return headers.containsKey((String) args[0]);
+                            case "setHeader":
+                                headers.put((String) args[0], (String) args[1]);
+                                return null;
+                            case "addHeader":
+                                headers.merge((String) args[0], (String) args[1], (a, b) -> a + ", " + b);
+                                return null;
+                            case "setContentLength":
+                                contentLength = (Integer) args[0];
+                                return null;
+                            case "getOutputStream":
+                                return body;
+                            default:
+                                return method.getReturnType() == boolean.class ? false : null;
+                        }
+                    });
+        }
+
+    }
+
+    private static final class FakeOutputStream extends ServletOutputStream {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private boolean closed;
+
+        InputStream input() {
+            return new ByteArrayInputStream(bytes.toByteArray());
+        }
+
+        @Override
+        public void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+        }
+
+    }
+
+}